@@ -0,0 +1,228 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Commands;
+
+import java.util.Arrays;
+
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.events.MessageEvent;
+
+import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.UserUtils;
+import us.rddt.IRCBot.Enums.CommandPermissions;
+
+/**
+ * Resolves bot commands using a prefix tree built from the registered commands. A
+ * message is matched by walking its characters once, rather than comparing it
+ * against every command in turn. Each registration declares the function which can
+ * disable it and the permission a user needs to run it.
+ * 
+ * When more than one command matches a message (for example "who delete " and
+ * "who "), the longest command wins. If that command has been disabled, or the user
+ * does not hold the permission to run it, the next longest matching command is tried
+ * instead. A message matching no command the user may run is left to the other
+ * handlers, and counted in the channel's statistics like any other line.
+ * 
+ * @author Ryan Morrison
+ */
+public class CommandRouter {
+    /*
+     * Class variables.
+     */
+    private final Node root = new Node();
+
+    /**
+     * Registers a command which must match the whole message
+     * @param command the command text, without the command prefix
+     * @param function the function which disables this command, or null if it cannot be disabled
+     * @param permission the permission required to run the command
+     * @param action the action to take when the command is received
+     */
+    public void registerExact(String command, String function, CommandPermissions permission, CommandAction action) {
+        Node node = insert(command);
+        if(node.exactCommand != null) throw new IllegalArgumentException("Command already registered: " + command);
+        node.exactCommand = new RegisteredCommand(function, permission, action);
+        linkFallbacks(root, null);
+    }
+
+    /**
+     * Registers a command which matches any message starting with the command text
+     * @param command the command text, without the command prefix
+     * @param function the function which disables this command, or null if it cannot be disabled
+     * @param permission the permission required to run the command
+     * @param action the action to take when the command is received
+     */
+    public void registerPrefix(String command, String function, CommandPermissions permission, CommandAction action) {
+        Node node = insert(command);
+        if(node.prefixCommand != null) throw new IllegalArgumentException("Command already registered: " + command);
+        node.prefixCommand = new RegisteredCommand(function, permission, action);
+        linkFallbacks(root, null);
+    }
+
+    /**
+     * Resolves and executes the command contained in a message. The first character
+     * of the message is assumed to be the command prefix.
+     * @param event the MessageEvent to parse
+     * @return true if a command was run, false if no command the user may run matched
+     */
+    public boolean route(MessageEvent<PircBotX> event) {
+        String message = event.getMessage();
+        RegisteredCommand match = null;
+        Node node = root;
+        // Walk the tree once, remembering the deepest command that matches
+        for(int i = 1; i < message.length(); i++) {
+            node = node.getChild(message.charAt(i));
+            if(node == null) break;
+            if(node.prefixCommand != null) match = node.prefixCommand;
+            if(i == message.length() - 1 && node.exactCommand != null) match = node.exactCommand;
+        }
+        // Fall back to shorter matches if the longest one has been disabled
+        for(; match != null; match = match.fallback) {
+            if(match.function != null && Configuration.getDisabledFunctions().contains(match.function)) continue;
+            if(!hasPermission(event, match.permission)) continue;
+            match.action.execute(event);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks to see if the user who sent a command holds a permission
+     * @param event the MessageEvent containing the command
+     * @param permission the permission to check
+     * @return true if the user holds the permission, false if they do not
+     */
+    private boolean hasPermission(MessageEvent<PircBotX> event, CommandPermissions permission) {
+        switch(permission) {
+        case OPERATOR:
+            return UserUtils.isUserOperator(event.getUser(), event.getChannel());
+        case OWNER:
+            return UserUtils.isUserOwner(event.getUser(), event.getChannel());
+        case ADMIN:
+            return UserUtils.isUserAdmin(event.getUser());
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * Returns the node for a command, creating any nodes along the way
+     * @param command the command text
+     * @return the node where the command ends
+     */
+    private Node insert(String command) {
+        if(command.length() == 0) throw new IllegalArgumentException("Commands cannot be empty");
+        Node node = root;
+        for(int i = 0; i < command.length(); i++) {
+            node = node.getOrAddChild(command.charAt(i));
+        }
+        return node;
+    }
+
+    /**
+     * Points each command at the next shorter prefix command on its path, so the
+     * router can fall back without searching the tree again
+     * @param node the node to link
+     * @param fallback the deepest prefix command above this node
+     */
+    private void linkFallbacks(Node node, RegisteredCommand fallback) {
+        if(node.prefixCommand != null) {
+            node.prefixCommand.fallback = fallback;
+            fallback = node.prefixCommand;
+        }
+        if(node.exactCommand != null) node.exactCommand.fallback = fallback;
+        for(int i = 0; i < node.childCount; i++) {
+            linkFallbacks(node.children[i], fallback);
+        }
+    }
+
+    /**
+     * A command along with its registration details.
+     */
+    private static class RegisteredCommand {
+        private final String function;
+        private final CommandPermissions permission;
+        private final CommandAction action;
+        private RegisteredCommand fallback;
+
+        /**
+         * Class constructor
+         * @param function the function which disables this command, or null
+         * @param permission the permission required to run the command
+         * @param action the action to take when the command is received
+         */
+        public RegisteredCommand(String function, CommandPermissions permission, CommandAction action) {
+            this.function = function;
+            this.permission = permission;
+            this.action = action;
+        }
+    }
+
+    /**
+     * A single character position in the prefix tree. Commands share very few
+     * characters at each position, so children are kept in small parallel arrays.
+     */
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private int childCount;
+        private RegisteredCommand exactCommand;
+        private RegisteredCommand prefixCommand;
+
+        /**
+         * Returns the child for a character
+         * @param c the character to look up
+         * @return the child node, or null if no command continues with this character
+         */
+        public Node getChild(char c) {
+            for(int i = 0; i < childCount; i++) {
+                if(keys[i] == c) return children[i];
+            }
+            return null;
+        }
+
+        /**
+         * Returns the child for a character, creating it if it does not exist yet
+         * @param c the character to look up
+         * @return the child node
+         */
+        public Node getOrAddChild(char c) {
+            Node child = getChild(c);
+            if(child == null) {
+                keys = Arrays.copyOf(keys, childCount + 1);
+                children = Arrays.copyOf(children, childCount + 1);
+                child = new Node();
+                keys[childCount] = c;
+                children[childCount] = child;
+                childCount++;
+            }
+            return child;
+        }
+    }
+}
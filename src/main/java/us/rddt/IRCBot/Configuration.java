@@ -49,10 +49,11 @@ import org.pircbotx.PircBotX;
 import twitter4j.Twitter;
 import twitter4j.TwitterFactory;
 import twitter4j.conf.ConfigurationBuilder;
-import us.rddt.IRCBot.Implementations.DatabaseCleaner;
+import us.rddt.IRCBot.Dispatch.HandlerPool;
 import us.rddt.IRCBot.Implementations.RedditWatcher;
 import us.rddt.IRCBot.Implementations.YouTubeWatcher;
 import us.rddt.IRCBot.Logging.IRCLogger;
+import us.rddt.IRCBot.Persistence.Repositories;
 
 /**
  * Class which maintains the bot's configuration settings. Settings are loaded upon
@@ -101,6 +102,42 @@ public class Configuration {
 
     private static String sqlite_database;
 
+    private static String file_database;
+
+    private static int database_pool_min_size;
+    private static int database_pool_max_size;
+    private static int database_pool_idle_timeout;
+    private static int database_pool_leak_threshold;
+    private static int database_pool_borrow_timeout;
+    private static int database_statement_cache_size;
+    private static int database_queue_size;
+    private static int database_timeout;
+    private static int database_commit_delay;
+    private static int database_commit_size;
+    private static int database_cleanup_batch_size;
+    private static int database_cleanup_pause;
+    private static int database_cleanup_budget;
+
+    private static String shout_selection;
+    private static int shout_throttle_rate;
+
+    private static int statistics_top_k;
+    private static String statistics_snapshot_file;
+    private static int statistics_snapshot_interval;
+
+    private static int game_catalog_refresh;
+    private static int game_status_expiry;
+
+    private static int seen_flush_size;
+    private static int seen_flush_interval;
+
+    private static int dispatch_threads;
+    private static int dispatch_queue_size;
+    private static String dispatch_rejection_policy;
+    private static String[] dispatch_pools;
+    private static int dispatch_channel_threads;
+    private static int dispatch_channel_queue_size;
+
     private static ScheduledExecutorService watchScheduler;
     private static ScheduledExecutorService cleanupScheduler;
     private static ScheduledExecutorService youtubeScheduler;
@@ -153,7 +190,37 @@ public class Configuration {
             mysql_database = config.getProperty("mysql_database");
         } else if(database_driver.equalsIgnoreCase("sqlite")) {
             sqlite_database = config.getProperty("sqlite_database");
+        } else if(database_driver.equalsIgnoreCase("file")) {
+            file_database = config.getProperty("file_database", "data");
         }
+        database_pool_min_size = Integer.parseInt(config.getProperty("database_pool_min_size", "1"));
+        database_pool_max_size = Integer.parseInt(config.getProperty("database_pool_max_size", "8"));
+        database_pool_idle_timeout = Integer.parseInt(config.getProperty("database_pool_idle_timeout", "600"));
+        database_pool_leak_threshold = Integer.parseInt(config.getProperty("database_pool_leak_threshold", "60"));
+        database_pool_borrow_timeout = Integer.parseInt(config.getProperty("database_pool_borrow_timeout", "10"));
+        database_statement_cache_size = Integer.parseInt(config.getProperty("database_statement_cache_size", "32"));
+        database_queue_size = Integer.parseInt(config.getProperty("database_queue_size", "500"));
+        database_timeout = Integer.parseInt(config.getProperty("database_timeout", "30"));
+        database_commit_delay = Integer.parseInt(config.getProperty("database_commit_delay", "2"));
+        database_commit_size = Integer.parseInt(config.getProperty("database_commit_size", "100"));
+        database_cleanup_batch_size = Integer.parseInt(config.getProperty("database_cleanup_batch_size", "500"));
+        database_cleanup_pause = Integer.parseInt(config.getProperty("database_cleanup_pause", "100"));
+        database_cleanup_budget = Integer.parseInt(config.getProperty("database_cleanup_budget", "30"));
+        shout_selection = config.getProperty("shout_selection", "random");
+        shout_throttle_rate = Integer.parseInt(config.getProperty("shout_throttle_rate", "0"));
+        statistics_top_k = Integer.parseInt(config.getProperty("statistics_top_k", "20"));
+        statistics_snapshot_file = config.getProperty("statistics_snapshot_file", "statistics.snapshot");
+        statistics_snapshot_interval = Integer.parseInt(config.getProperty("statistics_snapshot_interval", "300"));
+        game_catalog_refresh = Integer.parseInt(config.getProperty("game_catalog_refresh", "0"));
+        game_status_expiry = Integer.parseInt(config.getProperty("game_status_expiry", "12"));
+        seen_flush_size = Integer.parseInt(config.getProperty("seen_flush_size", "200"));
+        seen_flush_interval = Integer.parseInt(config.getProperty("seen_flush_interval", "30"));
+        dispatch_threads = Integer.parseInt(config.getProperty("dispatch_threads", "4"));
+        dispatch_queue_size = Integer.parseInt(config.getProperty("dispatch_queue_size", "200"));
+        dispatch_rejection_policy = checkRejectionPolicy(config.getProperty("dispatch_rejection_policy", "discard"));
+        dispatch_pools = checkDispatchPools(config.getProperty("dispatch_pools", ""));
+        dispatch_channel_threads = Integer.parseInt(config.getProperty("dispatch_channel_threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        dispatch_channel_queue_size = Integer.parseInt(config.getProperty("dispatch_channel_queue_size", "500"));
         log_output = config.getProperty("log_output");
         user_agent = config.getProperty("user_agent");
         steam_api_key = config.getProperty("steam_api_key");
@@ -187,7 +254,7 @@ public class Configuration {
                 cleanupScheduler.shutdownNow();
             }
             cleanupScheduler = Executors.newScheduledThreadPool(1);
-            cleanupScheduler.scheduleWithFixedDelay(new DatabaseCleaner(), 1, 12, TimeUnit.HOURS);
+            cleanupScheduler.scheduleWithFixedDelay(Repositories.getBackend().getCleaner(), 1, 12, TimeUnit.HOURS);
         }
         if(watchYouTubers.length > 0 && !watchYouTubers[0].equals("") && !disabled_functions.contains("watcher_youtube")) {
             if(youtubeScheduler != null) {
@@ -420,6 +487,274 @@ public class Configuration {
         return sqlite_database;
     }
 
+    /**
+     * Returns the directory the file storage backend keeps its journals in
+     * @return the directory the file storage backend keeps its journals in
+     */
+    public static String getFileDatabase() {
+        return file_database;
+    }
+
+    /**
+     * Returns the number of database connections to keep open while idle
+     * @return the number of database connections to keep open while idle
+     */
+    public static int getDatabasePoolMinSize() {
+        return database_pool_min_size;
+    }
+
+    /**
+     * Returns the maximum number of database connections which may be open at once
+     * @return the maximum number of database connections which may be open at once
+     */
+    public static int getDatabasePoolMaxSize() {
+        return database_pool_max_size;
+    }
+
+    /**
+     * Returns how long a database connection may sit idle before it is closed (in seconds)
+     * @return how long a database connection may sit idle before it is closed (in seconds)
+     */
+    public static int getDatabasePoolIdleTimeout() {
+        return database_pool_idle_timeout;
+    }
+
+    /**
+     * Returns how long a database connection may be held before it is reported as leaked (in seconds)
+     * @return how long a database connection may be held before it is reported as leaked (in seconds)
+     */
+    public static int getDatabasePoolLeakThreshold() {
+        return database_pool_leak_threshold;
+    }
+
+    /**
+     * Returns how long to wait for a database connection when all of them are in use (in seconds)
+     * @return how long to wait for a database connection when all of them are in use (in seconds)
+     */
+    public static int getDatabasePoolBorrowTimeout() {
+        return database_pool_borrow_timeout;
+    }
+
+    /**
+     * Returns the number of prepared statements to cache on each database connection
+     * @return the number of prepared statements to cache on each database connection
+     */
+    public static int getDatabaseStatementCacheSize() {
+        return database_statement_cache_size;
+    }
+
+    /**
+     * Returns the maximum number of queries which may wait for a database thread
+     * @return the maximum number of queries which may wait for a database thread
+     */
+    public static int getDatabaseQueueSize() {
+        return database_queue_size;
+    }
+
+    /**
+     * Returns how long a handler waits for a database call before giving up (in seconds, 0 to wait indefinitely)
+     * @return how long a handler waits for a database call before giving up (in seconds, 0 to wait indefinitely)
+     */
+    public static int getDatabaseTimeout() {
+        return database_timeout;
+    }
+
+    /**
+     * Returns how long the writer waits for more writes to commit with the first one (in milliseconds)
+     * @return how long the writer waits for more writes to commit with the first one (in milliseconds)
+     */
+    public static int getDatabaseCommitDelay() {
+        return database_commit_delay;
+    }
+
+    /**
+     * Returns the largest number of writes committed in one transaction
+     * @return the largest number of writes committed in one transaction
+     */
+    public static int getDatabaseCommitSize() {
+        return database_commit_size;
+    }
+
+    /**
+     * Returns the largest number of rows the database cleaner deletes in one statement
+     * @return the largest number of rows the database cleaner deletes in one statement
+     */
+    public static int getDatabaseCleanupBatchSize() {
+        return database_cleanup_batch_size;
+    }
+
+    /**
+     * Returns how long the database cleaner pauses between batches (in milliseconds)
+     * @return how long the database cleaner pauses between batches (in milliseconds)
+     */
+    public static int getDatabaseCleanupPause() {
+        return database_cleanup_pause;
+    }
+
+    /**
+     * Returns how long each run of the database cleaner may take (in seconds)
+     * @return how long each run of the database cleaner may take (in seconds)
+     */
+    public static int getDatabaseCleanupBudget() {
+        return database_cleanup_budget;
+    }
+
+    /**
+     * Returns how random shouts are picked (random or shuffle)
+     * @return how random shouts are picked (random or shuffle)
+     */
+    public static String getShoutSelection() {
+        return shout_selection;
+    }
+
+    /**
+     * Returns the messages per minute over five minutes above which shouts are not responded to (0 to always respond)
+     * @return the messages per minute over five minutes above which shouts are not responded to (0 to always respond)
+     */
+    public static int getShoutThrottleRate() {
+        return shout_throttle_rate;
+    }
+
+    /**
+     * Returns the number of users tracked for each channel statistic
+     * @return the number of users tracked for each channel statistic
+     */
+    public static int getStatisticsTopK() {
+        return statistics_top_k;
+    }
+
+    /**
+     * Returns the file the day's statistics are saved to
+     * @return the file the day's statistics are saved to
+     */
+    public static String getStatisticsSnapshotFile() {
+        return statistics_snapshot_file;
+    }
+
+    /**
+     * Returns how often the day's statistics are saved (in seconds, 0 to never save them)
+     * @return how often the day's statistics are saved (in seconds, 0 to never save them)
+     */
+    public static int getStatisticsSnapshotInterval() {
+        return statistics_snapshot_interval;
+    }
+
+    /**
+     * Returns how old the cached list of games may get before it is read again (in seconds, 0 to never read it again)
+     * @return how old the cached list of games may get before it is read again (in seconds, 0 to never read it again)
+     */
+    public static int getGameCatalogRefresh() {
+        return game_catalog_refresh;
+    }
+
+    /**
+     * Returns how long a game status lasts before it is cleared (in hours)
+     * @return how long a game status lasts before it is cleared (in hours)
+     */
+    public static int getGameStatusExpiry() {
+        return game_status_expiry;
+    }
+
+    /**
+     * Returns the number of buffered seen updates which triggers a write to the database
+     * @return the number of buffered seen updates which triggers a write to the database
+     */
+    public static int getSeenFlushSize() {
+        return seen_flush_size;
+    }
+
+    /**
+     * Returns how long a seen update may be buffered before it is written to the database (in seconds)
+     * @return how long a seen update may be buffered before it is written to the database (in seconds)
+     */
+    public static int getSeenFlushInterval() {
+        return seen_flush_interval;
+    }
+
+    /**
+     * Returns the default number of threads for each handler pool
+     * @return the default number of threads for each handler pool
+     */
+    public static int getDispatchThreads() {
+        return dispatch_threads;
+    }
+
+    /**
+     * Returns the default queue size for each handler pool
+     * @return the default queue size for each handler pool
+     */
+    public static int getDispatchQueueSize() {
+        return dispatch_queue_size;
+    }
+
+    /**
+     * Checks that a rejection policy is one a handler pool understands
+     * @param policy the name of the policy
+     * @return the name of the policy
+     * @throws IllegalArgumentException if the policy is not recognized
+     */
+    private static String checkRejectionPolicy(String policy) {
+        if(!HandlerPool.isRejectionPolicy(policy)) throw new IllegalArgumentException("Invalid rejection policy: " + policy);
+        return policy;
+    }
+
+    /**
+     * Splits the per-handler pool overrides, checking that every one is well formed
+     * @param pools the overrides, separated by commas
+     * @return the overrides
+     * @throws IllegalArgumentException if an override is malformed
+     */
+    private static String[] checkDispatchPools(String pools) {
+        List<String> definitions = new ArrayList<String>();
+        for(String definition : pools.split(",")) {
+            definition = definition.trim();
+            if(definition.length() == 0) continue;
+            // Syntax: Handler:Threads:Queue Size:Rejection Policy
+            String[] configuration = definition.split(":");
+            if(configuration.length != 4) throw new IllegalArgumentException("Invalid dispatch pool (expected Handler:Threads:Queue Size:Rejection Policy): " + definition);
+            try {
+                if(Integer.parseInt(configuration[1]) < 1 || Integer.parseInt(configuration[2]) < 1) throw new IllegalArgumentException("Invalid dispatch pool (threads and queue size must be at least 1): " + definition);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Invalid dispatch pool (threads and queue size must be numbers): " + definition);
+            }
+            checkRejectionPolicy(configuration[3]);
+            definitions.add(definition);
+        }
+        return definitions.toArray(new String[definitions.size()]);
+    }
+
+    /**
+     * Returns the default rejection policy for each handler pool
+     * @return the default rejection policy for each handler pool
+     */
+    public static String getDispatchRejectionPolicy() {
+        return dispatch_rejection_policy;
+    }
+
+    /**
+     * Returns the per-handler pool overrides
+     * @return the per-handler pool overrides
+     */
+    public static String[] getDispatchPools() {
+        return dispatch_pools;
+    }
+
+    /**
+     * Returns the number of threads shared by the channel mailboxes
+     * @return the number of threads shared by the channel mailboxes
+     */
+    public static int getDispatchChannelThreads() {
+        return dispatch_channel_threads;
+    }
+
+    /**
+     * Returns the maximum number of tasks which may wait in a channel's mailbox
+     * @return the maximum number of tasks which may wait in a channel's mailbox
+     */
+    public static int getDispatchChannelQueueSize() {
+        return dispatch_channel_queue_size;
+    }
+
     /**
      * Returns the logger for use if it exists, otherwise initialize and return a new one
      * @return the logger to use
@@ -0,0 +1,491 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import us.rddt.IRCBot.Dispatch.HandlerPool.NamedThreadFactory;
+
+/**
+ * A pool of database connections shared by every handler. Opening a connection to
+ * MySQL costs a network handshake and authentication, so rather than opening a new
+ * connection for every event, handlers borrow an open connection from the pool and
+ * return it when they are done.
+ * 
+ * Connections are validated before they are handed out, connections which sit idle
+ * for too long are closed (down to the minimum size of the pool), and connections
+ * which are held for too long are reported along with the stack trace of the code
+ * which borrowed them.
+ * 
+ * Each connection also keeps a cache of the statements prepared on it, so the
+ * handful of queries the handlers run on every event are parsed once per
+ * connection rather than once per event.
+ * 
+ * @author Ryan Morrison
+ */
+public class ConnectionPool {
+    /*
+     * Class variables.
+     */
+    // How long to wait for a connection to answer a validation check (in seconds)
+    private static final int VALIDATION_TIMEOUT = 2;
+    // How often to evict idle connections and look for leaks (in seconds)
+    private static final int HOUSEKEEPING_INTERVAL = 30;
+
+    private final String url;
+    private final int minimumSize;
+    private final int maximumSize;
+    private final long idleTimeout;
+    private final long leakThreshold;
+    private final long borrowTimeout;
+    private final int statementCacheSize;
+
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<PooledConnection>();
+    private final Set<PooledConnection> borrowedConnections = Collections.newSetFromMap(new ConcurrentHashMap<PooledConnection, Boolean>());
+    private final Semaphore permits;
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed = false;
+
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong borrowNanos = new AtomicLong();
+    private final AtomicLong maximumBorrowNanos = new AtomicLong();
+    private final AtomicLong borrowTimeouts = new AtomicLong();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong connectionsClosed = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong leaksDetected = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+    private final AtomicLong statementEvictions = new AtomicLong();
+
+    /**
+     * Class constructor
+     * @param url the JDBC URL to connect to
+     * @param minimumSize the number of connections to keep open even when idle
+     * @param maximumSize the maximum number of connections which may be open at once
+     * @param idleTimeout how long a connection may sit idle before it is closed (in milliseconds)
+     * @param leakThreshold how long a connection may be borrowed before it is reported as leaked (in milliseconds, 0 to disable)
+     * @param borrowTimeout how long to wait for a connection when the pool is exhausted (in milliseconds)
+     * @param statementCacheSize the number of prepared statements to cache on each connection (0 to disable)
+     */
+    public ConnectionPool(String url, int minimumSize, int maximumSize, long idleTimeout, long leakThreshold, long borrowTimeout, int statementCacheSize) {
+        this.url = url;
+        this.minimumSize = minimumSize;
+        this.maximumSize = maximumSize;
+        this.idleTimeout = idleTimeout;
+        this.leakThreshold = leakThreshold;
+        this.borrowTimeout = borrowTimeout;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maximumSize, true);
+        housekeeper = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("ConnectionPool"));
+        housekeeper.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    evictIdleConnections();
+                    detectLeaks();
+                } catch (Exception ex) {
+                    Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+                }
+            }
+        }, HOUSEKEEPING_INTERVAL, HOUSEKEEPING_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if no idle connection is available
+     * @return a validated connection
+     * @throws SQLException if the pool is exhausted or a connection cannot be opened
+     */
+    public PooledConnection borrow() throws SQLException {
+        if(closed) throw new SQLException("The connection pool has been closed");
+        long start = System.nanoTime();
+        try {
+            if(!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+                borrowTimeouts.incrementAndGet();
+                throw new SQLException("Timed out waiting for a database connection (" + maximumSize + " connections in use)");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection");
+        }
+        try {
+            PooledConnection pooled;
+            // Take the most recently used connection first, so the rest can age out when the bot is quiet
+            while((pooled = idleConnections.pollFirst()) != null) {
+                if(isValid(pooled)) break;
+                validationFailures.incrementAndGet();
+                destroy(pooled);
+            }
+            if(pooled == null) pooled = open();
+            pooled.markBorrowed(leakThreshold > 0 ? new Throwable("Connection borrowed here") : null);
+            borrowedConnections.add(pooled);
+            recordBorrowTime(System.nanoTime() - start);
+            return pooled;
+        } catch (SQLException ex) {
+            permits.release();
+            throw ex;
+        } catch (RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns a borrowed connection to the pool
+     * @param pooled the connection to return
+     */
+    public void release(PooledConnection pooled) {
+        if(!borrowedConnections.remove(pooled)) return;
+        try {
+            // Leave the connection the way we found it for the next borrower
+            pooled.resetStatements();
+            if(!pooled.getConnection().getAutoCommit()) {
+                pooled.getConnection().rollback();
+                pooled.getConnection().setAutoCommit(true);
+            }
+            pooled.markIdle();
+            if(closed) destroy(pooled);
+            else idleConnections.offerFirst(pooled);
+        } catch (SQLException ex) {
+            // A connection which cannot be reset is not worth keeping
+            destroy(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes every idle connection. Borrowed connections are closed as they are returned.
+     */
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while((pooled = idleConnections.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    /**
+     * Opens a new connection to the database
+     * @return the new connection
+     * @throws SQLException if the connection cannot be opened
+     */
+    private PooledConnection open() throws SQLException {
+        PooledConnection pooled = new PooledConnection(DriverManager.getConnection(url));
+        connectionsOpened.incrementAndGet();
+        return pooled;
+    }
+
+    /**
+     * Closes a connection and drops it from the pool
+     * @param pooled the connection to close
+     */
+    private void destroy(PooledConnection pooled) {
+        try {
+            pooled.getConnection().close();
+        } catch (SQLException ex) {
+            Configuration.getLogger().write(Level.FINE, IRCUtils.getStackTraceString(ex));
+        }
+        connectionsClosed.incrementAndGet();
+    }
+
+    /**
+     * Checks to see if an idle connection is still usable
+     * @param pooled the connection to check
+     * @return true if the connection is usable, false if it should be discarded
+     */
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.getConnection().isValid(VALIDATION_TIMEOUT);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Closes connections which have been idle for too long, keeping at least the minimum
+     * number of connections open
+     */
+    private void evictIdleConnections() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> iterator = idleConnections.descendingIterator();
+        // The oldest connections are at the end of the deque
+        while(iterator.hasNext() && idleConnections.size() + borrowedConnections.size() > minimumSize) {
+            PooledConnection pooled = iterator.next();
+            if(now - pooled.getLastUsed() > idleTimeout && idleConnections.remove(pooled)) {
+                destroy(pooled);
+            }
+        }
+    }
+
+    /**
+     * Reports connections which have been borrowed for longer than the leak threshold
+     */
+    private void detectLeaks() {
+        if(leakThreshold <= 0) return;
+        long now = System.currentTimeMillis();
+        for(PooledConnection pooled : borrowedConnections) {
+            if(now - pooled.getBorrowedAt() > leakThreshold && pooled.markLeakReported()) {
+                leaksDetected.incrementAndGet();
+                Configuration.getLogger().write(Level.WARNING, "Database connection held for " + (now - pooled.getBorrowedAt()) + "ms, possible leak: " + IRCUtils.getStackTraceString(pooled.getBorrowTrace()));
+            }
+        }
+    }
+
+    /**
+     * Records how long a caller waited for a connection
+     * @param nanos the time taken to borrow the connection
+     */
+    private void recordBorrowTime(long nanos) {
+        borrows.incrementAndGet();
+        borrowNanos.addAndGet(nanos);
+        long maximum;
+        while(nanos > (maximum = maximumBorrowNanos.get())) {
+            if(maximumBorrowNanos.compareAndSet(maximum, nanos)) break;
+        }
+    }
+
+    /**
+     * Returns a human-readable summary of the pool's counters
+     * (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        long count = borrows.get();
+        return "Connections: " + borrowedConnections.size() + " borrowed, " + idleConnections.size() + " idle (min " + minimumSize + ", max " + maximumSize + "), " + connectionsOpened.get() + " opened, " + connectionsClosed.get() + " closed. "
+                + "Borrows: " + count + " (avg " + (count == 0 ? 0 : borrowNanos.get() / count / 1000) + "us, max " + maximumBorrowNanos.get() / 1000 + "us), " + borrowTimeouts.get() + " timed out, " + validationFailures.get() + " failed validation, " + leaksDetected.get() + " leaks detected. "
+                + "Statement cache: " + statementHits.get() + " hits, " + statementMisses.get() + " misses, " + statementEvictions.get() + " evictions (" + statementCacheSize + " per connection).";
+    }
+
+    /**
+     * A connection owned by the pool, along with the details needed to manage it.
+     */
+    public class PooledConnection {
+        private final Connection connection;
+        private final StatementCache statementCache = new StatementCache();
+        private final Set<PreparedStatement> usedStatements = Collections.newSetFromMap(new IdentityHashMap<PreparedStatement, Boolean>());
+        private final List<PreparedStatement> evictedStatements = new ArrayList<PreparedStatement>();
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile long borrowedAt;
+        private volatile Throwable borrowTrace;
+        private volatile boolean leakReported;
+
+        /**
+         * Class constructor
+         * @param connection the underlying connection
+         */
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Returns the underlying connection
+         * @return the underlying connection
+         */
+        public Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Returns a prepared statement for the provided SQL, reusing the statement prepared by an
+         * earlier borrower if it is still cached. Preparing the same SQL again while results from the
+         * cached statement are still open returns a separate statement, so those results are not
+         * closed out from under the caller.
+         * The statement must not be used once the connection has been returned to the pool.
+         * @param sql the SQL statement to prepare
+         * @return the prepared statement
+         * @throws SQLException if the statement cannot be prepared
+         */
+        public PreparedStatement prepareStatement(String sql) throws SQLException {
+            return prepareStatement(sql, Statement.NO_GENERATED_KEYS);
+        }
+
+        /**
+         * Returns a prepared statement for the provided SQL which may return the keys it generates
+         * @param sql the SQL statement to prepare
+         * @param autoGeneratedKeys whether the statement returns generated keys (Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS)
+         * @return the prepared statement
+         * @throws SQLException if the statement cannot be prepared
+         */
+        public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+            String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "[keys] " + sql : sql;
+            PreparedStatement statement = statementCache.get(key);
+            if(statement != null && !statement.isClosed() && !hasOpenResults(statement)) {
+                statementHits.incrementAndGet();
+            } else if(statement != null && !statement.isClosed()) {
+                // Still being read by this borrower, so hand out a statement of its own, closed on return
+                statementMisses.incrementAndGet();
+                statement = connection.prepareStatement(sql, autoGeneratedKeys);
+                evictedStatements.add(statement);
+            } else {
+                statementMisses.incrementAndGet();
+                statement = connection.prepareStatement(sql, autoGeneratedKeys);
+                if(statementCacheSize > 0) statementCache.put(key, statement);
+                else evictedStatements.add(statement);
+            }
+            usedStatements.add(statement);
+            return statement;
+        }
+
+        /**
+         * Checks whether the current borrower is still reading results from a statement
+         * @param statement the statement to check
+         * @return true if the statement has been used during this borrow and its result set is still open
+         * @throws SQLException if the result set cannot be checked
+         */
+        private boolean hasOpenResults(PreparedStatement statement) throws SQLException {
+            if(!usedStatements.contains(statement)) return false;
+            ResultSet resultSet = statement.getResultSet();
+            return resultSet != null && !resultSet.isClosed();
+        }
+
+        /**
+         * Closes the result sets and clears the parameters of the statements used by the last
+         * borrower, and closes any statements which were evicted from the cache while in use
+         */
+        void resetStatements() {
+            for(PreparedStatement statement : usedStatements) {
+                try {
+                    if(statement.isClosed()) continue;
+                    ResultSet resultSet = statement.getResultSet();
+                    if(resultSet != null) resultSet.close();
+                    statement.clearParameters();
+                } catch (SQLException ex) {
+                    Configuration.getLogger().write(Level.FINE, IRCUtils.getStackTraceString(ex));
+                }
+            }
+            usedStatements.clear();
+            for(PreparedStatement statement : evictedStatements) {
+                closeStatement(statement);
+            }
+            evictedStatements.clear();
+        }
+
+        /**
+         * Records that the connection has been borrowed
+         * @param borrowTrace the stack trace of the borrower, or null if leak detection is disabled
+         */
+        void markBorrowed(Throwable borrowTrace) {
+            this.borrowedAt = System.currentTimeMillis();
+            this.borrowTrace = borrowTrace;
+            this.leakReported = false;
+        }
+
+        /**
+         * Records that the connection has been returned
+         */
+        void markIdle() {
+            this.lastUsed = System.currentTimeMillis();
+            this.borrowTrace = null;
+        }
+
+        /**
+         * Records that a leak has been reported for this borrow
+         * @return true if the leak had not been reported yet
+         */
+        boolean markLeakReported() {
+            if(leakReported || borrowTrace == null) return false;
+            leakReported = true;
+            return true;
+        }
+
+        long getLastUsed() {
+            return lastUsed;
+        }
+
+        long getBorrowedAt() {
+            return borrowedAt;
+        }
+
+        Throwable getBorrowTrace() {
+            return borrowTrace;
+        }
+
+        /**
+         * Caches prepared statements by their SQL, evicting the least recently used statement
+         * once the cache is full.
+         */
+        private class StatementCache extends LinkedHashMap<String, PreparedStatement> {
+            private static final long serialVersionUID = 1L;
+
+            /**
+             * Class constructor
+             */
+            public StatementCache() {
+                super(16, 0.75f, true);
+            }
+
+            /**
+             * (non-Javadoc)
+             * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+             */
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if(size() <= statementCacheSize) return false;
+                statementEvictions.incrementAndGet();
+                // A statement the current borrower is still using is closed when the connection is returned
+                if(usedStatements.contains(eldest.getValue())) evictedStatements.add(eldest.getValue());
+                else closeStatement(eldest.getValue());
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Closes a statement, logging rather than throwing any failure
+     * @param statement the statement to close
+     */
+    private static void closeStatement(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ex) {
+            Configuration.getLogger().write(Level.FINE, IRCUtils.getStackTraceString(ex));
+        }
+    }
+}
@@ -30,14 +30,16 @@ package us.rddt.IRCBot;
 
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.logging.Level;
 
 /**
- * Helper class to handle database transactions.
+ * Helper class to handle database transactions. Connections are borrowed from a
+ * pool shared by every handler when connect() is called, and returned to the pool
+ * when disconnect() is called. Statements prepared through this object are cached
+ * on the pooled connection and reused by later handlers.
  * 
  * @author Ryan Morrison
  */
@@ -45,9 +47,10 @@ public class Database {
     /*
      * Class variables.
      */
-    private Connection connection = null;
-    private PreparedStatement preparedStatement = null;
-    private ResultSet resultSet = null;
+    private static ConnectionPool connectionPool = null;
+
+    private ConnectionPool pool = null;
+    private ConnectionPool.PooledConnection connection = null;
     private Statement statement = null;
 
     /**
@@ -57,63 +60,117 @@ public class Database {
     }
 
     /**
-     * Connects to the database as specified in IRCBot.properties
+     * Borrows a connection to the database as specified in IRCBot.properties
      * @throws SQLException if a SQL exception occurs
      * @throws ClassNotFoundException if the JDBC driver cannot be loaded
      * @throws IOException if the properties file cannot be loaded
      */
     public void connect() throws SQLException, ClassNotFoundException, IOException {
-        if(Configuration.getDatabaseDriver().equalsIgnoreCase("mysql")) {
-            Class.forName("com.mysql.jdbc.Driver");
-            connection = DriverManager.getConnection("jdbc:mysql://" + Configuration.getMySQLServer() + "/" + Configuration.getMySQLDatabase() + "?user=" + Configuration.getMySQLUser() + "&password=" + Configuration.getMySQLPassword());
-        } else if(Configuration.getDatabaseDriver().equalsIgnoreCase("sqlite")) {
-            Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection("jdbc:sqlite:" + Configuration.getSQLiteDatabase() + ".db");
-        } else {
-            throw new SQLException("Invalid SQL configuration in properties file");
-        }
-        statement = connection.createStatement();
+        if(connection != null) return;
+        pool = getConnectionPool();
+        connection = pool.borrow();
     }
 
     /**
-     * Cleans up any potential connections left behind when the database was accessed
+     * Closes the statement left behind when the database was accessed and returns the
+     * connection to the pool
      * @throws SQLException if a SQL exception occurs
      */
     public void disconnect() throws SQLException {
-        if(resultSet != null) resultSet.close();
-        if(statement != null) statement.close();
-        if(connection != null) connection.close();
+        if(connection == null) return;
+        try {
+            if(statement != null) statement.close();
+        } finally {
+            statement = null;
+            pool.release(connection);
+            connection = null;
+        }
     }
 
     /**
      * Gets the database connection
-     * @return the database connection
+     * @return the database connection, or null if the database is not connected
      */
     public Connection getConnection() {
-        return connection;
+        return connection != null ? connection.getConnection() : null;
     }
 
     /**
-     * Gets the prepared statement for use with the database
-     * @return the prepared statement for use with the database
+     * Prepares a statement, reusing the connection's cached statement for the same SQL if
+     * there is one. The statement must not be closed or used after the database is disconnected.
+     * @param sql the SQL statement to prepare
+     * @return the prepared statement
+     * @throws SQLException if a SQL exception occurs
      */
-    public PreparedStatement getPreparedStatement() {
-        return preparedStatement;
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return connection.prepareStatement(sql);
     }
 
     /**
-     * Gets the result set for a query, or null if the query has not executed
-     * @return the result set for a processed query
+     * Prepares a statement which may return the keys it generates, reusing the connection's
+     * cached statement if there is one
+     * @param sql the SQL statement to prepare
+     * @param autoGeneratedKeys whether the statement returns generated keys (Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS)
+     * @return the prepared statement
+     * @throws SQLException if a SQL exception occurs
      */
-    public ResultSet getResultSet() {
-        return resultSet;
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return connection.prepareStatement(sql, autoGeneratedKeys);
     }
 
     /**
      * Gets the connection's statement
      * @return the connection's statement
+     * @throws SQLException if a SQL exception occurs
      */
-    public Statement getStatement() {
+    public Statement getStatement() throws SQLException {
+        if(statement == null) {
+            statement = getConnection().createStatement();
+        }
         return statement;
     }
+
+    /**
+     * Returns the connection pool, creating it from the configuration if it does not exist yet
+     * @return the connection pool
+     * @throws SQLException if the database configuration is invalid
+     * @throws ClassNotFoundException if the JDBC driver cannot be loaded
+     */
+    private static synchronized ConnectionPool getConnectionPool() throws SQLException, ClassNotFoundException {
+        if(connectionPool == null) {
+            String url;
+            if(Configuration.getDatabaseDriver().equalsIgnoreCase("mysql")) {
+                Class.forName("com.mysql.jdbc.Driver");
+                // Use server-side prepared statements so cached statements are parsed by the server only once
+                url = "jdbc:mysql://" + Configuration.getMySQLServer() + "/" + Configuration.getMySQLDatabase() + "?user=" + Configuration.getMySQLUser() + "&password=" + Configuration.getMySQLPassword() + "&useServerPrepStmts=true";
+            } else if(Configuration.getDatabaseDriver().equalsIgnoreCase("sqlite")) {
+                Class.forName("org.sqlite.JDBC");
+                url = "jdbc:sqlite:" + Configuration.getSQLiteDatabase() + ".db";
+            } else {
+                throw new SQLException("Invalid SQL configuration in properties file");
+            }
+            Configuration.getLogger().write(Level.INFO, "Creating database connection pool (min: " + Configuration.getDatabasePoolMinSize() + ", max: " + Configuration.getDatabasePoolMaxSize() + ")");
+            connectionPool = new ConnectionPool(url, Configuration.getDatabasePoolMinSize(), Configuration.getDatabasePoolMaxSize(), Configuration.getDatabasePoolIdleTimeout() * 1000L, Configuration.getDatabasePoolLeakThreshold() * 1000L, Configuration.getDatabasePoolBorrowTimeout() * 1000L, Configuration.getDatabaseStatementCacheSize());
+        }
+        return connectionPool;
+    }
+
+    /**
+     * Returns a summary of the connection pool's counters
+     * @return a summary of the connection pool's counters
+     */
+    public static synchronized String getPoolStatistics() {
+        return connectionPool != null ? connectionPool.toString() : "The database connection pool has not been created yet.";
+    }
+
+    /**
+     * Closes the connection pool so it is rebuilt from the reloaded configuration.
+     * Connections which are still borrowed are closed as they are returned.
+     */
+    public static synchronized void reload() {
+        if(connectionPool != null) {
+            connectionPool.close();
+            connectionPool = null;
+        }
+    }
 }
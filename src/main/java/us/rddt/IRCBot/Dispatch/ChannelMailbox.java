@@ -0,0 +1,150 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Dispatch;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.IRCUtils;
+
+/**
+ * A mailbox which runs the tasks for a single channel one at a time, in the order
+ * they were received. Mailboxes borrow a thread from a shared pool only while they
+ * have work to do, so many channels can be serviced by a handful of threads while
+ * state that belongs to one channel is only ever touched by one thread at a time.
+ *
+ * @author Ryan Morrison
+ */
+public class ChannelMailbox implements Runnable {
+    /*
+     * Class variables.
+     */
+    // The number of tasks to run before giving the thread back to other channels
+    private static final int TASKS_PER_TURN = 32;
+
+    private final String channel;
+    private final HandlerPool pool;
+    private final BlockingQueue<Runnable> tasks;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AtomicLong rejectedTasks = new AtomicLong();
+
+    /**
+     * Class constructor
+     * @param channel the name of the channel this mailbox belongs to
+     * @param pool the pool which provides threads to the mailbox
+     * @param queueSize the maximum number of tasks which may wait in the mailbox
+     */
+    public ChannelMailbox(String channel, HandlerPool pool, int queueSize) {
+        this.channel = channel;
+        this.pool = pool;
+        this.tasks = new LinkedBlockingQueue<Runnable>(queueSize);
+    }
+
+    /**
+     * Adds a task to the mailbox, scheduling the mailbox to run if it is idle
+     * @param task the task to run
+     * @return true if the task was accepted, false if the mailbox is full
+     */
+    public boolean submit(Runnable task) {
+        if(!tasks.offer(task)) {
+            rejectedTasks.incrementAndGet();
+            return false;
+        }
+        schedule();
+        return true;
+    }
+
+    /**
+     * Hands the mailbox to the pool unless it is already scheduled or running
+     */
+    private void schedule() {
+        if(scheduled.compareAndSet(false, true)) {
+            pool.execute(this);
+        }
+    }
+
+    /**
+     * Method that executes upon thread start
+     * (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    public void run() {
+        try {
+            Runnable task;
+            for(int i = 0; i < TASKS_PER_TURN && (task = tasks.poll()) != null; i++) {
+                try {
+                    task.run();
+                } catch (Exception ex) {
+                    Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            // Tasks may have arrived after the last poll, or we may have run out of turns
+            if(!tasks.isEmpty()) schedule();
+        }
+    }
+
+    /**
+     * Returns the name of the channel this mailbox belongs to
+     * @return the name of the channel this mailbox belongs to
+     */
+    public String getChannel() {
+        return channel;
+    }
+
+    /**
+     * Returns the number of tasks waiting in the mailbox
+     * @return the number of tasks waiting in the mailbox
+     */
+    public int getQueueDepth() {
+        return tasks.size();
+    }
+
+    /**
+     * Returns the number of tasks rejected because the mailbox was full
+     * @return the number of tasks rejected because the mailbox was full
+     */
+    public long getRejectedTasks() {
+        return rejectedTasks.get();
+    }
+
+    /**
+     * Returns a human-readable summary of the mailbox's counters
+     * (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return channel + ": " + getQueueDepth() + " queued, " + getRejectedTasks() + " rejected";
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Dispatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.pircbotx.Channel;
+
+import us.rddt.IRCBot.Configuration;
+
+/**
+ * Runs handler tasks on bounded thread pools rather than spawning a new thread for
+ * every event. Each handler class is given its own named pool, sized according to
+ * the dispatcher settings in IRCBot.properties, so a flood of one kind of event
+ * (e.g. quits during a netsplit) cannot starve the others.
+ * 
+ * Tasks which work with the state of a single channel (shouts, votekicks, seen
+ * updates and statistics) are instead delivered to that channel's mailbox. A
+ * mailbox runs its tasks one at a time and in order, while different channels run
+ * in parallel on a shared pool of threads.
+ *
+ * @author Ryan Morrison
+ */
+public class EventDispatcher {
+    /*
+     * Class variables.
+     */
+    private static final Map<String, HandlerPool> pools = new ConcurrentHashMap<String, HandlerPool>();
+    private static final Map<String, ChannelMailbox> mailboxes = new ConcurrentHashMap<String, ChannelMailbox>();
+    private static HandlerPool channelPool;
+    private static ScheduledExecutorService timer;
+
+    /**
+     * Runs a task on the pool named after the task's class
+     * @param task the task to run
+     */
+    public static void dispatch(Runnable task) {
+        dispatch(task.getClass().getSimpleName(), task);
+    }
+
+    /**
+     * Runs a task on a named pool
+     * @param poolName the name of the pool to run the task on
+     * @param task the task to run
+     */
+    public static void dispatch(String poolName, Runnable task) {
+        try {
+            getPool(poolName).execute(task);
+        } catch (RejectedExecutionException ex) {
+            Configuration.getLogger().write(Level.WARNING, "Rejected " + task.getClass().getSimpleName() + " task, the " + poolName + " pool is saturated");
+        }
+    }
+
+    /**
+     * Runs a task in a channel's mailbox, after any tasks already waiting for that channel
+     * @param channel the channel the task works with
+     * @param task the task to run
+     */
+    public static void dispatchToChannel(Channel channel, Runnable task) {
+        ChannelMailbox mailbox = getMailbox(channel.getName());
+        if(!mailbox.submit(task)) {
+            Configuration.getLogger().write(Level.WARNING, "Rejected " + task.getClass().getSimpleName() + " task, the mailbox for " + mailbox.getChannel() + " is full");
+        }
+    }
+
+    /**
+     * Runs a task on a named pool once a delay has passed
+     * @param poolName the name of the pool to run the task on
+     * @param task the task to run
+     * @param delay the time to wait before running the task
+     * @param unit the unit of the delay
+     */
+    public static void schedule(final String poolName, final Runnable task, long delay, TimeUnit unit) {
+        getTimer().schedule(new Runnable() {
+            public void run() {
+                dispatch(poolName, task);
+            }
+        }, delay, unit);
+    }
+
+    /**
+     * Runs a task in a channel's mailbox once a delay has passed
+     * @param channel the channel the task works with
+     * @param task the task to run
+     * @param delay the time to wait before running the task
+     * @param unit the unit of the delay
+     */
+    public static void scheduleToChannel(final Channel channel, final Runnable task, long delay, TimeUnit unit) {
+        getTimer().schedule(new Runnable() {
+            public void run() {
+                dispatchToChannel(channel, task);
+            }
+        }, delay, unit);
+    }
+
+    /**
+     * Returns a snapshot of the pools which have been created so far
+     * @return the pools which have been created so far
+     */
+    public static List<HandlerPool> getPools() {
+        return new ArrayList<HandlerPool>(pools.values());
+    }
+
+    /**
+     * Returns a snapshot of the channel mailboxes which have been created so far
+     * @return the channel mailboxes which have been created so far
+     */
+    public static List<ChannelMailbox> getMailboxes() {
+        return new ArrayList<ChannelMailbox>(mailboxes.values());
+    }
+
+    /**
+     * Discards the current pools so they are rebuilt from the reloaded configuration.
+     * Tasks already queued on the old pools are allowed to finish. Channel mailboxes
+     * are kept so the order of each channel's tasks is preserved.
+     */
+    public static void reload() {
+        List<HandlerPool> oldPools = getPools();
+        pools.clear();
+        for(HandlerPool pool : oldPools) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns the pool with the provided name, creating it if it does not exist yet
+     * @param name the name of the pool
+     * @return the pool with the provided name
+     */
+    private static HandlerPool getPool(String name) {
+        HandlerPool pool = pools.get(name);
+        if(pool == null) {
+            synchronized(pools) {
+                pool = pools.get(name);
+                if(pool == null) {
+                    pool = createPool(name);
+                    pools.put(name, pool);
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Returns the mailbox for the provided channel, creating it if it does not exist yet
+     * @param channel the name of the channel
+     * @return the mailbox for the provided channel
+     */
+    private static ChannelMailbox getMailbox(String channel) {
+        String key = channel.toLowerCase();
+        ChannelMailbox mailbox = mailboxes.get(key);
+        if(mailbox == null) {
+            synchronized(mailboxes) {
+                mailbox = mailboxes.get(key);
+                if(mailbox == null) {
+                    mailbox = new ChannelMailbox(channel, getChannelPool(), Configuration.getDispatchChannelQueueSize());
+                    mailboxes.put(key, mailbox);
+                }
+            }
+        }
+        return mailbox;
+    }
+
+    /**
+     * Returns the pool shared by all channel mailboxes, creating it if it does not exist yet.
+     * A mailbox must never be dropped, and must never run on the thread which delivered the
+     * task, as that is the thread reading from the server. The pool's queue is therefore
+     * unbounded: a mailbox is queued at most once at a time, so it never holds more entries
+     * than there are channels.
+     * @return the pool shared by all channel mailboxes
+     */
+    private static synchronized HandlerPool getChannelPool() {
+        if(channelPool == null) {
+            int threads = Configuration.getDispatchChannelThreads();
+            Configuration.getLogger().write(Level.INFO, "Creating channel mailbox pool (threads: " + threads + ")");
+            channelPool = new HandlerPool("Channels", threads, 0, "abort");
+        }
+        return channelPool;
+    }
+
+    /**
+     * Creates a pool using its settings from the configuration, falling back to the defaults
+     * @param name the name of the pool
+     * @return the new pool
+     */
+    private static HandlerPool createPool(String name) {
+        int threads = Configuration.getDispatchThreads();
+        int queueSize = Configuration.getDispatchQueueSize();
+        String rejectionPolicy = Configuration.getDispatchRejectionPolicy();
+        // Syntax: Handler:Threads:Queue Size:Rejection Policy
+        // Overrides are checked when the configuration is loaded
+        for(String definition : Configuration.getDispatchPools()) {
+            String[] configuration = definition.split(":");
+            if(configuration[0].equals(name)) {
+                threads = Integer.parseInt(configuration[1]);
+                queueSize = Integer.parseInt(configuration[2]);
+                rejectionPolicy = configuration[3];
+            }
+        }
+        Configuration.getLogger().write(Level.INFO, "Creating handler pool " + name + " (threads: " + threads + ", queue size: " + queueSize + ", rejection policy: " + rejectionPolicy + ")");
+        return new HandlerPool(name, threads, queueSize, rejectionPolicy);
+    }
+
+    /**
+     * Returns the timer used to delay tasks, creating it if it does not exist yet
+     * @return the timer used to delay tasks
+     */
+    private static synchronized ScheduledExecutorService getTimer() {
+        if(timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new HandlerPool.NamedThreadFactory("Timer"));
+        }
+        return timer;
+    }
+}
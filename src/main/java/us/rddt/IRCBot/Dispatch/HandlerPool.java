@@ -0,0 +1,230 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Dispatch;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A named, bounded thread pool which runs the tasks of a single handler class. Each
+ * pool keeps track of how many tasks it has had to reject so the pool sizes can be
+ * tuned against real traffic.
+ *
+ * @author Ryan Morrison
+ */
+public class HandlerPool {
+    /*
+     * Class variables.
+     */
+    private final String name;
+    private final int queueSize;
+    private final String rejectionPolicy;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong rejectedTasks = new AtomicLong();
+
+    /**
+     * Class constructor
+     * @param name the name of the pool, used to name its threads
+     * @param threads the maximum number of threads the pool may run
+     * @param queueSize the maximum number of tasks which may wait for a thread, or 0 for no limit
+     * @param rejectionPolicy the policy to apply when the queue is full (abort, discard, discardoldest or caller)
+     */
+    public HandlerPool(String name, int threads, int queueSize, String rejectionPolicy) {
+        this.name = name;
+        this.queueSize = queueSize;
+        this.rejectionPolicy = rejectionPolicy;
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queueSize > 0 ? new ArrayBlockingQueue<Runnable>(queueSize) : new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory(name), new CountingRejectionHandler(getRejectionHandler(rejectionPolicy)));
+        // Let idle pools shrink back down to nothing between bursts
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Checks whether a policy name is recognized
+     * @param policy the name of the policy
+     * @return true if the policy is abort, discard, discardoldest or caller, false otherwise
+     */
+    public static boolean isRejectionPolicy(String policy) {
+        try {
+            getRejectionHandler(policy);
+            return true;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the rejection handler matching a configured policy name
+     * @param policy the name of the policy
+     * @return the rejection handler to use
+     * @throws IllegalArgumentException if the policy name is not recognized
+     */
+    private static RejectedExecutionHandler getRejectionHandler(String policy) {
+        if(policy.equalsIgnoreCase("abort")) return new ThreadPoolExecutor.AbortPolicy();
+        else if(policy.equalsIgnoreCase("discard")) return new ThreadPoolExecutor.DiscardPolicy();
+        else if(policy.equalsIgnoreCase("discardoldest")) return new ThreadPoolExecutor.DiscardOldestPolicy();
+        else if(policy.equalsIgnoreCase("caller")) return new ThreadPoolExecutor.CallerRunsPolicy();
+        else throw new IllegalArgumentException("Invalid rejection policy: " + policy);
+    }
+
+    /**
+     * Submits a task to the pool
+     * @param task the task to run
+     */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Stops accepting new tasks, allowing queued tasks to finish
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the name of the pool
+     * @return the name of the pool
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of threads currently running tasks
+     * @return the number of threads currently running tasks
+     */
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Returns the maximum number of threads the pool may run
+     * @return the maximum number of threads the pool may run
+     */
+    public int getMaximumThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Returns the number of tasks waiting for a thread
+     * @return the number of tasks waiting for a thread
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns the maximum number of tasks which may wait for a thread
+     * @return the maximum number of tasks which may wait for a thread, or 0 if there is no limit
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Returns the number of tasks that have finished running
+     * @return the number of tasks that have finished running
+     */
+    public long getCompletedTasks() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * Returns the number of tasks rejected because the queue was full
+     * @return the number of tasks rejected because the queue was full
+     */
+    public long getRejectedTasks() {
+        return rejectedTasks.get();
+    }
+
+    /**
+     * Returns a human-readable summary of the pool's counters
+     * (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return name + ": " + getActiveThreads() + "/" + getMaximumThreads() + " threads active, " + getQueueDepth() + (queueSize > 0 ? "/" + queueSize : "") + " queued, " + getCompletedTasks() + " completed, " + getRejectedTasks() + " rejected (" + rejectionPolicy + ")";
+    }
+
+    /**
+     * Counts rejected tasks before handing them to the configured policy.
+     */
+    private class CountingRejectionHandler implements RejectedExecutionHandler {
+        private final RejectedExecutionHandler policy;
+
+        /**
+         * Class constructor
+         * @param policy the policy to apply once the rejection has been counted
+         */
+        public CountingRejectionHandler(RejectedExecutionHandler policy) {
+            this.policy = policy;
+        }
+
+        /**
+         * (non-Javadoc)
+         * @see java.util.concurrent.RejectedExecutionHandler#rejectedExecution(java.lang.Runnable, java.util.concurrent.ThreadPoolExecutor)
+         */
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            rejectedTasks.incrementAndGet();
+            policy.rejectedExecution(task, executor);
+        }
+    }
+
+    /**
+     * Names each thread after the pool it belongs to, e.g. IRCBot-Shouts-1.
+     */
+    public static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        /**
+         * Class constructor
+         * @param name the name of the pool
+         */
+        public NamedThreadFactory(String name) {
+            this.prefix = "IRCBot-" + name + "-";
+        }
+
+        /**
+         * (non-Javadoc)
+         * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+         */
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, prefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -30,5 +30,6 @@ package us.rddt.IRCBot.Enums;
 
 public enum StatisticsModes {
     ADD,
-    REMOVE
+    REMOVE,
+    SHOW
 }
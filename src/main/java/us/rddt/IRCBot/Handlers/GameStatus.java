@@ -28,20 +28,18 @@
 
 package us.rddt.IRCBot.Handlers;
 
-import java.io.IOException;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
 import java.util.logging.Level;
 
 import org.pircbotx.PircBotX;
 import org.pircbotx.hooks.events.MessageEvent;
 
 import us.rddt.IRCBot.Configuration;
-import us.rddt.IRCBot.Database;
 import us.rddt.IRCBot.IRCUtils;
 import us.rddt.IRCBot.Enums.GameStatusModes;
+import us.rddt.IRCBot.Implementations.GameCatalog;
+import us.rddt.IRCBot.Implementations.GameStatusStore;
+import us.rddt.IRCBot.Persistence.Repositories;
 
 /**
  * Allows users to set games that they are currently playing, and allows other
@@ -53,8 +51,6 @@ public class GameStatus implements Runnable {
     // Variables
     private MessageEvent<PircBotX> event;
     private GameStatusModes mode;
-    private Database database;
-    private HashMap<String, String> gamesMap = new HashMap<String, String>();
 
     /**
      * Class constructor
@@ -66,93 +62,56 @@ public class GameStatus implements Runnable {
     }
     
     /**
-     * Adds a game to the database of known games
+     * Adds a game to the database of known games, responding once it has been added
      * @param gameId the shorthand identifier of the game
      * @param game the full name of the game
-     * @throws ClassNotFoundException if the database class cannot be found
-     * @throws SQLException if the SQL query fails
-     * @throws IOException if reading from the ResultSet fails
      */
-    private void addGame(String gameId, String game) throws ClassNotFoundException, SQLException, IOException {
-        // Connect to the database
-        database = new Database();
-        database.connect();
-        
-        // Prepare and execute the SQL query to insert
-        PreparedStatement statement = database.getConnection().prepareStatement("INSERT INTO GameList(GameID, GameName) VALUES (?, ?)");
-        statement.setString(1, gameId);
-        statement.setString(2, game);
-        statement.executeUpdate();
-        
-        // Disconnect from the database
-        database.disconnect();
-        
-        // Add the game to the HashMap for easy access
-        gamesMap.put(gameId, game);
+    private void addGame(final String gameId, final String game) {
+        Repositories.getGameList().add(gameId, game).whenComplete((result, ex) -> {
+            if(ex != null) {
+                Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+                event.respond("Unable to add game - " + Repositories.unwrap(ex).getMessage());
+                return;
+            }
+            // Add the game to the shared catalog
+            GameCatalog.put(gameId, game);
+            event.respond("Done!");
+        });
     }
     
     /**
-     * Deletes a game from the database of known games
+     * Deletes a game from the database of known games, responding once it has been deleted
      * @param gameId the shorthand identifier of the game
-     * @throws ClassNotFoundException if the database class cannot be found
-     * @throws SQLException if the SQL query fails
-     * @throws IOException if reading from the ResultSet fails
      */
-    private void deleteGame(String gameId) throws ClassNotFoundException, SQLException, IOException {
-        // Connect to the database
-        database = new Database();
-        database.connect();
-        
-        // Prepare and execute the SQL query to insert
-        PreparedStatement statement = database.getConnection().prepareStatement("DELETE FROM GameList WHERE GameID = ?");
-        statement.setString(1, gameId);
-        statement.executeUpdate();
-        
-        // Disconnect from the database
-        database.disconnect();
-        
-        // Remove the game from the HashMap
-        gamesMap.remove(gameId);
+    private void deleteGame(final String gameId) {
+        Repositories.getGameList().delete(gameId).whenComplete((result, ex) -> {
+            if(ex != null) {
+                Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+                event.respond("Unable to delete game - " + Repositories.unwrap(ex).getMessage());
+                return;
+            }
+            // Remove the game from the shared catalog
+            GameCatalog.remove(gameId);
+            event.respond("Done!");
+        });
     }
 
     /**
      * Returns the users who have statuses set
-     * @throws ClassNotFoundException if the database class cannot be found
-     * @throws SQLException if the SQL query fails
-     * @throws IOException if reading from the ResultSet fails
+     * @throws SQLException if the statuses cannot be loaded
      */
-    private void getAllStatus() throws ClassNotFoundException, SQLException, IOException {
-        // Boolean value to determine if results were returned or not
-        boolean emptyRows = true;
-        
-        // Connect to the database
-        database = new Database();
-        database.connect();
+    private void getAllStatus() throws SQLException {
         // Prepare the StringBuilder to hold the list of nicks playing
         StringBuilder builder = new StringBuilder();
 
-        // Prepare and execute the SQL query
-        PreparedStatement statement = database.getConnection().prepareStatement("SELECT * FROM GameStatus");
-        ResultSet resultSet = statement.executeQuery();
-
-        // If a result was returned, tell the channel what the user is playing
-        // Otherwise, they aren't playing anything
+        // Tell the channel what each user is playing
         String prefix = "";
-        while(resultSet.next()) {
+        for(GameStatusStore.Status status : GameStatusStore.getAll()) {
             builder.append(prefix);
             prefix = ", ";
-            builder.append(resultSet.getString("Nick") + " playing " + resultSet.getString("Game") + " (" + IRCUtils.toReadableTime(resultSet.getTimestamp("Date"), false, false) + ")");
-            emptyRows = false;
+            builder.append(status.getNick() + " playing " + status.getGame() + " (" + IRCUtils.toReadableTime(status.getSince(), false, false) + ")");
         }
-
-        // Disconnect from the database
-        database.disconnect();
-
-        /*
-         * JDBC does not provide a clear method of determining whether a ResultSet actually has any rows.
-         * We have to use a boolean to work out whether it actually returned anything.
-         */
-        if(emptyRows) builder.append("Nobody is playing any games.");
+        if(prefix.isEmpty()) builder.append("Nobody is playing any games.");
 
         // Return the result
         event.getBot().sendMessage(event.getChannel(), builder.toString());
@@ -161,54 +120,31 @@ public class GameStatus implements Runnable {
     /**
      * Returns the users playing the provided game
      * @param game the game to retrieve the status of
-     * @throws ClassNotFoundException if the database class cannot be found
-     * @throws SQLException if the SQL query fails
-     * @throws IOException if reading from the ResultSet fails
+     * @throws SQLException if the statuses cannot be loaded
      */
-    private void getGameStatus(String game) throws ClassNotFoundException, SQLException, IOException {
-        // Check to see if the game exists in the HashMap and if so update accordingly
-        if(gamesMap.containsKey(game)) {
+    private void getGameStatus(String game) throws SQLException {
+        // Check to see if the game exists in the catalog and if so update accordingly
+        if(GameCatalog.contains(game)) {
             // Get the game's full title
-            game = gamesMap.get(game);
-            // Boolean value to determine if results were returned or not
-            boolean emptyRows = true;
+            game = GameCatalog.getTitle(game);
 
-            // Connect to the database
-            database = new Database();
-            database.connect();
             // Prepare the StringBuilder to hold the list of nicks playing
             StringBuilder builder = new StringBuilder();
-
-            // Prepare and execute the SQL query
-            PreparedStatement statement = database.getConnection().prepareStatement("SELECT * FROM GameStatus WHERE Game = ?");
-            statement.setString(1, game);
-            ResultSet resultSet = statement.executeQuery();
-
             builder.append("Users playing " + game + ": ");
 
-            // If a result was returned, tell the channel what the user is playing
-            // Otherwise, they aren't playing anything
+            // Tell the channel who is playing the game
             String prefix = "";
-            while(resultSet.next()) {
+            for(GameStatusStore.Status status : GameStatusStore.getPlayers(game)) {
                 builder.append(prefix);
                 prefix = ", ";
-                builder.append(resultSet.getString("Nick") + " (" + IRCUtils.toReadableTime(resultSet.getTimestamp("Date"), false, false) + ")");
-                emptyRows = false;
+                builder.append(status.getNick() + " (" + IRCUtils.toReadableTime(status.getSince(), false, false) + ")");
             }
-
-            // Disconnect from the database
-            database.disconnect();
-
-            /*
-             * JDBC does not provide a clear method of determining whether a ResultSet actually has any rows.
-             * We have to use a boolean to work out whether it actually returned anything.
-             */
-            if(emptyRows) builder.append("nobody");
+            if(prefix.isEmpty()) builder.append("nobody");
 
             // Return the result
             event.getBot().sendMessage(event.getChannel(), builder.toString());
         } else {
-            // The game's full title isn't in the HashMap
+            // The game's full title isn't in the catalog
             throw new IllegalArgumentException("Game does not exist");
         }
     }
@@ -216,126 +152,43 @@ public class GameStatus implements Runnable {
     /**
      * Returns the status of a given user to the channel
      * @param nick the nick to retrieve the status of
-     * @throws ClassNotFoundException if the database class cannot be found
-     * @throws SQLException if the SQL query fails
-     * @throws IOException if reading from the ResultSet fails
+     * @throws SQLException if the statuses cannot be loaded
      */
-    private void getUserStatus(String nick) throws ClassNotFoundException, SQLException, IOException {
-        // Connect to the database
-        database = new Database();
-        database.connect();
-
-        // Prepare and execute the SQL query
-        PreparedStatement statement = database.getConnection().prepareStatement("SELECT * FROM GameStatus WHERE Nick = ?");
-        statement.setString(1, nick);
-        ResultSet resultSet = statement.executeQuery();
-
-        // If a result was returned, tell the channel what the user is playing
+    private void getUserStatus(String nick) throws SQLException {
+        // If the user has a status, tell the channel what the user is playing
         // Otherwise, they aren't playing anything
-        if(resultSet.next()) {
-            event.getBot().sendMessage(event.getChannel(), nick + " is playing " + resultSet.getString("Game") + " (" + IRCUtils.toReadableTime(resultSet.getTimestamp("Date"), false, false) + ")");
+        GameStatusStore.Status status = GameStatusStore.get(nick);
+        if(status != null) {
+            event.getBot().sendMessage(event.getChannel(), nick + " is playing " + status.getGame() + " (" + IRCUtils.toReadableTime(status.getSince(), false, false) + ")");
         } else {
             event.getBot().sendMessage(event.getChannel(), nick + " is not playing anything!");
         }
-
-        // Disconnect from the database
-        database.disconnect();
-    }
-
-    /**
-     * Loads full game titles from a database into a HashMap for easy access
-     * @throws ClassNotFoundException if the database class cannot be found
-     * @throws SQLException if the SQL query fails
-     * @throws IOException if reading from the ResultSet fails
-     */
-    private void loadGameTitles() throws ClassNotFoundException, SQLException, IOException {
-        // Connect to the database
-        database = new Database();
-        database.connect();
-
-        // Prepare and execute the SQL query
-        PreparedStatement statement = database.getConnection().prepareStatement("SELECT * FROM GameList");
-        ResultSet resultSet = statement.executeQuery();
-        
-        // Load all the games from the database into the HashMap
-        while(resultSet.next()) {
-            gamesMap.put(resultSet.getString("GameID"), resultSet.getString("GameName"));
-        }
-        
-        // Disconnect from the database
-        database.disconnect();
     }
 
     /**
      * Resets the given user's status (deletes the database entry)
      * @param nick the nick to retrieve the status of
-     * @throws ClassNotFoundException if the database class cannot be found
-     * @throws SQLException if the SQL query fails
-     * @throws IOException if reading from the ResultSet fails
+     * @throws SQLException if the statuses cannot be loaded
      */
-    private void resetUserStatus(String nick) throws ClassNotFoundException, SQLException, IOException {
-        // Connect to the database
-        database = new Database();
-        database.connect();
-
-        // Prepare and execute the query to delete any entry
-        PreparedStatement statement = database.getConnection().prepareStatement("DELETE FROM GameStatus WHERE Nick = ?");
-        statement.setString(1, nick);
-        statement.executeUpdate();
-
-        // Disconnect from the database
-        database.disconnect();
+    private void resetUserStatus(String nick) throws SQLException {
+        // Clear any status the user has set
+        GameStatusStore.reset(nick);
     }
 
     /**
      * Sets or updates the given user's status
      * @param nick the nick to update the status for
      * @param game the shortened game string
-     * @throws ClassNotFoundException if the database class cannot be found
-     * @throws SQLException if the SQL query fails
-     * @throws IOException if reading from the ResultSet fails
-     * @throws IllegalArgumentException if the game's full string doesn't exist in the HashMap
+     * @throws SQLException if the statuses cannot be loaded
+     * @throws IllegalArgumentException if the game's full string doesn't exist in the catalog
      */
-    private void setUserStatus(String nick, String game) throws ClassNotFoundException, SQLException, IOException, IllegalArgumentException {
-        // Prepare the database object
-        database = new Database();
-
-        // Check to see if the game exists in the HashMap and if so update accordingly
-        if(gamesMap.containsKey(game)) {
-            // Get the game's full title
-            game = gamesMap.get(game);
-
-            // Connect to the database
-            database.connect();
-            // Prepare the query to check if an entry already exists and execute it
-            PreparedStatement statement = database.getConnection().prepareStatement("SELECT * FROM GameStatus WHERE Nick = ?");
-            statement.setString(1, nick);
-            ResultSet resultSet = statement.executeQuery();
-            // If there is already a game, update it instead of creating a brand new entry
-            if(resultSet.next()) {
-                // Close the previous statement if it isn't closed already
-                if(!statement.isClosed()) statement.close();
-                // Prepare and execute the SQL query to update
-                statement = database.getConnection().prepareStatement("UPDATE GameStatus SET Game = ?, Date = ? WHERE Nick = ?");
-                statement.setString(1, game);
-                statement.setTimestamp(2, new java.sql.Timestamp(System.currentTimeMillis()));
-                statement.setString(3, nick);
-                statement.executeUpdate();
-            } else {
-                // Close the previous statement if it isn't closed already
-                if(!statement.isClosed()) statement.close();
-                // Prepare and execute the SQL query to insert
-                statement = database.getConnection().prepareStatement("INSERT INTO GameStatus(Nick, Date, Game) VALUES (?, ?, ?)");
-                statement.setString(1, nick);
-                statement.setTimestamp(2, new java.sql.Timestamp(System.currentTimeMillis()));
-                statement.setString(3, game);
-                statement.executeUpdate();
-            }
-
-            // Disconnect from the database
-            database.disconnect();
+    private void setUserStatus(String nick, String game) throws SQLException, IllegalArgumentException {
+        // Check to see if the game exists in the catalog and if so update accordingly
+        if(GameCatalog.contains(game)) {
+            // Set the game's full title as the user's status, replacing any existing status
+            GameStatusStore.set(nick, GameCatalog.getTitle(game));
         } else {
-            // The game's full title isn't in the HashMap
+            // The game's full title isn't in the catalog
             throw new IllegalArgumentException("Game does not exist");
         }
     }
@@ -346,15 +199,6 @@ public class GameStatus implements Runnable {
      * @see java.lang.Runnable#run()
      */
     public void run() {
-        // Load the list of game titles into the HashMap
-        // If they cannot be loaded, just return
-        try {
-            this.loadGameTitles();
-        } catch (Exception ex) {
-            Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
-            return;
-        }
-        
         try {
             if(mode == GameStatusModes.SET) {
                 // Split the command into parameters
@@ -398,7 +242,7 @@ public class GameStatus implements Runnable {
                 // Ensure the user has provided enough parameters for the command
                 if(parameters.length > 3) {
                     // Ensure the user is not adding a duplicate game
-                    if(!gamesMap.containsKey(parameters[2])) {
+                    if(!GameCatalog.contains(parameters[2])) {
                         // The rest of the parameters is the full name of the game, so combine them into a string
                         StringBuilder gameName = new StringBuilder();
                         for(int i = 3; i < parameters.length; i++) {
@@ -406,7 +250,6 @@ public class GameStatus implements Runnable {
                         }
                         // Add the game
                         addGame(parameters[2], gameName.toString().trim());
-                        event.respond("Done!");
                     } else {
                         event.respond("Game \"" + parameters[2] + "\" already exists!");
                     }
@@ -419,7 +262,6 @@ public class GameStatus implements Runnable {
                 // Ensure the user has provided enough parameters for the command
                 if(parameters.length > 2) {
                     deleteGame(parameters[2]);
-                    event.respond("Done!");
                 } else {
                     event.respond("You must provide a game to delete!");
                 }
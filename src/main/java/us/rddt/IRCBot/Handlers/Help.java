@@ -85,6 +85,10 @@ public class Help implements Runnable {
             event.respond("    game [game] (gets the users currently playing a provided game)");
             event.respond("    all (gets all users playing any game)");
         }
+        else if(command.equalsIgnoreCase("stats")) {
+            event.respond("stats - shows how active the channel has been today and recently, and its most active users.");
+            event.respond("Usage: " + Configuration.getCommandPrefix() + "stats");
+        }
         else if(command.equalsIgnoreCase("steam")) {
             event.respond("steam - gets the status of a Steam user.");
             event.respond("Usage: " + Configuration.getCommandPrefix() + "steam [numerical ID or community ID]");
@@ -102,6 +106,7 @@ public class Help implements Runnable {
             event.respond("    list (returns statistics about all quotes in the database)");
             event.respond("    user (returns statistics about a user's quotes in the database)");
             event.respond("    top10 (returns the top 10 most active shouters in a channel)");
+            event.respond("    search [--page N] [words] (returns the quotes containing the provided words, best match first)");
             event.respond("    delete [--purge] [quote] (channel operators only - deletes a provided quote from the database. This command will permanently purge a quote if the --purge argument is provided.)");
             event.respond("    undelete [quote] (channel operators only - undeletes a provided quote from the database.)");
         }
@@ -137,7 +142,7 @@ public class Help implements Runnable {
         event.respond("Hi, I'm " + event.getBot().getNick() + "! I'm here to provide conveniences to IRC channels.");
         event.respond("For help with a specific command, message me with 'help [command]'.");
         event.respond(" -- List of Commands --");
-        event.respond("calc, convert, decide, g, seen, status, steam, ud, who, votekick");
+        event.respond("calc, convert, decide, g, seen, stats, status, steam, ud, who, votekick");
         event.respond(" -- List of Operator Commands --");
         event.respond("appendtopic, disablestatistics, enablestatistics, removetopic");
     }
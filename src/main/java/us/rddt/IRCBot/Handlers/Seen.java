@@ -28,8 +28,7 @@
 
 package us.rddt.IRCBot.Handlers;
 
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.sql.Timestamp;
 import java.util.logging.Level;
 
 import org.pircbotx.Channel;
@@ -40,8 +39,10 @@ import org.pircbotx.hooks.events.PartEvent;
 import org.pircbotx.hooks.events.QuitEvent;
 
 import us.rddt.IRCBot.Configuration;
-import us.rddt.IRCBot.Database;
 import us.rddt.IRCBot.IRCUtils;
+import us.rddt.IRCBot.Implementations.SeenIndex;
+import us.rddt.IRCBot.Implementations.SeenWriter;
+import us.rddt.IRCBot.Persistence.Repositories;
 
 /**
  * Since the services we use on the ircd doesn't support the !seen command, our bot
@@ -53,7 +54,6 @@ import us.rddt.IRCBot.IRCUtils;
  * @author Ryan Morrison
  */
 public class Seen implements Runnable {
-    private Database database;
     /*
      * Class variables.
      */
@@ -157,70 +157,46 @@ public class Seen implements Runnable {
             return;
             // If all else fails, we have a valid request
         } else {
-            // Create a new instance of the database
-            database = new Database();
-            try {
-                // Connect to the database and execute our select query
-                database.connect();
-                PreparedStatement statement = database.getPreparedStatement();
-                statement = database.getConnection().prepareStatement("SELECT Date FROM Seen WHERE Nick = ? AND Channel = ?");
-                statement.setString(1, seenUser);
-                statement.setString(2, event.getChannel().getName());
-                ResultSet resultSet = statement.executeQuery();
-                // Respond appropriately should our user exist/not exist in the database
-                if(resultSet.next()) {
-                    event.respond(seenUser + " was last seen about " + IRCUtils.toReadableTime(resultSet.getTimestamp("Date"), false, true) + " ago.");
+            // Answer from memory once the index has been loaded
+            if(SeenIndex.isLoaded()) {
+                long date = SeenIndex.lookup(seenUser, event.getChannel().getName());
+                if(date != -1) {
+                    event.respond(seenUser + " was last seen about " + IRCUtils.toReadableTime(new Timestamp(date), false, true) + " ago.");
                 } else {
                     event.respond("I haven't seen " + seenUser + ".");
                 }
-                // Disconnect from the database
-                database.disconnect();
-            } catch (Exception ex) {
-                Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+                return;
+            }
+            SeenIndex.loadAsync();
+            // An update which hasn't been written to the database yet is always the most recent
+            Timestamp buffered = SeenWriter.lookup(seenUser, event.getChannel().getName());
+            if(buffered != null) {
+                event.respond(seenUser + " was last seen about " + IRCUtils.toReadableTime(buffered, false, true) + " ago.");
+                return;
             }
+            // Ask the database, responding once it answers rather than waiting for it here
+            final String user = seenUser;
+            Repositories.getSeen().get(user, event.getChannel().getName()).whenComplete((record, ex) -> {
+                if(ex != null) {
+                    Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+                } else if(record != null) {
+                    event.respond(user + " was last seen about " + IRCUtils.toReadableTime(new Timestamp(record.getDate()), false, true) + " ago.");
+                } else {
+                    event.respond("I haven't seen " + user + ".");
+                }
+            });
         }
     }
 
     /**
-     * Updates the database upon user leaving a channel or disconnecting from the network
+     * Updates the database upon user leaving a channel or disconnecting from the network. The
+     * update is buffered and written to the database in a batch with other updates.
      * @param userToUpdate the user that left/disconnected
      * @param channelToUpdate the channel we saw the user disconnect in
      */
     private void updateSeen(String userToUpdate, String channelToUpdate) {
-        // Create a new instance of the database
-        database = new Database();
-        try {
-            // Connect to the database and execute our select query to see whether to insert or update
-            database.connect();
-            PreparedStatement statement = database.getPreparedStatement();
-            statement = database.getConnection().prepareStatement("SELECT Date FROM Seen WHERE Nick = ? AND Channel = ?");
-            statement.setString(1, userToUpdate);
-            statement.setString(2, channelToUpdate);
-            ResultSet resultSet = statement.executeQuery();
-            // If a record exists, then run another query to update the date appropriately
-            if(resultSet.next()) {
-                // Close the previous statement if it isn't closed already
-                if(!statement.isClosed()) statement.close();
-                statement = database.getConnection().prepareStatement("UPDATE Seen SET Date = ? WHERE Nick = ? AND Channel = ?");
-                statement.setTimestamp(1, new java.sql.Timestamp(System.currentTimeMillis()));
-                statement.setString(2, userToUpdate);
-                statement.setString(3, channelToUpdate);
-                statement.executeUpdate();
-            }
-            // Otherwise, create a new record in the database for the user
-            else {
-                // Close the previous statement if it isn't closed already
-                if(!statement.isClosed()) statement.close();
-                statement = database.getConnection().prepareStatement("INSERT INTO Seen(Nick, Date, Channel) VALUES (?, ?, ?)");
-                statement.setString(1, userToUpdate);
-                statement.setTimestamp(2, new java.sql.Timestamp(System.currentTimeMillis()));
-                statement.setString(3, channelToUpdate);
-                statement.executeUpdate();
-            }
-            // Disconnect from the database
-            database.disconnect();
-        } catch (Exception ex) {
-            Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
-        }
+        long date = System.currentTimeMillis();
+        SeenIndex.record(userToUpdate, channelToUpdate, date);
+        SeenWriter.record(userToUpdate, channelToUpdate, date);
     }
 }
@@ -28,15 +28,13 @@
 
 package us.rddt.IRCBot.Handlers;
 
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 import org.pircbotx.Colors;
@@ -48,8 +46,15 @@ import twitter4j.TwitterException;
 import twitter4j.TwitterFactory;
 import twitter4j.auth.AccessToken;
 import us.rddt.IRCBot.Configuration;
-import us.rddt.IRCBot.Database;
 import us.rddt.IRCBot.IRCUtils;
+import us.rddt.IRCBot.Dispatch.EventDispatcher;
+import us.rddt.IRCBot.Implementations.QuoteFilter;
+import us.rddt.IRCBot.Implementations.QuoteIndex;
+import us.rddt.IRCBot.Implementations.QuoteSearchIndex;
+import us.rddt.IRCBot.Implementations.ShoutLeaderboard;
+import us.rddt.IRCBot.Persistence.Quote;
+import us.rddt.IRCBot.Persistence.QuoteRepository;
+import us.rddt.IRCBot.Persistence.Repositories;
 import us.rddt.IRCBot.Statistics.Statistics;
 
 /**
@@ -112,12 +117,15 @@ public class Shouts implements Runnable {
     /*
      * Class variables.
      */
-    private static volatile Map<String,Shout> shoutMap = Collections.synchronizedMap(new HashMap<String,Shout>());
-    private Database database;
+    // Shout tasks run in their channel's mailbox, so each channel's entry is only touched by one thread at a time
+    private static final Map<String,Shout> shoutMap = new ConcurrentHashMap<String,Shout>();
+    private final QuoteRepository quotes = Repositories.getQuotes();
     private MessageEvent<PircBotX> event = null;
     private ShoutEvents eventType;
     private int quoteNumber;
     private String randomQuote = null;
+    // The number of quotes shown on each page of search results
+    private static final int SEARCH_PAGE_SIZE = 3;
 
     public enum ShoutEvents {
         RANDOM_SHOUT,
@@ -129,6 +137,7 @@ public class Shouts implements Runnable {
         DELETE_COMMAND,
         UNDELETE_COMMAND,
         PURGE_COMMAND,
+        SEARCH_COMMAND,
     }
 
     /**
@@ -141,17 +150,26 @@ public class Shouts implements Runnable {
     }
 
     /**
-     * Adds a new quote to the database
+     * Adds a new quote to the database, unless the channel already has it
      * @throws SQLException if the SQL query does not execute correctly
      */
     private void addNewQuote() throws SQLException {
-        // Build and run our update against the database
-        PreparedStatement statement = database.getConnection().prepareStatement("INSERT INTO Quotes(Nick, Date, Channel, Quote, Deleted) VALUES (?, ?, ?, ?, 0)");
-        statement.setString(1, event.getUser().getNick());
-        statement.setTimestamp(2, new java.sql.Timestamp(System.currentTimeMillis()));
-        statement.setString(3, event.getChannel().getName());
-        statement.setString(4, event.getMessage().trim());
-        statement.executeUpdate();
+        String channel = event.getChannel().getName();
+        String hash = QuoteFilter.hash(event.getMessage());
+        QuoteFilter filter = QuoteFilter.getFilter(channel);
+        // Most shouts are quotes we already know. The filter rules out new quotes without asking the
+        // database, but as it can be wrong about a quote being known, a hit is confirmed with a read
+        // rather than dropping a new quote
+        if(filter.mightContain(hash) && Repositories.await(quotes.containsHash(channel, hash))) return;
+        int id = Repositories.await(quotes.add(channel, event.getUser().getNick(), event.getMessage().trim(), hash));
+        filter.add(hash);
+        if(id == -1) return;
+        ShoutLeaderboard leaderboard = ShoutLeaderboard.getLoadedLeaderboard(channel);
+        if(leaderboard != null) leaderboard.add(event.getUser().getNick());
+        // Make the new quote available to be picked at random and searched for
+        getQuoteIndex().add(id);
+        QuoteSearchIndex searchIndex = QuoteSearchIndex.getLoadedIndex(channel);
+        if(searchIndex != null) searchIndex.add(id, event.getMessage().trim());
     }
     
     /**
@@ -160,28 +178,44 @@ public class Shouts implements Runnable {
      * @throws SQLException if the SQL query does not execute correctly
      */
     private int deleteQuote(String quote) throws SQLException {
-        PreparedStatement statement = database.getConnection().prepareStatement("UPDATE Quotes SET Deleted = '1' WHERE Quote = ? AND Channel = ? AND Deleted = '0'");
-        statement.setString(1, quote);
-        statement.setString(2, event.getChannel().getName());
-        return statement.executeUpdate();
+        List<Quote> matches = Repositories.await(quotes.find(event.getChannel().getName(), quote));
+        int deleted = Repositories.await(quotes.setDeleted(event.getChannel().getName(), quote, true));
+        ShoutLeaderboard leaderboard = ShoutLeaderboard.getLoadedLeaderboard(event.getChannel().getName());
+        QuoteSearchIndex searchIndex = QuoteSearchIndex.getLoadedIndex(event.getChannel().getName());
+        for(Quote match : matches) {
+            if(match.isDeleted()) continue;
+            getQuoteIndex().remove(match.getId());
+            if(searchIndex != null) searchIndex.remove(match.getId(), quote);
+            if(leaderboard != null) leaderboard.remove(match.getNick());
+        }
+        return deleted;
     }
 
     /**
-     * Check to see if a quote exists
-     * @return true if the quote exists, false if it does not
-     * @throws SQLException if the SQL query does not execute correctly
+     * Returns the leaderboard of shouters for the current channel
+     * @return the leaderboard of shouters for the current channel
+     * @throws SQLException if the leaderboard cannot be loaded
      */
-    private boolean doesQuoteExist() throws SQLException {
-        // Again, prepared statements to sanitize input
-        PreparedStatement statement = database.getConnection().prepareStatement("SELECT * FROM Quotes WHERE Quote = ? AND Channel = ?");
-        statement.setString(1, event.getMessage());
-        statement.setString(2, event.getChannel().getName());
-        ResultSet resultSet = statement.executeQuery();
-        if(resultSet.next()) {
-            return true;
-        } else {
-            return false;
-        }
+    private ShoutLeaderboard getLeaderboard() throws SQLException {
+        return ShoutLeaderboard.getLeaderboard(event.getChannel().getName());
+    }
+
+    /**
+     * Returns the index of live quotes for the current channel
+     * @return the index of live quotes for the current channel
+     * @throws SQLException if the index cannot be loaded
+     */
+    private QuoteIndex getQuoteIndex() throws SQLException {
+        return QuoteIndex.getIndex(event.getChannel().getName());
+    }
+
+    /**
+     * Returns the word index of live quotes for the current channel
+     * @return the word index of live quotes for the current channel
+     * @throws SQLException if the index cannot be loaded
+     */
+    private QuoteSearchIndex getSearchIndex() throws SQLException {
+        return QuoteSearchIndex.getIndex(event.getChannel().getName());
     }
 
     /**
@@ -216,18 +250,13 @@ public class Shouts implements Runnable {
      * @throws SQLException if the SQL query does not execute correctly
      */
     private String getQuoteInfo(String quote) throws SQLException {
-        // You should know why by now.
-        PreparedStatement statement = database.getConnection().prepareStatement("SELECT * FROM Quotes WHERE Quote = ? AND Channel = ? AND Deleted = '0'");
-        statement.setString(1, quote);
-        statement.setString(2, event.getChannel().getName());
-        ResultSet resultSet = statement.executeQuery();
-        if(resultSet.next()) {
+        for(Quote match : Repositories.await(quotes.find(event.getChannel().getName(), quote))) {
+            if(match.isDeleted()) continue;
             // Tease the user if it's their own quote
-            if(resultSet.getString("Nick").equals(event.getUser().getNick())) return Colors.BOLD + "YOU" + Colors.NORMAL + " taught me that! (Don't you remember? Put down the bong!) about " + IRCUtils.toReadableTime((Date)resultSet.getTimestamp("Date"), false, true) + " ago.";
-            return resultSet.getString("Nick") + " shouted this about " + IRCUtils.toReadableTime((Date)resultSet.getTimestamp("Date"), false, true) + " ago.";
-        } else {
-            return "Quote not found.";
+            if(match.getNick().equals(event.getUser().getNick())) return Colors.BOLD + "YOU" + Colors.NORMAL + " taught me that! (Don't you remember? Put down the bong!) about " + IRCUtils.toReadableTime(match.getDate(), false, true) + " ago.";
+            return match.getNick() + " shouted this about " + IRCUtils.toReadableTime(match.getDate(), false, true) + " ago.";
         }
+        return "Quote not found.";
     }
 
     /**
@@ -236,20 +265,11 @@ public class Shouts implements Runnable {
      * @throws SQLException if the SQL query does not execute correctly
      */
     private String getQuoteStats() throws SQLException {
-        // First query to pull the total number of quotes
-        PreparedStatement statement = database.getConnection().prepareStatement("SELECT COUNT(*) FROM Quotes WHERE Channel = ? AND Deleted = '0'");
-        statement.setString(1, event.getChannel().getName());
-        ResultSet resultSet = statement.executeQuery();
-        if(resultSet.next()) {
-            int count = resultSet.getInt("COUNT(*)");
-            // and the second to pull the most active shouter.
-            statement = database.getConnection().prepareStatement("SELECT COUNT(Nick), Nick FROM Quotes WHERE Channel = ? AND Deleted = '0' GROUP BY Nick ORDER BY COUNT(Nick) DESC LIMIT 1");
-            statement.setString(1, event.getChannel().getName());
-            resultSet = statement.executeQuery();
-            if(resultSet.next()) {
-                // If both of these execute successfully (which they always should) then return the details the user asked for
-                return "I have " + count + " quotes in my database. The most active shouter is " + resultSet.getString("Nick") + " with " + resultSet.getInt("COUNT(Nick)") + ".";
-            }
+        // The total comes from the quote index and the most active shouter from the front of the leaderboard
+        int count = getQuoteIndex().size();
+        List<Map.Entry<String, Integer>> top = getLeaderboard().getTop(1);
+        if(!top.isEmpty()) {
+            return "I have " + count + " quotes in my database. The most active shouter is " + top.get(0).getKey() + " with " + top.get(0).getValue() + ".";
         }
         return null;
     }
@@ -261,12 +281,12 @@ public class Shouts implements Runnable {
      * @throws SQLException if the SQL query does not execute correctly
      */
     private String getQuoteLine(int line) throws SQLException {
-        PreparedStatement statement = database.getConnection().prepareStatement("SELECT * FROM Quotes WHERE Channel = ? AND Deleted = '0' LIMIT ?,1");
-        statement.setString(1, event.getChannel().getName());
-        statement.setInt(2, line - 1);
-        ResultSet resultSet = statement.executeQuery();
-        if(resultSet.next()) {
-            return "Quote #" + line + " (" + resultSet.getString("Quote") + ") was shouted by " + resultSet.getString("Nick") + " about " + IRCUtils.toReadableTime((Date)resultSet.getTimestamp("Date"), false, true) + " ago.";
+        // Quotes are numbered from oldest to newest, so the index can find the quote's ID without paging through the table
+        int id = getQuoteIndex().getByOrdinal(line);
+        if(id == -1) return "Quote #" + line + " not found.";
+        Quote quote = Repositories.await(quotes.get(event.getChannel().getName(), id));
+        if(quote != null) {
+            return "Quote #" + line + " (" + quote.getText() + ") was shouted by " + quote.getNick() + " about " + IRCUtils.toReadableTime(quote.getDate(), false, true) + " ago.";
         } else {
             return "Quote #" + line + " not found.";
         }
@@ -278,28 +298,60 @@ public class Shouts implements Runnable {
      * @throws SQLException if the SQL query does not execute correctly
      */
     private String getRandomQuote() throws SQLException {
-        // We use prepared statements to sanitize input from the user
+        // Pick the quote from the channel's index, so the database only has to fetch a single row by its ID
+        QuoteIndex index = getQuoteIndex();
+        int id = Configuration.getShoutSelection().equalsIgnoreCase("shuffle") ? index.pickShuffled() : index.pickRandom();
+        if(id == -1) return null;
         // Specifying the channel allows different channels to have their own list of quotes available
-        PreparedStatement statement= database.getConnection().prepareStatement("SELECT * FROM Quotes WHERE Channel = ? AND Deleted = '0' ORDER BY RAND() LIMIT 1");
-        statement.setString(1, event.getChannel().getName());
-        // Execute our query against the database
-        ResultSet resultSet = statement.executeQuery();
-        if(resultSet.next()) {
-            Shout shout = new Shout(resultSet.getString("Quote"), resultSet.getString("Nick"), IRCUtils.toReadableTime((Date)resultSet.getTimestamp("Date"), false, true));
+        Quote quote = Repositories.await(quotes.get(event.getChannel().getName(), id));
+        if(quote != null) {
+            Shout shout = new Shout(quote.getText(), quote.getNick(), IRCUtils.toReadableTime(quote.getDate(), false, true));
             // Save the last quote to prevent an extra DB hit on !who last
             shoutMap.put(event.getChannel().getName(), shout);
             // Tweet the quote if enabled
             if(!Configuration.getDisabledFunctions().contains("tweetshouts")) {
-                new Thread(new TweetShout(shout)).start();
+                EventDispatcher.dispatch(new TweetShout(shout));
             }
             // Return the random quote
             return shout.getQuote();
         } else {
-            // The database query returned nothing, so return null
+            // The quote was removed from the database behind our back, so forget it
+            index.remove(id);
             return null;
         }
     }
 
+    /**
+     * Returns a page of the quotes containing the words in a query
+     * @param query the words to search for
+     * @param page the page of results to return, counting from 1
+     * @return the formatted page of matching quotes
+     * @throws SQLException if the SQL query does not execute correctly
+     */
+    private String searchQuotes(String query, int page) throws SQLException {
+        List<Integer> results = getSearchIndex().search(query);
+        if(results.isEmpty()) return "No quotes found matching \"" + query + "\".";
+        int pages = (results.size() + SEARCH_PAGE_SIZE - 1) / SEARCH_PAGE_SIZE;
+        if(page > pages) return "There are only " + pages + " page(s) of quotes matching \"" + query + "\".";
+        StringBuilder builder = new StringBuilder();
+        builder.append("Found " + results.size() + " quote(s) matching \"" + query + "\" (page " + page + " of " + pages + "): ");
+        QuoteIndex index = getQuoteIndex();
+        // Only the quotes on the requested page are fetched from the database, all at once
+        List<CompletableFuture<Quote>> fetches = new ArrayList<CompletableFuture<Quote>>();
+        for(int id : results.subList((page - 1) * SEARCH_PAGE_SIZE, Math.min(page * SEARCH_PAGE_SIZE, results.size()))) {
+            fetches.add(quotes.get(event.getChannel().getName(), id));
+        }
+        String prefix = "";
+        for(CompletableFuture<Quote> fetch : fetches) {
+            Quote quote = Repositories.await(fetch);
+            if(quote == null) continue;
+            builder.append(prefix);
+            prefix = ", ";
+            builder.append("#" + index.getOrdinal(quote.getId()) + " " + quote.getNick() + ": \"" + Colors.removeFormattingAndColors(quote.getText()) + "\"");
+        }
+        return builder.toString();
+    }
+
     /**
      * Returns the top 10 shouters on the channel
      * @return the formatted top 10 shouters on the channel
@@ -310,14 +362,9 @@ public class Shouts implements Runnable {
         // A temporary StringBuilder to construct our top 10 list
         StringBuilder constructedString = new StringBuilder();
         constructedString.append("The top 10 shouters in " + event.getChannel().getName() + ": ");
-        // We use prepared statements to sanitize input from the user
         // Specifying the channel allows different channels to have their own list of quotes available
-        PreparedStatement statement = database.getConnection().prepareStatement("SELECT COUNT(Nick), Nick FROM Quotes WHERE Channel = ? AND Deleted = '0' GROUP BY Nick ORDER BY COUNT(Nick) DESC LIMIT 10");
-        statement.setString(1, event.getChannel().getName());
-        // Execute our query against the database
-        ResultSet resultSet = statement.executeQuery();
-        while(resultSet.next()) {
-            constructedString.append(tempCount + ": " + resultSet.getString("Nick") + " (" + resultSet.getInt("COUNT(Nick)") + "), ");
+        for(Map.Entry<String, Integer> shouter : getLeaderboard().getTop(10)) {
+            constructedString.append(tempCount + ": " + shouter.getKey() + " (" + shouter.getValue() + "), ");
             tempCount++;
         }
         return constructedString.toString().substring(0, constructedString.length() - 2);
@@ -332,17 +379,10 @@ public class Shouts implements Runnable {
     private Map<String, Integer> getUserStats(List<String> nicks) throws SQLException {
         // Create a map to hold each user's stats
         Map<String, Integer> userStats = new HashMap<String, Integer>();
-        // For each user, query the database and insert the result into the map
+        // For each user, look up their count on the leaderboard and insert the result into the map
+        ShoutLeaderboard leaderboard = getLeaderboard();
         for(String nick : nicks) {
-            PreparedStatement statement = database.getConnection().prepareStatement("SELECT COUNT(Nick) FROM Quotes WHERE Channel = ? AND Nick = ? AND Deleted = '0'");
-            statement.setString(1, event.getChannel().getName());
-            statement.setString(2, nick);
-            ResultSet resultSet = statement.executeQuery();
-            if(resultSet.next()) {
-                userStats.put(nick, resultSet.getInt("COUNT(Nick)"));
-            } else {
-                userStats.put(nick, 0);
-            }
+            userStats.put(nick, leaderboard.getCount(nick));
         }
         // Return the map
         return userStats;
@@ -371,10 +411,19 @@ public class Shouts implements Runnable {
      * @throws SQLException if the SQL query does not execute correctly
      */
     private int permanentlyDeleteQuote(String quote) throws SQLException {
-        PreparedStatement statement = database.getConnection().prepareStatement("DELETE FROM Quotes WHERE Quote = ? AND Channel = ?");
-        statement.setString(1, quote);
-        statement.setString(2, event.getChannel().getName());
-        return statement.executeUpdate();
+        List<Quote> matches = Repositories.await(quotes.find(event.getChannel().getName(), quote));
+        int purged = Repositories.await(quotes.purge(event.getChannel().getName(), quote));
+        ShoutLeaderboard leaderboard = ShoutLeaderboard.getLoadedLeaderboard(event.getChannel().getName());
+        QuoteSearchIndex searchIndex = QuoteSearchIndex.getLoadedIndex(event.getChannel().getName());
+        for(Quote match : matches) {
+            getQuoteIndex().remove(match.getId());
+            if(searchIndex != null) searchIndex.remove(match.getId(), quote);
+            // Deleted quotes were already taken off the leaderboard
+            if(leaderboard != null && !match.isDeleted()) leaderboard.remove(match.getNick());
+        }
+        // The filter cannot forget the purged quote, so rebuild it
+        QuoteFilter.invalidate(event.getChannel().getName());
+        return purged;
     }
     
     /**
@@ -383,10 +432,27 @@ public class Shouts implements Runnable {
      * @throws SQLException if the SQL query does not execute correctly
      */
     private int undeleteQuote(String quote) throws SQLException {
-        PreparedStatement statement = database.getConnection().prepareStatement("UPDATE Quotes SET Deleted = '0' WHERE Quote = ? AND Channel = ?");
-        statement.setString(1, quote);
-        statement.setString(2, event.getChannel().getName());
-        return statement.executeUpdate();
+        List<Quote> matches = Repositories.await(quotes.find(event.getChannel().getName(), quote));
+        int undeleted = Repositories.await(quotes.setDeleted(event.getChannel().getName(), quote, false));
+        ShoutLeaderboard leaderboard = ShoutLeaderboard.getLoadedLeaderboard(event.getChannel().getName());
+        QuoteSearchIndex searchIndex = QuoteSearchIndex.getLoadedIndex(event.getChannel().getName());
+        for(Quote match : matches) {
+            if(!match.isDeleted()) continue;
+            getQuoteIndex().add(match.getId());
+            if(searchIndex != null) searchIndex.add(match.getId(), quote);
+            if(leaderboard != null) leaderboard.add(match.getNick());
+        }
+        return undeleted;
+    }
+
+    /**
+     * Checks whether the channel is busier than shout_throttle_rate, in which case random
+     * quotes are held back so the bot does not add to the noise
+     * @return true if the channel is too busy to respond to shouts, false if it is not
+     */
+    private boolean isChannelBusy() {
+        int rate = Configuration.getShoutThrottleRate();
+        return rate > 0 && Statistics.getChannelActivity(event.getChannel()).getMessagesPerMinute(5) > rate;
     }
 
     /**
@@ -396,19 +462,18 @@ public class Shouts implements Runnable {
      */
     public void run() {
         try {
-            // Connect to the database
-            database = new Database();
-            database.connect();
             // If we're to return a random shout
             if(eventType.equals(ShoutEvents.RANDOM_SHOUT)) {
-                // Get a random quote from the database (if possible). Send it to the channel.
+                Statistics.getChannelActivity(event.getChannel()).addShout(event.getUser().getNick());
+                // Get a random quote from the database (if possible). Send it to the channel,
+                // unless the channel is too busy for the bot to join in.
                 // If the quote does not exist in the database, add it!
-                if((randomQuote = getRandomQuote()) != null) {
+                if(!isChannelBusy() && (randomQuote = getRandomQuote()) != null) {
                     event.getBot().sendMessage(event.getChannel(), (Colors.removeFormattingAndColors(randomQuote)));
                     // Update statistics
                     Statistics.getChannelStatistics(event.getChannel()).addShout(event.getUser().getNick());
                 }
-                if(!doesQuoteExist()) addNewQuote();
+                addNewQuote();
             } else if(eventType.equals(ShoutEvents.LOOKUP_COMMAND)) {
                 // We're dealing with a !who list command - respond to the user with the information about the quote.
                 String whoCommand = event.getMessage().substring(5).replaceAll("^\\s+", "").replaceAll("\\s+$", "");
@@ -475,9 +540,22 @@ public class Shouts implements Runnable {
                 } else {
                     event.respond("Could not purge quote - quote not found.");
                 }
+            } else if(eventType.equals(ShoutEvents.SEARCH_COMMAND)) {
+                // We're dealing with a !who search command - respond to the user with a page of matching quotes
+                String query = event.getMessage().split(Configuration.getCommandPrefix() + "who search ")[1].trim();
+                int page = 1;
+                // An optional --page N before the search words selects a later page of results
+                if(query.startsWith("--page ")) {
+                    String[] pageSplit = query.substring(7).trim().split(" ", 2);
+                    if(pageSplit.length < 2 || !isValidQuoteNumber(pageSplit[0])) {
+                        event.respond("Usage: " + Configuration.getCommandPrefix() + "who search [--page N] words");
+                        return;
+                    }
+                    page = quoteNumber;
+                    query = pageSplit[1].trim();
+                }
+                event.respond(searchQuotes(query, page));
             }
-            // Disconnect from the database
-            database.disconnect();
         } catch (Exception ex) {
             Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
             return;
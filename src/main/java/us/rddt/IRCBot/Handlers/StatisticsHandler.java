@@ -28,14 +28,21 @@
 
 package us.rddt.IRCBot.Handlers;
 
+import java.text.DecimalFormat;
+import java.util.List;
+
 import org.pircbotx.PircBotX;
 import org.pircbotx.hooks.events.MessageEvent;
 
 import us.rddt.IRCBot.Enums.StatisticsModes;
+import us.rddt.IRCBot.Statistics.ChannelActivity;
+import us.rddt.IRCBot.Statistics.ChannelStatistics;
+import us.rddt.IRCBot.Statistics.HeavyHitters;
 import us.rddt.IRCBot.Statistics.Statistics;
 
 /**
- * Handles disabling and enabling channels from appearing in the statistics list.
+ * Handles disabling and enabling channels from appearing in the statistics list, and
+ * showing a channel's statistics for the day so far and its recent activity.
  * @author Ryan Morrison
  */
 public class StatisticsHandler implements Runnable {
@@ -74,6 +81,31 @@ public class StatisticsHandler implements Runnable {
         }
     }
     
+    /**
+     * Shows the channel's totals and most active users for the day so far.
+     */
+    private void showStatistics() {
+        if(Statistics.checkDisabledChannel(event.getChannel().getName())) {
+            event.respond("Statistics are disabled in " + event.getChannel().getName() + ".");
+            return;
+        }
+        ChannelStatistics statistics = Statistics.getChannelStatistics(event.getChannel());
+        event.respond("Today in " + event.getChannel().getName() + ": " + statistics.getTotalLines() + " lines, " + statistics.getTotalShouts() + " shouts and " + statistics.getTotalUrls() + " URLs from about " + statistics.getDistinctSpeakers() + " people.");
+        List<HeavyHitters.Estimate> top = statistics.getTopLines(3);
+        if(!top.isEmpty()) {
+            StringBuilder builder = new StringBuilder("Most chatty: ");
+            for(int i = 0; i < top.size(); i++) {
+                if(i > 0) builder.append(", ");
+                // Counts which may be overstated are marked as approximate
+                builder.append(top.get(i).getKey() + " (" + (top.get(i).getError() > 0 ? "~" : "") + top.get(i).getCount() + ")");
+            }
+            event.respond(builder.toString());
+        }
+        ChannelActivity activity = Statistics.getChannelActivity(event.getChannel());
+        DecimalFormat df = new DecimalFormat("0.#");
+        event.respond("Messages per minute: " + df.format(activity.getMessagesPerMinute(5)) + " (5m), " + df.format(activity.getMessagesPerMinute(60)) + " (1h), " + df.format(activity.getMessagesPerMinute(ChannelActivity.WINDOW_MINUTES)) + " (24h). " + "About " + activity.getSpeakers(60) + " people spoke in the last hour.");
+    }
+    
     /**
      * Method that executes upon thread start
      * (non-Javadoc)
@@ -87,6 +119,9 @@ public class StatisticsHandler implements Runnable {
         case REMOVE:
             removeDisabledChannel();
             break;
+        case SHOW:
+            showStatistics();
+            break;
         default:
             return;
         }
@@ -28,8 +28,9 @@
 
 package us.rddt.IRCBot.Handlers;
 
-import java.util.HashMap;
-import java.util.logging.Level;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.pircbotx.Channel;
 import org.pircbotx.PircBotX;
@@ -39,7 +40,7 @@ import org.pircbotx.hooks.events.MessageEvent;
 import org.pircbotx.hooks.events.PartEvent;
 
 import us.rddt.IRCBot.Configuration;
-import us.rddt.IRCBot.IRCUtils;
+import us.rddt.IRCBot.Dispatch.EventDispatcher;
 import us.rddt.IRCBot.Enums.VotekickModes;
 import us.rddt.IRCBot.Implementations.VotekickObject;
 
@@ -56,7 +57,8 @@ public class Votekick implements Runnable {
     private KickEvent<PircBotX> kEvent;
     private PartEvent<PircBotX> pEvent;
     private VotekickModes mode;
-    private static volatile HashMap<Channel,VotekickObject> currVotekicks = new HashMap<Channel,VotekickObject>();
+    // Votekick tasks run in their channel's mailbox, so each channel's votekick is only touched by one thread at a time
+    private static final Map<Channel,VotekickObject> currVotekicks = new ConcurrentHashMap<Channel,VotekickObject>();
 
     /**
      * Class constructor
@@ -104,9 +106,7 @@ public class Votekick implements Runnable {
      */
     private void kickUser(Channel channel, User user) {
         event.getBot().kick(channel, user);
-        synchronized(currVotekicks) {
-            currVotekicks.remove(channel);
-        }
+        currVotekicks.remove(channel);
     }
 
     /**
@@ -114,9 +114,7 @@ public class Votekick implements Runnable {
      * @param channel the channel to end the votekick in
      */
     private void finishVote(Channel channel) {
-        synchronized(currVotekicks) {
-            currVotekicks.remove(channel);
-        }
+        currVotekicks.remove(channel);
     }
 
     /**
@@ -151,35 +149,31 @@ public class Votekick implements Runnable {
         // Ensure that one other vote is always required
         if(numVotesRequired < 2) numVotesRequired = 2;
         // Create the VotekickObject and announce the vote
-        synchronized(currVotekicks) {
-            currVotekicks.put(channel, new VotekickObject(votekickUser, startingUser, numVotesRequired));
-        }
+        currVotekicks.put(channel, new VotekickObject(votekickUser, startingUser, numVotesRequired));
         event.getBot().sendMessage(channel, startingUser.getNick() + " has voted to kick " + getVotekickObject().getUser().getNick() + "! (" + getVotekickObject().getNumVotes() + "/" + getVotekickObject().getNumVotesRequired() + " needed, " + Configuration.getVotekickDuration() + " seconds remaining)");
         /*
-         * Start sleeping the thread. When the vote is halfway complete, if it hasn't passed yet, announce the amount
-         * of time remaining and how many votes are still needed.
-         */
-        try {
-            Thread.sleep((int)(Configuration.getVotekickDuration() / 2) * 1000);
-        } catch (InterruptedException ex) {
-            Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
-        }
-        if(isVoteInProgress(channel)) {
-            event.getBot().sendMessage(channel, "There are " + (int)(Configuration.getVotekickDuration() / 2) + " seconds remaining in the vote to kick " + getVotekickObject().getUser().getNick() + ". (" + getVotekickObject().getNumVotes() + " votes, " + getVotekickObject().getNumVotesRequired() + " needed)");
-        }
-        /*
-         * Sleep again. When the vote time has passed, if the vote is still in progress, then end the vote
-         * as a failure.
+         * Rather than holding a handler thread for the length of the vote, schedule the announcements. When the vote
+         * is halfway complete, if it hasn't passed yet, announce the amount of time remaining and how many votes are
+         * still needed. When the vote time has passed, if the vote is still in progress, end the vote as a failure.
          */
-        try {
-            Thread.sleep((int)(Configuration.getVotekickDuration() / 2) * 1000);
-        } catch (InterruptedException ex) {
-            Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
-        }
-        if(isVoteInProgress(channel)) {
-            event.getBot().sendMessage(channel, "The vote to kick " + getVotekickObject().getUser().getNick() + " has failed! (" + getVotekickObject().getNumVotes() + " votes, " + getVotekickObject().getNumVotesRequired() + " needed)");
-            finishVote(event.getChannel());
-        }
+        final VotekickObject votekick = getVotekickObject();
+        final Channel votekickChannel = channel;
+        final PircBotX bot = event.getBot();
+        EventDispatcher.scheduleToChannel(votekickChannel, new Runnable() {
+            public void run() {
+                if(currVotekicks.get(votekickChannel) == votekick) {
+                    bot.sendMessage(votekickChannel, "There are " + (int)(Configuration.getVotekickDuration() / 2) + " seconds remaining in the vote to kick " + votekick.getUser().getNick() + ". (" + votekick.getNumVotes() + " votes, " + votekick.getNumVotesRequired() + " needed)");
+                }
+            }
+        }, (int)(Configuration.getVotekickDuration() / 2), TimeUnit.SECONDS);
+        EventDispatcher.scheduleToChannel(votekickChannel, new Runnable() {
+            public void run() {
+                if(currVotekicks.get(votekickChannel) == votekick) {
+                    bot.sendMessage(votekickChannel, "The vote to kick " + votekick.getUser().getNick() + " has failed! (" + votekick.getNumVotes() + " votes, " + votekick.getNumVotesRequired() + " needed)");
+                    finishVote(votekickChannel);
+                }
+            }
+        }, Configuration.getVotekickDuration(), TimeUnit.SECONDS);
     }
 
     /**
@@ -35,6 +35,11 @@ import org.pircbotx.UtilSSLSocketFactory;
 import org.pircbotx.exception.NickAlreadyInUseException;
 import org.pircbotx.hooks.ListenerAdapter;
 
+import us.rddt.IRCBot.Implementations.GameStatusStore;
+import us.rddt.IRCBot.Implementations.SeenIndex;
+import us.rddt.IRCBot.Implementations.SeenWriter;
+import us.rddt.IRCBot.Persistence.Repositories;
+import us.rddt.IRCBot.Statistics.StatisticsSnapshot;
 import us.rddt.IRCBot.Statistics.StatisticsUpdater;
 import us.rddt.IRCBot.Streaming.TwitterMentions;
 
@@ -62,6 +67,15 @@ public class IRCBot extends ListenerAdapter<PircBotX> {
             System.exit(-1);
         }
         Configuration.getLogger().write(Level.INFO, "Initializing bot (IRCBot version " + Configuration.getApplicationVersion() + ")");
+        // Prepare the storage backend, bringing the database schema up to date
+        try {
+            Repositories.getBackend().open();
+        } catch(Exception ex) {
+            Configuration.getLogger().write(Level.SEVERE, IRCUtils.getStackTraceString(ex));
+            System.exit(-1);
+        }
+        // Restore today's statistics before any messages are counted
+        StatisticsSnapshot.restore();
         
         // Create a new instance of the IRC bot
         bot = new PircBotX();
@@ -77,10 +91,16 @@ public class IRCBot extends ListenerAdapter<PircBotX> {
         connect(bot, args);
         // Create the scheduler
         Configuration.startScheduler(bot);
+        // Load the last time each user was seen into memory
+        if(!Configuration.getDisabledFunctions().contains("seen")) {
+            SeenIndex.loadAsync();
+        }
         // Create the scheduler for statistics updating
         if(!Configuration.getDisabledFunctions().contains("tweetstatistics")) {
             StatisticsUpdater.schedule();
         }
+        // Save the day's statistics periodically
+        StatisticsSnapshot.schedule();
         // Create the scheduler for tweet mention streaming
         if(!Configuration.getDisabledFunctions().contains("tweetmentions")) {
             TwitterMentions.listenForTweets(bot);
@@ -89,6 +109,12 @@ public class IRCBot extends ListenerAdapter<PircBotX> {
         Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
             public void run() {
                 if(bot.isConnected()) bot.quitServer("Received SIGINT from command line");
+                // Write any buffered seen updates before we exit
+                SeenWriter.flush();
+                // Write any queued game status changes too
+                GameStatusStore.flush();
+                // Save the day's statistics so they can be restored on startup
+                StatisticsSnapshot.write();
             }
         }));
     }
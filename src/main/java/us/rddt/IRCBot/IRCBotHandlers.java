@@ -31,12 +31,9 @@ package us.rddt.IRCBot;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.logging.Level;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.pircbotx.Channel;
 import org.pircbotx.PircBotX;
-import org.pircbotx.User;
 import org.pircbotx.hooks.ListenerAdapter;
 import org.pircbotx.hooks.events.InviteEvent;
 import org.pircbotx.hooks.events.JoinEvent;
@@ -46,6 +43,12 @@ import org.pircbotx.hooks.events.PartEvent;
 import org.pircbotx.hooks.events.PrivateMessageEvent;
 import org.pircbotx.hooks.events.QuitEvent;
 
+import us.rddt.IRCBot.Commands.CommandAction;
+import us.rddt.IRCBot.Commands.CommandRouter;
+import us.rddt.IRCBot.Dispatch.ChannelMailbox;
+import us.rddt.IRCBot.Dispatch.EventDispatcher;
+import us.rddt.IRCBot.Dispatch.HandlerPool;
+import us.rddt.IRCBot.Enums.CommandPermissions;
 import us.rddt.IRCBot.Enums.GameStatusModes;
 import us.rddt.IRCBot.Enums.StatisticsModes;
 import us.rddt.IRCBot.Enums.TopicUpdates;
@@ -65,15 +68,19 @@ import us.rddt.IRCBot.Handlers.SteamUserQuery;
 import us.rddt.IRCBot.Handlers.Topic;
 import us.rddt.IRCBot.Handlers.UserMode;
 import us.rddt.IRCBot.Handlers.Votekick;
-import us.rddt.IRCBot.Implementations.DatabaseCleaner;
+import us.rddt.IRCBot.Implementations.GameCatalog;
 import us.rddt.IRCBot.Implementations.URLGrabber;
+import us.rddt.IRCBot.Persistence.DatabaseExecutor;
+import us.rddt.IRCBot.Persistence.Repositories;
 import us.rddt.IRCBot.Statistics.Statistics;
+import us.rddt.IRCBot.Statistics.StatisticsSnapshot;
 import us.rddt.IRCBot.Statistics.StatisticsTask;
+import us.rddt.IRCBot.Statistics.StatisticsUpdate;
 
 /**
  * Handles events as they are registered by the bot. Each command's action is
- * spawned in a new thread to prevent the bot from locking up on commands which
- * could potentially take some time to complete - for example, actions that rely
+ * dispatched to a handler thread pool to prevent the bot from locking up on commands
+ * which could potentially take some time to complete - for example, actions that rely
  * on outside services such as retrieving the title of a webpage. Threading these
  * actions also allows the bot to handle simultaneous commands, however the bot is
  * generally rate limited by the ircd to prevent flooding.
@@ -81,269 +88,249 @@ import us.rddt.IRCBot.Statistics.StatisticsTask;
  * @author Ryan Morrison
  */
 public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
-    /**
-     * Checks incoming messages from users for potential bot commands
-     * @param event the MessageEvent to parse
-     * @return true if a command was parsed, false if no command was recognized
+    /*
+     * The bot's commands, compiled once into a prefix tree. Most commands below are
+     * dispatched to handler pools to prevent blocking.
      */
-    private boolean checkForCommands(MessageEvent<PircBotX> event) {
-        /*
-         * Most commands below spawn threads to prevent blocking.
-         */
-        if(event.getMessage().charAt(0) == Configuration.getCommandPrefix()) {
-            if(event.getMessage().substring(1).equals("who last")) {
-                if(!Configuration.getDisabledFunctions().contains("shout")) {
-                    new Thread(new Shouts(event, Shouts.ShoutEvents.LAST_COMMAND)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).equals("who list")) {
-                if(!Configuration.getDisabledFunctions().contains("shout")) {
-                    new Thread(new Shouts(event, Shouts.ShoutEvents.LIST_COMMAND)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).startsWith("who user")) {
-                if(!Configuration.getDisabledFunctions().contains("shout")) {
-                    new Thread(new Shouts(event, Shouts.ShoutEvents.LIST_USER_COMMAND)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).equals("who top10")) {
-                if(!Configuration.getDisabledFunctions().contains("shout")) {
-                    new Thread(new Shouts(event, Shouts.ShoutEvents.TOP10_COMMAND)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).startsWith("who delete --purge ")) {
-                if(!Configuration.getDisabledFunctions().contains("shout")) {
-                    if(isUserOperator(event.getUser(), event.getChannel())) {
-                        new Thread(new Shouts(event, Shouts.ShoutEvents.PURGE_COMMAND)).start();
-                    }
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).startsWith("who delete ")) {
-                if(!Configuration.getDisabledFunctions().contains("shout")) {
-                    if(isUserOperator(event.getUser(), event.getChannel())) {
-                        new Thread(new Shouts(event, Shouts.ShoutEvents.DELETE_COMMAND)).start();
-                    }
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).startsWith("who undelete ")) {
-                if(!Configuration.getDisabledFunctions().contains("shout")) {
-                    if(isUserOperator(event.getUser(), event.getChannel())) {
-                        new Thread(new Shouts(event, Shouts.ShoutEvents.UNDELETE_COMMAND)).start();
-                    }
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).startsWith("who ")) {
-                if(!Configuration.getDisabledFunctions().contains("shout")) {
-                    new Thread(new Shouts(event, Shouts.ShoutEvents.LOOKUP_COMMAND)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).startsWith("calc ")) {
-                if(!Configuration.getDisabledFunctions().contains("calc")) {
-                    new Thread(new Calculator(event)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).startsWith("convert ")) {
-                if(!Configuration.getDisabledFunctions().contains("convert")) {
-                    new Thread(new Convert(event)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).startsWith("decide ")) {
-                if(!Configuration.getDisabledFunctions().contains("fortune")) {
-                    new Thread(new Fortune(event)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).startsWith("seen ")) {
-                if(!Configuration.getDisabledFunctions().contains("seen")) {
-                    new Thread(new Seen(event)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).startsWith("ud ")) {
-                if(!Configuration.getDisabledFunctions().contains("urbandictionary")) {
-                    new Thread(new Define(event)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).startsWith("g ")) {
-                if(!Configuration.getDisabledFunctions().contains("google")) {
-                    new Thread(new Search(event)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).startsWith("steam ")) {
-                if(!Configuration.getDisabledFunctions().contains("steamquery")) {
-                    new Thread(new SteamUserQuery(event)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).equals("statistics")) {
-                if(isUserAdmin(event.getUser())) {
-                    new Thread(new StatisticsTask(true)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).equals("disablestatistics")) {
-                if(isUserOperator(event.getUser(), event.getChannel())) {
-                    new Thread(new StatisticsHandler(event, StatisticsModes.ADD)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).equals("enablestatistics")) {
-                if(isUserOperator(event.getUser(), event.getChannel())) {
-                    new Thread(new StatisticsHandler(event, StatisticsModes.REMOVE)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).startsWith("status set ")) {
-                if(!Configuration.getDisabledFunctions().contains("gamestatus")) {
-                    new Thread(new GameStatus(event, GameStatusModes.SET)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).equals("status reset")) {
-                if(!Configuration.getDisabledFunctions().contains("gamestatus")) {
-                    new Thread(new GameStatus(event, GameStatusModes.RESET)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).equals("status all")) {
-                if(!Configuration.getDisabledFunctions().contains("gamestatus")) {
-                    new Thread(new GameStatus(event, GameStatusModes.ALL)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).startsWith("status user ")) {
-                if(!Configuration.getDisabledFunctions().contains("gamestatus")) {
-                    new Thread(new GameStatus(event, GameStatusModes.USER)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).startsWith("status game ")) {
-                if(!Configuration.getDisabledFunctions().contains("gamestatus")) {
-                    new Thread(new GameStatus(event, GameStatusModes.GAME)).start();
-                    return true;
+    private static final CommandRouter commands = new CommandRouter();
+    static {
+        commands.registerExact("who last", "shout", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatchToChannel(event.getChannel(), new Shouts(event, Shouts.ShoutEvents.LAST_COMMAND));
+            }
+        });
+        commands.registerExact("who list", "shout", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatchToChannel(event.getChannel(), new Shouts(event, Shouts.ShoutEvents.LIST_COMMAND));
+            }
+        });
+        commands.registerPrefix("who user", "shout", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatchToChannel(event.getChannel(), new Shouts(event, Shouts.ShoutEvents.LIST_USER_COMMAND));
+            }
+        });
+        commands.registerExact("who top10", "shout", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatchToChannel(event.getChannel(), new Shouts(event, Shouts.ShoutEvents.TOP10_COMMAND));
+            }
+        });
+        commands.registerPrefix("who delete --purge ", "shout", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                // The deletion commands check their permission here rather than in the router, so a
+                // denied deletion is still consumed instead of being looked up as a quote by "who "
+                if(UserUtils.isUserOperator(event.getUser(), event.getChannel())) {
+                    EventDispatcher.dispatchToChannel(event.getChannel(), new Shouts(event, Shouts.ShoutEvents.PURGE_COMMAND));
                 }
             }
-            if(event.getMessage().substring(1).startsWith("status add ")) {
-                if(!Configuration.getDisabledFunctions().contains("gamestatus")) {
-                    new Thread(new GameStatus(event, GameStatusModes.ADD)).start();
-                    return true;
+        });
+        commands.registerPrefix("who delete ", "shout", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                if(UserUtils.isUserOperator(event.getUser(), event.getChannel())) {
+                    EventDispatcher.dispatchToChannel(event.getChannel(), new Shouts(event, Shouts.ShoutEvents.DELETE_COMMAND));
                 }
             }
-            if(event.getMessage().substring(1).startsWith("status delete ")) {
-                if(!Configuration.getDisabledFunctions().contains("gamestatus") && isUserAdmin(event.getUser())) {
-                    new Thread(new GameStatus(event, GameStatusModes.DELETE)).start();
-                    return true;
+        });
+        commands.registerPrefix("who undelete ", "shout", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                if(UserUtils.isUserOperator(event.getUser(), event.getChannel())) {
+                    EventDispatcher.dispatchToChannel(event.getChannel(), new Shouts(event, Shouts.ShoutEvents.UNDELETE_COMMAND));
                 }
             }
-            if(event.getMessage().substring(1).startsWith("votekick ")) {
-                if(!Configuration.getDisabledFunctions().contains("votekick")) {
-                    new Thread(new Votekick(event, VotekickModes.UPDATE_VOTEKICK)).start();
-                }
-            }
-            if(event.getMessage().substring(1).startsWith("appendtopic ")) {
-                if(isUserOperator(event.getUser(), event.getChannel())) {
-                    new Thread(new Topic(event, TopicUpdates.ADD_TO_TOPIC)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).startsWith("removetopic ")) {
-                if(isUserOperator(event.getUser(), event.getChannel())) {
-                    new Thread(new Topic(event, TopicUpdates.REMOVE_FROM_TOPIC)).start();
-                    return true;
-                }
-            }
-            if(event.getMessage().substring(1).equals("leave")) {
-                if(isUserOwner(event.getUser(), event.getChannel())) {
-                    event.getBot().partChannel(event.getChannel());
-                    return true;
-                }
-            }
-
-            /*
-             * User mode change events
-             */
-            if(event.getMessage().substring(1).startsWith("kick ") || event.getMessage().substring(1).startsWith("k ")) {
-                new Thread(new UserMode(event, UserModes.KICK)).start();
-                return true;
-            }
-            if(event.getMessage().substring(1).startsWith("kickban ") || event.getMessage().substring(1).startsWith("kb ")) {
-                new Thread(new UserMode(event, UserModes.BAN)).start();
-                return true;
-            }
-            if(event.getMessage().substring(1).startsWith("owner ")) {
-                new Thread(new UserMode(event, UserModes.OWNER)).start();
-                return true;
-            }
-            if(event.getMessage().substring(1).startsWith("deowner ")) {
-                new Thread(new UserMode(event, UserModes.DEOWNER)).start();
-                return true;
-            }
-            if(event.getMessage().substring(1).startsWith("protect ")) {
-                new Thread(new UserMode(event, UserModes.SUPEROP)).start();
-                return true;
-            }
-            if(event.getMessage().substring(1).startsWith("deprotect ")) {
-                new Thread(new UserMode(event, UserModes.DESUPEROP)).start();
-                return true;
-            }
-            if(event.getMessage().substring(1).startsWith("op ")) {
-                new Thread(new UserMode(event, UserModes.OP)).start();
-                return true;
-            }
-            if(event.getMessage().substring(1).startsWith("deop ")) {
-                new Thread(new UserMode(event, UserModes.DEOP)).start();
-                return true;
-            }
-            if(event.getMessage().substring(1).startsWith("halfop ")) {
-                new Thread(new UserMode(event, UserModes.HALFOP)).start();
-                return true;
-            }
-            if(event.getMessage().substring(1).startsWith("dehalfop ")) {
-                new Thread(new UserMode(event, UserModes.DEHALFOP)).start();
-                return true;
-            }
-            if(event.getMessage().substring(1).startsWith("voice ")) {
-                new Thread(new UserMode(event, UserModes.VOICE)).start();
-                return true;
-            }
-            if(event.getMessage().substring(1).startsWith("devoice ")) {
-                new Thread(new UserMode(event, UserModes.DEVOICE)).start();
-                return true;
-            }
-        }
-        return false;
-    }
+        });
+        commands.registerPrefix("who search ", "shout", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatchToChannel(event.getChannel(), new Shouts(event, Shouts.ShoutEvents.SEARCH_COMMAND));
+            }
+        });
+        commands.registerPrefix("who ", "shout", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatchToChannel(event.getChannel(), new Shouts(event, Shouts.ShoutEvents.LOOKUP_COMMAND));
+            }
+        });
+        commands.registerPrefix("calc ", "calc", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new Calculator(event));
+            }
+        });
+        commands.registerPrefix("convert ", "convert", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new Convert(event));
+            }
+        });
+        commands.registerPrefix("decide ", "fortune", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new Fortune(event));
+            }
+        });
+        commands.registerPrefix("seen ", "seen", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatchToChannel(event.getChannel(), new Seen(event));
+            }
+        });
+        commands.registerPrefix("ud ", "urbandictionary", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new Define(event));
+            }
+        });
+        commands.registerPrefix("g ", "google", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new Search(event));
+            }
+        });
+        commands.registerPrefix("steam ", "steamquery", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new SteamUserQuery(event));
+            }
+        });
+        commands.registerExact("statistics", null, CommandPermissions.ADMIN, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new StatisticsTask(true));
+            }
+        });
+        commands.registerExact("stats", "stats", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new StatisticsHandler(event, StatisticsModes.SHOW));
+            }
+        });
+        commands.registerExact("disablestatistics", null, CommandPermissions.OPERATOR, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new StatisticsHandler(event, StatisticsModes.ADD));
+            }
+        });
+        commands.registerExact("enablestatistics", null, CommandPermissions.OPERATOR, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new StatisticsHandler(event, StatisticsModes.REMOVE));
+            }
+        });
+        commands.registerPrefix("status set ", "gamestatus", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new GameStatus(event, GameStatusModes.SET));
+            }
+        });
+        commands.registerExact("status reset", "gamestatus", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new GameStatus(event, GameStatusModes.RESET));
+            }
+        });
+        commands.registerExact("status all", "gamestatus", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new GameStatus(event, GameStatusModes.ALL));
+            }
+        });
+        commands.registerPrefix("status user ", "gamestatus", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new GameStatus(event, GameStatusModes.USER));
+            }
+        });
+        commands.registerPrefix("status game ", "gamestatus", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new GameStatus(event, GameStatusModes.GAME));
+            }
+        });
+        commands.registerPrefix("status add ", "gamestatus", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new GameStatus(event, GameStatusModes.ADD));
+            }
+        });
+        commands.registerPrefix("status delete ", "gamestatus", CommandPermissions.ADMIN, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new GameStatus(event, GameStatusModes.DELETE));
+            }
+        });
+        commands.registerPrefix("votekick ", "votekick", CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatchToChannel(event.getChannel(), new Votekick(event, VotekickModes.UPDATE_VOTEKICK));
+            }
+        });
+        commands.registerPrefix("appendtopic ", null, CommandPermissions.OPERATOR, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new Topic(event, TopicUpdates.ADD_TO_TOPIC));
+            }
+        });
+        commands.registerPrefix("removetopic ", null, CommandPermissions.OPERATOR, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new Topic(event, TopicUpdates.REMOVE_FROM_TOPIC));
+            }
+        });
+        commands.registerExact("leave", null, CommandPermissions.OWNER, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                event.getBot().partChannel(event.getChannel());
+            }
+        });
 
-    /**
-     * Checks to see if a string is uppercase
-     * @param s the string to check
-     * @return true if the string is uppercase, false if it is not
-     */
-    private boolean isUpperCase(String s) {
-        // Boolean value to ensure that an all numeric string does not trigger the shouting functions
-        boolean includesLetter = false;
-        // Loop through each character in the string individually
-        for(int i = 0; i < s.length(); i++) {
-            // If there's at least one letter then the string could qualify as being a 'shout'
-            if(Character.isLetter(s.charAt(i))) includesLetter = true;
-            // Any lower case letters immediately disqualifies the string, return immediately instead of continuing the loop
-            if(Character.isLowerCase(s.charAt(i))) return false;
-        }
-        // If there's at least one letter in the string return true, otherwise disqualify it
-        if(includesLetter) return true;
-        else return false;
+        /*
+         * User mode change events
+         */
+        commands.registerPrefix("kick ", null, CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new UserMode(event, UserModes.KICK));
+            }
+        });
+        commands.registerPrefix("k ", null, CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new UserMode(event, UserModes.KICK));
+            }
+        });
+        commands.registerPrefix("kickban ", null, CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new UserMode(event, UserModes.BAN));
+            }
+        });
+        commands.registerPrefix("kb ", null, CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new UserMode(event, UserModes.BAN));
+            }
+        });
+        commands.registerPrefix("owner ", null, CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new UserMode(event, UserModes.OWNER));
+            }
+        });
+        commands.registerPrefix("deowner ", null, CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new UserMode(event, UserModes.DEOWNER));
+            }
+        });
+        commands.registerPrefix("protect ", null, CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new UserMode(event, UserModes.SUPEROP));
+            }
+        });
+        commands.registerPrefix("deprotect ", null, CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new UserMode(event, UserModes.DESUPEROP));
+            }
+        });
+        commands.registerPrefix("op ", null, CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new UserMode(event, UserModes.OP));
+            }
+        });
+        commands.registerPrefix("deop ", null, CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new UserMode(event, UserModes.DEOP));
+            }
+        });
+        commands.registerPrefix("halfop ", null, CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new UserMode(event, UserModes.HALFOP));
+            }
+        });
+        commands.registerPrefix("dehalfop ", null, CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new UserMode(event, UserModes.DEHALFOP));
+            }
+        });
+        commands.registerPrefix("voice ", null, CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new UserMode(event, UserModes.VOICE));
+            }
+        });
+        commands.registerPrefix("devoice ", null, CommandPermissions.EVERYONE, new CommandAction() {
+            public void execute(MessageEvent<PircBotX> event) {
+                EventDispatcher.dispatch(new UserMode(event, UserModes.DEVOICE));
+            }
+        });
     }
 
     /**
@@ -380,10 +367,10 @@ public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
         event.getBot().joinChannel(event.getChannel().getName());
         
         if(!Configuration.getDisabledFunctions().contains("seen")) {
-            new Thread(new Seen(event)).start();
+            EventDispatcher.dispatchToChannel(event.getChannel(), new Seen(event));
         }
         if(!Configuration.getDisabledFunctions().contains("votekick")) {
-            new Thread(new Votekick(event, VotekickModes.USER_KICKED)).start();
+            EventDispatcher.dispatchToChannel(event.getChannel(), new Votekick(event, VotekickModes.USER_KICKED));
         }
     }
 
@@ -395,29 +382,26 @@ public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
      * @throws Exception
      */
     public void onMessage(MessageEvent<PircBotX> event) throws Exception {
-        // If the message is in upper case and not from ourselves, spawn a new thread to handle the shout
-        if(isUpperCase(event.getMessage()) && event.getMessage().replaceAll("^\\s+", "").replaceAll("\\s+$", "").length() > 5 && event.getUser() != event.getBot().getUserBot()) {
-            new Thread(new Shouts(event, Shouts.ShoutEvents.RANDOM_SHOUT)).start();
+        // Walk the message once to find out what it contains
+        MessageClassifier message = MessageClassifier.classify(event.getMessage(), Configuration.getCommandPrefix());
+        // If the message is in upper case and not from ourselves, dispatch a handler for the shout
+        if(message.isShout() && event.getUser() != event.getBot().getUserBot()) {
+            EventDispatcher.dispatchToChannel(event.getChannel(), new Shouts(event, Shouts.ShoutEvents.RANDOM_SHOUT));
             return;
         }
-        if(event.getMessage().charAt(0) == '!' || event.getMessage().charAt(0) == '.') {
-            if(checkForCommands(event)) return;
+        if(message.hasCommandPrefix()) {
+            if(commands.route(event)) return;
         }
-        if(!Configuration.getDisabledFunctions().contains("url")) {
-            // Use a regex pattern to match URLs out of user messages
-            int urlCount = 0;
-            Pattern urlPattern = Pattern.compile("\\bhttps?://[-a-zA-Z0-9+&@#/%?=~_|!:,.;]*[-a-zA-Z0-9+&@#/%=~_|]");
-            Matcher urlMatcher = urlPattern.matcher(event.getMessage());
-            while(urlMatcher.find()) {
-                if(++urlCount > 2) break;
-                new Thread(new URLGrabber(event, new URL(urlMatcher.group()))).start();
+        if(!Configuration.getDisabledFunctions().contains("url") && message.getUrlCount() > 0) {
+            for(int i = 0; i < message.getUrlCount(); i++) {
+                EventDispatcher.dispatch(new URLGrabber(event, new URL(message.getUrl(i))));
                 // Update statistics
-                Statistics.getChannelStatistics(event.getChannel()).addUrl(event.getUser().getNick());
+                EventDispatcher.dispatchToChannel(event.getChannel(), new StatisticsUpdate(event.getChannel(), event.getUser().getNick(), StatisticsUpdate.Counter.URL));
             }
-            if(urlCount > 0) return;
+            return;
         }
         // Update statistics
-        Statistics.getChannelStatistics(event.getChannel()).addLine(event.getUser().getNick());
+        EventDispatcher.dispatchToChannel(event.getChannel(), new StatisticsUpdate(event.getChannel(), event.getUser().getNick(), StatisticsUpdate.Counter.LINE));
     }
 
     /**
@@ -428,10 +412,10 @@ public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
      */
     public void onPart(PartEvent<PircBotX> event) {
         if(!Configuration.getDisabledFunctions().contains("seen")) {
-            new Thread(new Seen(event)).start();
+            EventDispatcher.dispatchToChannel(event.getChannel(), new Seen(event));
         }
         if(!Configuration.getDisabledFunctions().contains("votekick")) {
-            new Thread(new Votekick(event, VotekickModes.USER_LEFT)).start();
+            EventDispatcher.dispatchToChannel(event.getChannel(), new Votekick(event, VotekickModes.USER_LEFT));
         }
     }
 
@@ -443,9 +427,9 @@ public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
      */
     public void onPrivateMessage(PrivateMessageEvent<PircBotX> event) {
         if(event.getMessage().startsWith("help")) {
-            new Thread(new Help(event)).start();
+            EventDispatcher.dispatch(new Help(event));
         }
-        else if(isUserAdmin(event.getUser())) {
+        else if(UserUtils.isUserAdmin(event.getUser())) {
             if(event.getMessage().startsWith("announce ")) {
                 sendAnnouncement(event.getBot(), false, event.getMessage());
                 return;
@@ -455,10 +439,25 @@ public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
                 return;
             }
             if(event.getMessage().equals("cleanup")) {
-                new Thread(new DatabaseCleaner()).start();
+                EventDispatcher.dispatch(Repositories.getBackend().getCleaner());
                 event.respond("Performing database cleanup now!");
                 return;
             }
+            if(event.getMessage().equals("threads")) {
+                for(HandlerPool pool : EventDispatcher.getPools()) {
+                    event.respond(pool.toString());
+                }
+                for(ChannelMailbox mailbox : EventDispatcher.getMailboxes()) {
+                    event.respond(mailbox.toString());
+                }
+                return;
+            }
+            if(event.getMessage().equals("database")) {
+                for(String line : Repositories.getBackend().getStatistics()) {
+                    event.respond(line);
+                }
+                return;
+            }
             if(event.getMessage().equals("disconnect")) {
                 Configuration.getLogger().write(Level.INFO, "Disconnecting due to administrator request");
                 event.getBot().quitServer("Disconnecting due to administrator request");
@@ -470,6 +469,10 @@ public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
                 try {
                     Configuration.loadConfiguration();
                     Configuration.startScheduler(event.getBot());
+                    EventDispatcher.reload();
+                    Database.reload();
+                    DatabaseExecutor.reload();
+                    GameCatalog.invalidate();
                 } catch (Exception ex) {
                     Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
                     sendGlobalMessage(event.getBot(), "Failed to reload configuration: " + ex.getMessage());
@@ -481,6 +484,8 @@ public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
             if(event.getMessage().equals("restart")) {
                 Configuration.getLogger().write(Level.INFO, "Restarting due to administrator request...");
                 sendGlobalMessage(event.getBot(), "Restarting due to administrator request...");
+                // Save the day's statistics before the new process starts and restores them
+                StatisticsSnapshot.write();
                 try {
                     IRCUtils.restartApplication(event.getBot().getChannels());
                 } catch (Exception ex) {
@@ -501,41 +506,10 @@ public class IRCBotHandlers extends ListenerAdapter<PircBotX> {
      */
     public void onQuit(QuitEvent<PircBotX> event) {
         if(!Configuration.getDisabledFunctions().contains("seen")) {
-            new Thread(new Seen(event)).start();
+            EventDispatcher.dispatch(new Seen(event));
         }
     }
 
-    /**
-     * Checks to see if a user is a bot administrator
-     * @param user the user to check
-     * @return true if the user is a bot administrator, false if they are not
-     */
-    private boolean isUserAdmin(User user) {
-        if(user.getNick().equals(Configuration.getAdminNick()) && user.getHostmask().equals(Configuration.getAdminHostmask())) return true;
-        else return false;
-    }
-
-    /**
-     * Checks to see if a user is a channel operator or higher
-     * @param user the user to check
-     * @param channel the channel to check against
-     * @return true if the user is a channel operator or higher, false if they are not
-     */
-    private boolean isUserOperator(User user, Channel channel) {
-        if(channel.isOp(user) || channel.isSuperOp(user) || channel.isOwner(user)) return true;
-        else return false;
-    }
-    
-    /**
-     * Checks to see if a user is a channel owner
-     * @param user the user to check
-     * @param channel the channel to check against
-     * @return true if the user is a channel owner, false if they are not
-     */
-    private boolean isUserOwner(User user, Channel channel) {
-        return channel.isOwner(user);
-    }
-
     /**
      * Sends a message to each channel the bot is currently in
      * @param bot the IRC bot
@@ -28,7 +28,12 @@
 
 package us.rddt.IRCBot.Implementations;
 
+import java.io.IOException;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import us.rddt.IRCBot.Configuration;
@@ -37,37 +42,100 @@ import us.rddt.IRCBot.IRCUtils;
 
 /**
  * Cleans the database, removing old and unnecessary entries after a specified period of time.
+ * 
+ * Rows are deleted in batches of at most database_cleanup_batch_size rows, each covering a
+ * range of primary keys, so no single statement holds its locks for long. The cleaner pauses
+ * between batches to let other handlers at the database, returning its connection to the
+ * pool while it waits, and stops once it has run for database_cleanup_budget seconds,
+ * carrying on from where it stopped on its next run.
+ * 
+ * The cutoff date is worked out here rather than with DATE_SUB, which SQLite does not have,
+ * so the same statements run on both MySQL and SQLite.
  * @author Ryan Morrison
  */
 public class DatabaseCleaner implements Runnable {
+    /*
+     * Class variables.
+     */
+    // The highest quote ID checked by a run which ran out of time, so the next run can carry on from it
+    private static volatile int resumeFrom = 0;
+
+    /**
+     * Deletes the quotes which were deleted more than a week ago
+     * @param deadline the time the run must stop by
+     * @return the number of quotes which were deleted
+     * @throws SQLException if the SQL query does not execute correctly
+     * @throws ClassNotFoundException if the database driver cannot be loaded
+     * @throws IOException if the database configuration cannot be read
+     * @throws InterruptedException if the cleaner is interrupted while pausing between batches
+     */
+    private int cleanQuotes(long deadline) throws SQLException, ClassNotFoundException, IOException, InterruptedException {
+        Timestamp cutoff = new Timestamp(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(7));
+        long started = System.currentTimeMillis();
+        int lastId = resumeFrom;
+        int deleted = 0;
+        int batches = 0;
+        while(true) {
+            int upperId;
+            // Borrow a connection for this batch only, so none is held while pausing
+            Database database = new Database();
+            database.connect();
+            try {
+                // Find the end of the next batch of keys, then delete everything eligible up to it
+                PreparedStatement bound = database.prepareStatement("SELECT MAX(ID) FROM (SELECT ID FROM Quotes WHERE ID > ? AND Deleted = '1' AND Date < ? ORDER BY ID LIMIT ?) AS Batch");
+                bound.setInt(1, lastId);
+                bound.setTimestamp(2, cutoff);
+                bound.setInt(3, Configuration.getDatabaseCleanupBatchSize());
+                ResultSet resultSet = bound.executeQuery();
+                upperId = resultSet.next() ? resultSet.getInt(1) : 0;
+                resultSet.close();
+                if(upperId != 0) {
+                    PreparedStatement delete = database.prepareStatement("DELETE FROM Quotes WHERE ID > ? AND ID <= ? AND Deleted = '1' AND Date < ?");
+                    delete.setInt(1, lastId);
+                    delete.setInt(2, upperId);
+                    delete.setTimestamp(3, cutoff);
+                    deleted += delete.executeUpdate();
+                }
+            } finally {
+                database.disconnect();
+            }
+            // MAX() of no rows is NULL, which reads as 0
+            if(upperId == 0) {
+                resumeFrom = 0;
+                break;
+            }
+            batches++;
+            lastId = upperId;
+            if(System.currentTimeMillis() >= deadline) {
+                resumeFrom = lastId;
+                Configuration.getLogger().write(Level.INFO, "Database cleanup ran out of time, the next run will carry on after quote ID " + lastId + ".");
+                break;
+            }
+            // Give other handlers a turn at the database
+            Thread.sleep(Configuration.getDatabaseCleanupPause());
+        }
+        Configuration.getLogger().write(Level.INFO, "Cleaned up " + deleted + " deleted quotes from the database in " + batches + " batches (" + (System.currentTimeMillis() - started) + "ms).");
+        return deleted;
+    }
+
+    /**
+     * Method that executes upon thread start
+     * (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
     public void run() {
-        // Variables
-        Database database;
-        PreparedStatement statement;
-        int status;
-        
         Configuration.getLogger().write(Level.INFO, "Database cleanup initialized.");
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(Configuration.getDatabaseCleanupBudget());
 
         try {
-            // Connect to the database
-            database = new Database();
-            database.connect();
-
             // Clean out deleted quotes older than one week
-            statement = database.getConnection().prepareStatement("DELETE FROM Quotes WHERE Deleted = '1' AND Date < DATE_SUB(NOW(), INTERVAL 7 DAY)");
-            status = statement.executeUpdate();
-            Configuration.getLogger().write(Level.INFO, "Cleaned up " + status + " deleted quotes from the database.");
-
-            statement.close();
-
-            // Clean out game statuses older than 12 hours
-            statement = database.getConnection().prepareStatement("DELETE FROM GameStatus WHERE Date < DATE_SUB(NOW(), INTERVAL 12 HOUR)");
-            status = statement.executeUpdate();
-            Configuration.getLogger().write(Level.INFO, "Cleaned up " + status + " stale game statuses from the database.");
+            // Purged quotes may be shouted again, so the filters must forget them
+            if(cleanQuotes(deadline) > 0) QuoteFilter.invalidateAll();
 
-            database.disconnect();
-            
             Configuration.getLogger().write(Level.INFO, "Database cleanup complete.");
+        } catch (InterruptedException ex) {
+            // The scheduler is being shut down
+            Thread.currentThread().interrupt();
         } catch (Exception ex) {
             Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
         }
@@ -0,0 +1,135 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Implementations;
+
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.Persistence.Repositories;
+
+/**
+ * A process-wide cache of the known games, mapping each shorthand identifier to the game's
+ * full title. The catalog is read from the GameList table the first time it is needed and
+ * is then kept current by the add and delete commands, so status commands never have to
+ * read the table themselves. If game_catalog_refresh is set, the catalog is read again once
+ * it is that many seconds old to pick up changes made to the table by hand.
+ * 
+ * @author Ryan Morrison
+ */
+public class GameCatalog {
+    /*
+     * Class variables.
+     */
+    private static volatile ConcurrentMap<String, String> games = null;
+    private static volatile long loadedAt = 0;
+
+    /**
+     * Returns the full title of a game
+     * @param gameId the shorthand identifier of the game
+     * @return the full title of the game, or null if the game is unknown
+     * @throws SQLException if the catalog cannot be loaded
+     */
+    public static String getTitle(String gameId) throws SQLException {
+        return getGames().get(gameId);
+    }
+
+    /**
+     * Returns if a game is known
+     * @param gameId the shorthand identifier of the game
+     * @return true if the game is known, false if it is not
+     * @throws SQLException if the catalog cannot be loaded
+     */
+    public static boolean contains(String gameId) throws SQLException {
+        return getGames().containsKey(gameId);
+    }
+
+    /**
+     * Adds a game which has been added to the database. If the catalog has not been read
+     * yet, it will pick the game up when it is.
+     * @param gameId the shorthand identifier of the game
+     * @param game the full title of the game
+     */
+    public static void put(String gameId, String game) {
+        ConcurrentMap<String, String> current = games;
+        if(current != null) current.put(gameId, game);
+    }
+
+    /**
+     * Removes a game which has been deleted from the database
+     * @param gameId the shorthand identifier of the game
+     */
+    public static void remove(String gameId) {
+        ConcurrentMap<String, String> current = games;
+        if(current != null) current.remove(gameId);
+    }
+
+    /**
+     * Discards the catalog so it is read from the database again the next time it is needed
+     */
+    public static void invalidate() {
+        games = null;
+    }
+
+    /**
+     * Returns the catalog, reading it from the database if it has not been read yet or is due to be refreshed
+     * @return the catalog
+     * @throws SQLException if the catalog cannot be loaded
+     */
+    private static ConcurrentMap<String, String> getGames() throws SQLException {
+        ConcurrentMap<String, String> current = games;
+        if(current != null && !isStale()) return current;
+        synchronized(GameCatalog.class) {
+            if(games == null || isStale()) {
+                games = load();
+                loadedAt = System.currentTimeMillis();
+            }
+            return games;
+        }
+    }
+
+    /**
+     * Returns if the catalog is older than the configured refresh interval
+     * @return true if the catalog should be read again, false if it should not
+     */
+    private static boolean isStale() {
+        int refresh = Configuration.getGameCatalogRefresh();
+        return refresh > 0 && System.currentTimeMillis() - loadedAt > refresh * 1000L;
+    }
+
+    /**
+     * Reads every game from the database
+     * @return the games, keyed by their shorthand identifiers
+     * @throws SQLException if the catalog cannot be loaded
+     */
+    private static ConcurrentMap<String, String> load() throws SQLException {
+        return new ConcurrentHashMap<String, String>(Repositories.await(Repositories.getGameList().getAll()));
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Implementations;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.IRCUtils;
+import us.rddt.IRCBot.Dispatch.EventDispatcher;
+import us.rddt.IRCBot.Persistence.Repositories;
+
+/**
+ * Holds the game each user is playing in memory. Lookups by user and by game never touch
+ * the database, and statuses expire game_status_expiry hours after they were set by way of
+ * a timer wheel which is advanced once a minute, so no bulk DELETE is needed to clear them.
+ * 
+ * The GameStatus table is only used to recover the statuses after a restart. Changes are
+ * written to it in the background, with only the latest change for each user being written.
+ * 
+ * @author Ryan Morrison
+ */
+public class GameStatusStore implements Runnable {
+    /*
+     * Class variables.
+     */
+    private static final long TICK = TimeUnit.MINUTES.toMillis(1);
+    private static final int WHEEL_SIZE = 64;
+
+    private static final Map<String, Status> statuses = new ConcurrentHashMap<String, Status>();
+    private static final Map<String, Set<Status>> players = new ConcurrentHashMap<String, Set<Status>>();
+    // Statuses waiting to be written, keyed by nick. A status without a game is a deletion.
+    private static final Map<String, Status> pending = new ConcurrentHashMap<String, Status>();
+    private static final AtomicBoolean flushQueued = new AtomicBoolean(false);
+    private static volatile TimerWheel wheel = null;
+
+    /**
+     * Returns what a user is playing
+     * @param nick the nick of the user
+     * @return the user's status, or null if the user is not playing anything
+     * @throws SQLException if the statuses cannot be loaded
+     */
+    public static Status get(String nick) throws SQLException {
+        load();
+        return statuses.get(nick.toLowerCase());
+    }
+
+    /**
+     * Returns the users playing a game, longest playing first
+     * @param game the full title of the game
+     * @return the statuses of the users playing the game
+     * @throws SQLException if the statuses cannot be loaded
+     */
+    public static List<Status> getPlayers(String game) throws SQLException {
+        load();
+        Set<Status> playing = players.get(game);
+        return sort(playing != null ? playing : Collections.<Status>emptySet());
+    }
+
+    /**
+     * Returns every user who is playing a game, longest playing first
+     * @return the statuses of every user who is playing a game
+     * @throws SQLException if the statuses cannot be loaded
+     */
+    public static List<Status> getAll() throws SQLException {
+        load();
+        return sort(statuses.values());
+    }
+
+    /**
+     * Sets the game a user is playing, replacing any game they were already playing
+     * @param nick the nick of the user
+     * @param game the full title of the game
+     * @throws SQLException if the statuses cannot be loaded
+     */
+    public static void set(String nick, String game) throws SQLException {
+        load();
+        Status status = new Status(nick, game, System.currentTimeMillis());
+        synchronized(GameStatusStore.class) {
+            unlink(statuses.put(status.key, status));
+            link(status);
+            persist(status);
+        }
+    }
+
+    /**
+     * Clears the game a user is playing
+     * @param nick the nick of the user
+     * @throws SQLException if the statuses cannot be loaded
+     */
+    public static void reset(String nick) throws SQLException {
+        load();
+        Status status = new Status(nick, null, System.currentTimeMillis());
+        synchronized(GameStatusStore.class) {
+            unlink(statuses.remove(status.key));
+            persist(status);
+        }
+    }
+
+    /**
+     * Reads the statuses saved before the last restart, dropping any which have since expired,
+     * and starts the timer wheel
+     * @throws SQLException if the statuses cannot be loaded
+     */
+    private static void load() throws SQLException {
+        if(wheel != null) return;
+        synchronized(GameStatusStore.class) {
+            if(wheel != null) return;
+            long now = System.currentTimeMillis();
+            TimerWheel loading = new TimerWheel(now);
+            for(Status status : Repositories.await(Repositories.getGameStatuses().getAll())) {
+                Status existing = statuses.get(status.key);
+                if(existing != null && existing.since >= status.since) continue;
+                statuses.put(status.key, status);
+            }
+            for(Status status : new ArrayList<Status>(statuses.values())) {
+                if(status.expires() <= now) {
+                    // Expired while the bot was down
+                    statuses.remove(status.key);
+                    persist(new Status(status.nick, null, now));
+                } else {
+                    addPlayer(status);
+                    loading.schedule(status);
+                }
+            }
+            wheel = loading;
+        }
+        EventDispatcher.schedule(GameStatusStore.class.getSimpleName(), new Runnable() {
+            public void run() {
+                try {
+                    expire();
+                } finally {
+                    // Reschedule even if expiry failed, or no status would ever expire again
+                    EventDispatcher.schedule(GameStatusStore.class.getSimpleName(), this, TICK, TimeUnit.MILLISECONDS);
+                }
+            }
+        }, TICK, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Advances the timer wheel, clearing every status whose time has run out
+     */
+    private static void expire() {
+        long now = System.currentTimeMillis();
+        List<Status> expired;
+        synchronized(GameStatusStore.class) {
+            expired = wheel.advance(now);
+            for(Status status : expired) {
+                if(!statuses.remove(status.key, status)) continue;
+                removePlayer(status);
+                persist(new Status(status.nick, null, now));
+            }
+        }
+        if(!expired.isEmpty()) Configuration.getLogger().write(Level.INFO, "Expired " + expired.size() + " stale game statuses.");
+    }
+
+    /**
+     * Adds a new status to the index of players and the timer wheel
+     * @param status the new status
+     */
+    private static void link(Status status) {
+        addPlayer(status);
+        wheel.schedule(status);
+    }
+
+    /**
+     * Removes a replaced status from the index of players and the timer wheel
+     * @param status the replaced status, or null if there was none
+     */
+    private static void unlink(Status status) {
+        if(status == null) return;
+        removePlayer(status);
+        wheel.cancel(status);
+    }
+
+    /**
+     * Adds a status to the index of players
+     * @param status the status to add
+     */
+    private static void addPlayer(Status status) {
+        Set<Status> playing = players.get(status.game);
+        if(playing == null) {
+            playing = Collections.newSetFromMap(new ConcurrentHashMap<Status, Boolean>());
+            players.put(status.game, playing);
+        }
+        playing.add(status);
+    }
+
+    /**
+     * Removes a status from the index of players
+     * @param status the status to remove
+     */
+    private static void removePlayer(Status status) {
+        Set<Status> playing = players.get(status.game);
+        if(playing == null) return;
+        playing.remove(status);
+        if(playing.isEmpty()) players.remove(status.game);
+    }
+
+    /**
+     * Sorts statuses so the user who has been playing longest comes first
+     * @param unsorted the statuses to sort
+     * @return the sorted statuses
+     */
+    private static List<Status> sort(Iterable<Status> unsorted) {
+        List<Status> sorted = new ArrayList<Status>();
+        for(Status status : unsorted) {
+            sorted.add(status);
+        }
+        Collections.sort(sorted, new Comparator<Status>() {
+            public int compare(Status a, Status b) {
+                return a.since < b.since ? -1 : (a.since > b.since ? 1 : 0);
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * Queues a change to be written to the database in the background. Callers hold the
+     * store's lock so that changes to the same user are queued in the order they were made.
+     * @param status the new status, or a status without a game if it was cleared
+     */
+    private static void persist(Status status) {
+        pending.put(status.key, status);
+        if(flushQueued.compareAndSet(false, true)) EventDispatcher.dispatch(new GameStatusStore());
+    }
+
+    /**
+     * Writes every queued change to the database. If the write fails the changes are queued
+     * again (unless a newer change has arrived since) to be retried with the next change.
+     */
+    public static synchronized void flush() {
+        flushQueued.set(false);
+        if(pending.isEmpty()) return;
+        List<Status> batch = new ArrayList<Status>(pending.size());
+        for(Map.Entry<String, Status> entry : pending.entrySet()) {
+            if(pending.remove(entry.getKey(), entry.getValue())) batch.add(entry.getValue());
+        }
+        if(batch.isEmpty()) return;
+        try {
+            Repositories.await(Repositories.getGameStatuses().saveAll(batch));
+        } catch (Exception ex) {
+            Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+            for(Status status : batch) {
+                Status existing = pending.putIfAbsent(status.key, status);
+                while(existing != null && existing.since < status.since) {
+                    if(pending.replace(status.key, existing, status)) break;
+                    existing = pending.putIfAbsent(status.key, status);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method that executes upon thread start
+     * (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    public void run() {
+        flush();
+    }
+
+    /**
+     * The game a user is playing and when they started playing it.
+     */
+    public static class Status {
+        private final String key;
+        private final String nick;
+        private final String game;
+        private final long since;
+
+        /**
+         * Class constructor
+         * @param nick the nick of the user
+         * @param game the full title of the game, or null if the user stopped playing
+         * @param since the time the status was set
+         */
+        public Status(String nick, String game, long since) {
+            this.key = nick.toLowerCase();
+            this.nick = nick;
+            this.game = game;
+            this.since = since;
+        }
+
+        /**
+         * Returns the nick of the user
+         * @return the nick of the user
+         */
+        public String getNick() {
+            return nick;
+        }
+
+        /**
+         * Returns the full title of the game
+         * @return the full title of the game
+         */
+        public String getGame() {
+            return game;
+        }
+
+        /**
+         * Returns the time the status was set
+         * @return the time the status was set
+         */
+        public Date getSince() {
+            return new Date(since);
+        }
+
+        /**
+         * Returns the time the status expires
+         * @return the time the status expires (in milliseconds since the epoch)
+         */
+        private long expires() {
+            return since + TimeUnit.HOURS.toMillis(Configuration.getGameStatusExpiry());
+        }
+    }
+
+    /**
+     * A hashed timer wheel. Each status is placed in the slot for the minute it expires in, and
+     * every minute the wheel moves on one slot and expires whatever in that slot is due. Statuses
+     * which expire more than one turn of the wheel away stay in their slot until a later turn.
+     */
+    private static class TimerWheel {
+        private final List<Set<Status>> slots = new ArrayList<Set<Status>>(WHEEL_SIZE);
+        private final Map<Status, Long> deadlines = new HashMap<Status, Long>();
+        private long cursor;
+
+        /**
+         * Class constructor
+         * @param now the current time
+         */
+        public TimerWheel(long now) {
+            for(int i = 0; i < WHEEL_SIZE; i++) {
+                slots.add(new HashSet<Status>());
+            }
+            cursor = now / TICK;
+        }
+
+        /**
+         * Schedules a status to expire
+         * @param status the status to schedule
+         */
+        public void schedule(Status status) {
+            long deadline = status.expires();
+            deadlines.put(status, deadline);
+            slotFor(deadline).add(status);
+        }
+
+        /**
+         * Cancels the expiry of a status which has been replaced or cleared
+         * @param status the status to cancel
+         */
+        public void cancel(Status status) {
+            Long deadline = deadlines.remove(status);
+            if(deadline != null) slotFor(deadline).remove(status);
+        }
+
+        /**
+         * Moves the wheel up to the current time
+         * @param now the current time
+         * @return the statuses which have expired
+         */
+        public List<Status> advance(long now) {
+            List<Status> expired = new ArrayList<Status>();
+            long target = now / TICK;
+            // If the wheel has fallen a whole turn behind, visiting every slot once is enough
+            long steps = Math.min(target - cursor + 1, WHEEL_SIZE);
+            for(long i = 0; i < steps; i++) {
+                Set<Status> slot = slots.get((int)((cursor + i) % WHEEL_SIZE));
+                for(Status status : new ArrayList<Status>(slot)) {
+                    if(deadlines.get(status) > now) continue;
+                    slot.remove(status);
+                    deadlines.remove(status);
+                    expired.add(status);
+                }
+            }
+            cursor = Math.max(cursor, target + 1);
+            return expired;
+        }
+
+        /**
+         * Returns the slot which a deadline falls into, rounding up to the next tick so the
+         * status has always expired by the time its slot is visited
+         * @param deadline the time the status expires
+         * @return the slot for the deadline
+         */
+        private Set<Status> slotFor(long deadline) {
+            return slots.get((int)(((deadline + TICK - 1) / TICK) % WHEEL_SIZE));
+        }
+    }
+}
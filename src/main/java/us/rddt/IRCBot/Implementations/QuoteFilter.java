@@ -0,0 +1,196 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Implementations;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import us.rddt.IRCBot.Persistence.Repositories;
+
+/**
+ * A Bloom filter of the hashes of every quote stored for a channel. Most shouts are
+ * quotes the bot already knows, and the filter answers "already stored" for those
+ * without a trip to the database. A filter can only give false positives (a new quote
+ * mistaken for a known one) at a rate of about one in a thousand; a negative answer is
+ * always right.
+ * 
+ * This class also defines the hash stored in the QuoteHash column: the SHA-1 of the
+ * quote with surrounding whitespace removed, runs of whitespace collapsed and letters
+ * upper cased, so quotes which only differ in spacing or case are treated as the same.
+ * 
+ * @author Ryan Morrison
+ */
+public class QuoteFilter {
+    /*
+     * Class variables.
+     */
+    private static final Map<String, QuoteFilter> filters = new ConcurrentHashMap<String, QuoteFilter>();
+    // Held while a channel's filter is loaded, so only callers for the same channel wait on the database
+    private static final ConcurrentHashMap<String, Object> loadLocks = new ConcurrentHashMap<String, Object>();
+    // Bits and hash functions per quote for a false positive rate of about 0.1%
+    private static final int BITS_PER_QUOTE = 15;
+    private static final int HASH_FUNCTIONS = 10;
+    private static final int MINIMUM_CAPACITY = 1024;
+
+    private final long[] bits;
+    private final int capacity;
+    private int insertions = 0;
+
+    /**
+     * Class constructor
+     * @param capacity the number of quotes the filter is sized for
+     */
+    private QuoteFilter(int capacity) {
+        this.capacity = capacity;
+        this.bits = new long[(int)(((long)capacity * BITS_PER_QUOTE + 63) / 64)];
+    }
+
+    /**
+     * Returns the filter for a channel, loading it from the database if it has not been loaded
+     * yet or if it has filled up since it was loaded
+     * @param channel the name of the channel
+     * @return the filter for the channel
+     * @throws SQLException if the filter cannot be loaded
+     */
+    public static QuoteFilter getFilter(String channel) throws SQLException {
+        String key = channel.toLowerCase();
+        QuoteFilter filter = filters.get(key);
+        if(filter == null || filter.isFull()) {
+            synchronized(loadLocks.computeIfAbsent(key, name -> new Object())) {
+                filter = filters.get(key);
+                if(filter == null || filter.isFull()) {
+                    filter = load(channel);
+                    filters.put(key, filter);
+                }
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Discards the filter for a channel so it is rebuilt on next use. Bloom filters cannot
+     * forget an entry, so this must be called when quotes are purged from the database.
+     * @param channel the name of the channel
+     */
+    public static void invalidate(String channel) {
+        filters.remove(channel.toLowerCase());
+    }
+
+    /**
+     * Discards the filters for every channel so they are rebuilt on next use
+     */
+    public static void invalidateAll() {
+        filters.clear();
+    }
+
+    /**
+     * Builds a filter from the hashes of the quotes stored for a channel
+     * @param channel the name of the channel
+     * @return the new filter
+     * @throws SQLException if the hashes cannot be loaded
+     */
+    private static QuoteFilter load(String channel) throws SQLException {
+        List<String> hashes = Repositories.await(Repositories.getQuotes().getHashes(channel));
+        // Leave room for the channel's quotes to double before the filter has to be rebuilt
+        QuoteFilter filter = new QuoteFilter(Math.max(MINIMUM_CAPACITY, hashes.size() * 2));
+        for(String hash : hashes) {
+            filter.add(hash);
+        }
+        return filter;
+    }
+
+    /**
+     * Records that a quote is stored
+     * @param hash the hash of the quote
+     */
+    public synchronized void add(String hash) {
+        long h1 = Long.parseLong(hash.substring(0, 8), 16);
+        long h2 = Long.parseLong(hash.substring(8, 16), 16);
+        long size = (long)bits.length * 64;
+        for(int i = 0; i < HASH_FUNCTIONS; i++) {
+            long bit = (h1 + i * h2) % size;
+            bits[(int)(bit >>> 6)] |= 1L << bit;
+        }
+        insertions++;
+    }
+
+    /**
+     * Returns whether a quote might be stored
+     * @param hash the hash of the quote
+     * @return false if the quote is definitely not stored, true if it probably is
+     */
+    public synchronized boolean mightContain(String hash) {
+        long h1 = Long.parseLong(hash.substring(0, 8), 16);
+        long h2 = Long.parseLong(hash.substring(8, 16), 16);
+        long size = (long)bits.length * 64;
+        for(int i = 0; i < HASH_FUNCTIONS; i++) {
+            long bit = (h1 + i * h2) % size;
+            if((bits[(int)(bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether more quotes have been added than the filter was sized for, which would
+     * raise its false positive rate
+     * @return true if the filter should be rebuilt
+     */
+    private synchronized boolean isFull() {
+        return insertions > capacity;
+    }
+
+    /**
+     * Returns the hash stored in the QuoteHash column for a quote
+     * @param quote the text of the quote
+     * @return the hash of the normalized quote, as 40 hexadecimal digits
+     */
+    public static String hash(String quote) {
+        String normalized = quote.trim().replaceAll("\\s+", " ").toUpperCase(Locale.ENGLISH);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(normalized.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(40);
+            for(byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform is required to support SHA-1
+            throw new IllegalStateException(ex);
+        } catch (UnsupportedEncodingException ex) {
+            // Every Java platform is required to support UTF-8
+            throw new IllegalStateException(ex);
+        }
+    }
+}
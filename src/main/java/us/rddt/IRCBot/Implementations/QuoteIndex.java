@@ -0,0 +1,200 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Implementations;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import us.rddt.IRCBot.Persistence.Repositories;
+
+/**
+ * Keeps the IDs of every live (not deleted) quote in a channel in memory, so a random
+ * quote can be picked without asking the database to sort the whole channel's quotes.
+ * The IDs are held in a sorted array, which is loaded from the database the first time
+ * a channel's quotes are needed and then kept current as quotes are added, deleted,
+ * undeleted and purged.
+ * 
+ * Quotes can be picked uniformly at random, or from a shuffled bag which hands out every
+ * quote once before any quote is repeated. Because the IDs are sorted, the array also
+ * numbers the channel's quotes: quote #n is the nth oldest live quote.
+ * 
+ * @author Ryan Morrison
+ */
+public class QuoteIndex {
+    /*
+     * Class variables.
+     */
+    private static final Map<String, QuoteIndex> indexes = new ConcurrentHashMap<String, QuoteIndex>();
+    // Held while a channel's index is loaded, so only callers for the same channel wait on the database
+    private static final ConcurrentHashMap<String, Object> loadLocks = new ConcurrentHashMap<String, Object>();
+    private static final Random random = new Random();
+
+    private int[] ids = new int[16];
+    private int size = 0;
+    private int[] bag = new int[0];
+    private int bagPosition = 0;
+
+    /**
+     * Returns the index for a channel, loading it from the database if it has not been loaded yet
+     * @param channel the name of the channel
+     * @return the index for the channel
+     * @throws SQLException if the index cannot be loaded
+     */
+    public static QuoteIndex getIndex(String channel) throws SQLException {
+        String key = channel.toLowerCase();
+        QuoteIndex index = indexes.get(key);
+        if(index == null) {
+            synchronized(loadLocks.computeIfAbsent(key, name -> new Object())) {
+                index = indexes.get(key);
+                if(index == null) {
+                    index = new QuoteIndex();
+                    index.load(channel);
+                    indexes.put(key, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Loads the IDs of the channel's live quotes from the database
+     * @param channel the name of the channel
+     * @throws SQLException if the IDs cannot be loaded
+     */
+    private void load(String channel) throws SQLException {
+        for(int id : Repositories.await(Repositories.getQuotes().getLiveIds(channel))) {
+            if(size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * Adds a live quote to the index
+     * @param id the ID of the quote
+     */
+    public synchronized void add(int id) {
+        int position = Arrays.binarySearch(ids, 0, size, id);
+        if(position >= 0) return;
+        position = -position - 1;
+        if(size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+        // New quotes have the highest ID, so this is almost always an append
+        System.arraycopy(ids, position, ids, position + 1, size - position);
+        ids[position] = id;
+        size++;
+    }
+
+    /**
+     * Removes a quote which has been deleted or purged from the index
+     * @param id the ID of the quote
+     */
+    public synchronized void remove(int id) {
+        int position = Arrays.binarySearch(ids, 0, size, id);
+        if(position < 0) return;
+        System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+        size--;
+    }
+
+    /**
+     * Returns whether a quote is live
+     * @param id the ID of the quote
+     * @return true if the quote is in the index, false if it is not
+     */
+    public synchronized boolean contains(int id) {
+        return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+    /**
+     * Returns the number of live quotes
+     * @return the number of live quotes
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the ID of a quote by its number, where quote #1 is the oldest live quote
+     * @param ordinal the number of the quote
+     * @return the ID of the quote, or -1 if there is no quote with that number
+     */
+    public synchronized int getByOrdinal(int ordinal) {
+        if(ordinal < 1 || ordinal > size) return -1;
+        return ids[ordinal - 1];
+    }
+
+    /**
+     * Returns the position of a live quote, counting from 1 for the oldest quote
+     * @param id the ID of the quote
+     * @return the position of the quote, or -1 if it is not live
+     */
+    public synchronized int getOrdinal(int id) {
+        int position = Arrays.binarySearch(ids, 0, size, id);
+        return position >= 0 ? position + 1 : -1;
+    }
+
+    /**
+     * Picks a live quote uniformly at random
+     * @return the ID of the quote, or -1 if the channel has no quotes
+     */
+    public synchronized int pickRandom() {
+        if(size == 0) return -1;
+        return ids[random.nextInt(size)];
+    }
+
+    /**
+     * Picks the next quote from a shuffled bag of every live quote, refilling and reshuffling
+     * the bag once every quote in it has been picked. Quotes deleted since the bag was filled
+     * are skipped, and quotes added since are picked once the bag is next refilled.
+     * @return the ID of the quote, or -1 if the channel has no quotes
+     */
+    public synchronized int pickShuffled() {
+        if(size == 0) return -1;
+        while(true) {
+            if(bagPosition == bag.length) refillBag();
+            int id = bag[bagPosition++];
+            if(contains(id)) return id;
+        }
+    }
+
+    /**
+     * Refills the bag with every live quote in a random order (Fisher-Yates shuffle)
+     */
+    private void refillBag() {
+        bag = Arrays.copyOf(ids, size);
+        for(int i = bag.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = bag[i];
+            bag[i] = bag[j];
+            bag[j] = swap;
+        }
+        bagPosition = 0;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Implementations;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import us.rddt.IRCBot.Persistence.Quote;
+import us.rddt.IRCBot.Persistence.Repositories;
+
+/**
+ * An inverted index of the words in a channel's live quotes, used to find quotes by word
+ * without scanning the Quotes table. Each word maps to the sorted IDs of the quotes which
+ * contain it, stored as the differences between consecutive IDs in variable-length bytes,
+ * so most postings take a single byte.
+ * 
+ * The index is built from the database the first time a channel is searched and then kept
+ * current as quotes are added, deleted, undeleted and purged.
+ * 
+ * @author Ryan Morrison
+ */
+public class QuoteSearchIndex {
+    /*
+     * Class variables.
+     */
+    private static final Map<String, QuoteSearchIndex> indexes = new ConcurrentHashMap<String, QuoteSearchIndex>();
+    // Held while a channel's index is built, so only callers for the same channel wait on the database
+    private static final ConcurrentHashMap<String, Object> loadLocks = new ConcurrentHashMap<String, Object>();
+    // Words shorter than this are too common to be worth indexing
+    private static final int MINIMUM_WORD_LENGTH = 2;
+
+    private final Map<String, PostingList> postings = new HashMap<String, PostingList>();
+
+    /**
+     * Returns the index for a channel, building it from the database if it has not been built yet
+     * @param channel the name of the channel
+     * @return the index for the channel
+     * @throws SQLException if the index cannot be built
+     */
+    public static QuoteSearchIndex getIndex(String channel) throws SQLException {
+        String key = channel.toLowerCase();
+        QuoteSearchIndex index = indexes.get(key);
+        if(index == null) {
+            synchronized(loadLocks.computeIfAbsent(key, name -> new Object())) {
+                index = indexes.get(key);
+                if(index == null) {
+                    index = new QuoteSearchIndex();
+                    index.load(channel);
+                    indexes.put(key, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index for a channel if it has been built. Changes to the channel's quotes
+     * only need to be applied to a built index; one built later reads them from the database.
+     * @param channel the name of the channel
+     * @return the index for the channel, or null if it has not been built
+     */
+    public static QuoteSearchIndex getLoadedIndex(String channel) {
+        return indexes.get(channel.toLowerCase());
+    }
+
+    /**
+     * Indexes the channel's live quotes
+     * @param channel the name of the channel
+     * @throws SQLException if the quotes cannot be loaded
+     */
+    private void load(String channel) throws SQLException {
+        // Quotes arrive in ID order, so every posting is appended to the end of its list
+        for(Quote quote : Repositories.await(Repositories.getQuotes().getLive(channel))) {
+            add(quote.getId(), quote.getText());
+        }
+    }
+
+    /**
+     * Adds a live quote to the index
+     * @param id the ID of the quote
+     * @param quote the text of the quote
+     */
+    public synchronized void add(int id, String quote) {
+        for(String word : tokenize(quote)) {
+            PostingList list = postings.get(word);
+            if(list == null) {
+                list = new PostingList();
+                postings.put(word, list);
+            }
+            list.add(id);
+        }
+    }
+
+    /**
+     * Removes a quote which has been deleted or purged from the index
+     * @param id the ID of the quote
+     * @param quote the text of the quote
+     */
+    public synchronized void remove(int id, String quote) {
+        for(String word : tokenize(quote)) {
+            PostingList list = postings.get(word);
+            if(list == null) continue;
+            list.remove(id);
+            if(list.count == 0) postings.remove(word);
+        }
+    }
+
+    /**
+     * Finds the quotes containing any of the words in a query. Quotes matching more of the
+     * words are ranked first, and newer quotes are ranked before older ones.
+     * @param query the words to search for
+     * @return the IDs of the matching quotes, best match first
+     */
+    public List<Integer> search(String query) {
+        final Map<Integer, Integer> matches = new HashMap<Integer, Integer>();
+        synchronized(this) {
+            for(String word : tokenize(query)) {
+                PostingList list = postings.get(word);
+                if(list == null) continue;
+                for(int id : list.decode()) {
+                    Integer count = matches.get(id);
+                    matches.put(id, count == null ? 1 : count + 1);
+                }
+            }
+        }
+        List<Integer> ranked = new ArrayList<Integer>(matches.keySet());
+        Collections.sort(ranked, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                int byMatches = matches.get(b).compareTo(matches.get(a));
+                return byMatches != 0 ? byMatches : b.compareTo(a);
+            }
+        });
+        return ranked;
+    }
+
+    /**
+     * Splits text into the distinct words which are indexed, in lower case
+     * @param text the text to split
+     * @return the words in the text
+     */
+    private static Set<String> tokenize(String text) {
+        Set<String> words = new LinkedHashSet<String>();
+        for(String word : text.toLowerCase(Locale.ENGLISH).split("[^\\p{L}\\p{N}']+")) {
+            word = word.replace("'", "");
+            if(word.length() >= MINIMUM_WORD_LENGTH) words.add(word);
+        }
+        return words;
+    }
+
+    /**
+     * The sorted IDs of the quotes containing a word, stored as the gap from the previous ID
+     * in 7-bit groups with the high bit set on every byte but the last.
+     */
+    private static class PostingList {
+        private byte[] data = new byte[4];
+        private int length = 0;
+        private int count = 0;
+        private int last = 0;
+
+        /**
+         * Adds a quote to the list
+         * @param id the ID of the quote
+         */
+        public void add(int id) {
+            if(id > last) {
+                append(id);
+                return;
+            }
+            // Undeleted quotes can be older than the newest quote in the list
+            int[] ids = decode();
+            int position = Arrays.binarySearch(ids, id);
+            if(position >= 0) return;
+            position = -position - 1;
+            int[] updated = new int[ids.length + 1];
+            System.arraycopy(ids, 0, updated, 0, position);
+            updated[position] = id;
+            System.arraycopy(ids, position, updated, position + 1, ids.length - position);
+            encode(updated);
+        }
+
+        /**
+         * Removes a quote from the list
+         * @param id the ID of the quote
+         */
+        public void remove(int id) {
+            int[] ids = decode();
+            int position = Arrays.binarySearch(ids, id);
+            if(position < 0) return;
+            int[] updated = new int[ids.length - 1];
+            System.arraycopy(ids, 0, updated, 0, position);
+            System.arraycopy(ids, position + 1, updated, position, ids.length - position - 1);
+            encode(updated);
+        }
+
+        /**
+         * Returns the IDs in the list
+         * @return the IDs in the list, in ascending order
+         */
+        public int[] decode() {
+            int[] ids = new int[count];
+            int id = 0;
+            int offset = 0;
+            for(int i = 0; i < count; i++) {
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[offset++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while(b < 0);
+                id += gap;
+                ids[i] = id;
+            }
+            return ids;
+        }
+
+        /**
+         * Replaces the contents of the list
+         * @param ids the IDs to store, in ascending order
+         */
+        private void encode(int[] ids) {
+            length = 0;
+            count = 0;
+            last = 0;
+            for(int id : ids) {
+                append(id);
+            }
+        }
+
+        /**
+         * Appends an ID larger than every ID already in the list
+         * @param id the ID to append
+         */
+        private void append(int id) {
+            int gap = id - last;
+            if(length + 5 > data.length) data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+            while((gap & ~0x7F) != 0) {
+                data[length++] = (byte)((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+            data[length++] = (byte)gap;
+            last = id;
+            count++;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Implementations;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.IRCUtils;
+import us.rddt.IRCBot.Dispatch.EventDispatcher;
+import us.rddt.IRCBot.Persistence.Repositories;
+import us.rddt.IRCBot.Persistence.SeenRecord;
+
+/**
+ * Keeps the last time every nick was seen leaving every channel in memory, so !seen
+ * can be answered without going to the database. The index is loaded from the Seen
+ * table once and then kept current from part, kick and quit events, with the table
+ * acting only as the durable copy.
+ * 
+ * Each nick is interned to an integer once, and each channel holds an open-addressed
+ * table of nick IDs to timestamps, so an entry costs twelve bytes rather than a pair
+ * of boxed objects.
+ * 
+ * @author Ryan Morrison
+ */
+public class SeenIndex implements Runnable {
+    /*
+     * Class variables.
+     */
+    private static final Map<String, Integer> nickIds = new ConcurrentHashMap<String, Integer>();
+    private static final AtomicInteger nextNickId = new AtomicInteger();
+    private static final Map<String, ChannelIndex> channels = new ConcurrentHashMap<String, ChannelIndex>();
+    private static final AtomicBoolean loading = new AtomicBoolean(false);
+    private static volatile boolean loaded = false;
+
+    /**
+     * Records that a user was seen leaving a channel
+     * @param nick the nick of the user
+     * @param channel the channel the user left
+     * @param date the time the user was seen
+     */
+    public static void record(String nick, String channel, long date) {
+        getChannelIndex(channel).put(getNickId(nick), date);
+    }
+
+    /**
+     * Returns the last time a user was seen leaving a channel
+     * @param nick the nick of the user
+     * @param channel the channel to look up
+     * @return the time the user was last seen, or -1 if the user has never been seen
+     */
+    public static long lookup(String nick, String channel) {
+        Integer nickId = nickIds.get(normalize(nick));
+        ChannelIndex index = channels.get(normalize(channel));
+        if(nickId == null || index == null) return -1;
+        return index.get(nickId);
+    }
+
+    /**
+     * Returns whether the index has been loaded from the database
+     * @return true if the index has been loaded, false if lookups must still go to the database
+     */
+    public static boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Loads the index from the database in the background, unless it is already loaded or loading
+     */
+    public static void loadAsync() {
+        if(!loaded && loading.compareAndSet(false, true)) {
+            EventDispatcher.dispatch(new SeenIndex());
+        }
+    }
+
+    /**
+     * Returns the number of nicks which have been interned
+     * @return the number of nicks which have been interned
+     */
+    public static int getNickCount() {
+        return nickIds.size();
+    }
+
+    /**
+     * Returns the ID for a nick, assigning a new one if the nick has not been seen before
+     * @param nick the nick of the user
+     * @return the ID for the nick
+     */
+    private static int getNickId(String nick) {
+        String key = normalize(nick);
+        Integer nickId = nickIds.get(key);
+        if(nickId == null) {
+            synchronized(nickIds) {
+                nickId = nickIds.get(key);
+                if(nickId == null) {
+                    nickId = nextNickId.getAndIncrement();
+                    nickIds.put(key, nickId);
+                }
+            }
+        }
+        return nickId;
+    }
+
+    /**
+     * Returns the index for a channel, creating it if it does not exist yet
+     * @param channel the name of the channel
+     * @return the index for the channel
+     */
+    private static ChannelIndex getChannelIndex(String channel) {
+        String key = normalize(channel);
+        ChannelIndex index = channels.get(key);
+        if(index == null) {
+            synchronized(channels) {
+                index = channels.get(key);
+                if(index == null) {
+                    index = new ChannelIndex();
+                    channels.put(key, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Normalizes a nick or channel name using the IRC (RFC 1459) case mapping, where
+     * []\~ are the upper case forms of {}|^
+     * @param name the nick or channel name
+     * @return the normalized name
+     */
+    static String normalize(String name) {
+        return name.toLowerCase().replace('[', '{').replace(']', '}').replace('\\', '|').replace('~', '^');
+    }
+
+    /**
+     * Method that executes upon thread start
+     * (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    public void run() {
+        try {
+            List<SeenRecord> records = Repositories.await(Repositories.getSeen().getAll());
+            // Events recorded while we were loading are kept if they are newer than the database
+            for(SeenRecord record : records) {
+                record(record.getNick(), record.getChannel(), record.getDate());
+            }
+            loaded = true;
+            Configuration.getLogger().write(Level.INFO, "Loaded " + records.size() + " seen records (" + getNickCount() + " nicks) into memory.");
+        } catch (Exception ex) {
+            Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+        } finally {
+            loading.set(false);
+        }
+    }
+
+    /**
+     * Maps the nick IDs seen in a single channel to the last time each was seen, using open
+     * addressing with linear probing over a pair of primitive arrays.
+     */
+    private static class ChannelIndex {
+        private int[] nicks = new int[16];
+        private long[] dates = new long[16];
+        private int size = 0;
+
+        /**
+         * Records the time a nick was seen, keeping the existing time if it is later
+         * @param nickId the ID of the nick
+         * @param date the time the nick was seen
+         */
+        public synchronized void put(int nickId, long date) {
+            // Slots hold the ID plus one, so an empty slot is zero
+            int slot = findSlot(nicks, nickId + 1);
+            if(nicks[slot] == 0) {
+                nicks[slot] = nickId + 1;
+                dates[slot] = date;
+                if(++size * 4 > nicks.length * 3) resize();
+            } else if(date > dates[slot]) {
+                dates[slot] = date;
+            }
+        }
+
+        /**
+         * Returns the last time a nick was seen
+         * @param nickId the ID of the nick
+         * @return the last time the nick was seen, or -1 if it has not been seen
+         */
+        public synchronized long get(int nickId) {
+            int slot = findSlot(nicks, nickId + 1);
+            return nicks[slot] == 0 ? -1 : dates[slot];
+        }
+
+        /**
+         * Doubles the size of the table
+         */
+        private void resize() {
+            int[] oldNicks = nicks;
+            long[] oldDates = dates;
+            nicks = new int[oldNicks.length * 2];
+            dates = new long[oldNicks.length * 2];
+            for(int i = 0; i < oldNicks.length; i++) {
+                if(oldNicks[i] == 0) continue;
+                int slot = findSlot(nicks, oldNicks[i]);
+                nicks[slot] = oldNicks[i];
+                dates[slot] = oldDates[i];
+            }
+        }
+
+        /**
+         * Returns the slot holding a key, or the empty slot where it belongs
+         * @param table the table to search
+         * @param key the key to find
+         * @return the slot holding the key or the empty slot where it belongs
+         */
+        private static int findSlot(int[] table, int key) {
+            int mask = table.length - 1;
+            int hash = key * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while(table[slot] != 0 && table[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
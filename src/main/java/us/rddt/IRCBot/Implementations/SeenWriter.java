@@ -0,0 +1,152 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Implementations;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.IRCUtils;
+import us.rddt.IRCBot.Dispatch.EventDispatcher;
+import us.rddt.IRCBot.Persistence.Repositories;
+import us.rddt.IRCBot.Persistence.SeenRecord;
+
+/**
+ * Buffers seen updates in memory and writes them to the database in batches. Only
+ * the latest time each nick was seen in each channel is kept, so a user who parts
+ * and rejoins repeatedly (or quits from many channels during a netsplit) costs a
+ * single row in the next batch rather than a round trip to the database per event.
+ * 
+ * The buffer is flushed once it holds seen_flush_size entries, seen_flush_interval
+ * seconds after the first entry is buffered, and when the bot shuts down.
+ * 
+ * @author Ryan Morrison
+ */
+public class SeenWriter implements Runnable {
+    /*
+     * Class variables.
+     */
+    private static final Map<String, SeenRecord> pending = new ConcurrentHashMap<String, SeenRecord>();
+    private static final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private static final AtomicBoolean flushQueued = new AtomicBoolean(false);
+
+    /**
+     * Records that a user was seen leaving a channel
+     * @param nick the nick of the user
+     * @param channel the channel the user left
+     * @param date the time the user was seen
+     */
+    public static void record(String nick, String channel, long date) {
+        pending.put(getKey(nick, channel), new SeenRecord(nick, channel, date));
+        if(pending.size() >= Configuration.getSeenFlushSize()) {
+            // Flush now rather than waiting for the timer
+            if(flushQueued.compareAndSet(false, true)) EventDispatcher.dispatch(new SeenWriter());
+        } else if(flushScheduled.compareAndSet(false, true)) {
+            EventDispatcher.schedule(SeenWriter.class.getSimpleName(), new SeenWriter(), Configuration.getSeenFlushInterval(), TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Returns the time a user was seen leaving a channel if it has not been written to the
+     * database yet
+     * @param nick the nick of the user
+     * @param channel the channel to look up
+     * @return the time the user was last seen, or null if there is no buffered update
+     */
+    public static Timestamp lookup(String nick, String channel) {
+        SeenRecord entry = pending.get(getKey(nick, channel));
+        return entry != null ? new Timestamp(entry.getDate()) : null;
+    }
+
+    /**
+     * Writes every buffered update to the database. If the write fails the updates are put
+     * back in the buffer (unless a newer update has arrived since) to be retried by the next flush.
+     */
+    public static synchronized void flush() {
+        flushQueued.set(false);
+        flushScheduled.set(false);
+        if(pending.isEmpty()) return;
+        // Take the buffered updates, leaving behind any which are replaced while we copy them
+        List<SeenRecord> batch = new ArrayList<SeenRecord>(pending.size());
+        for(Map.Entry<String, SeenRecord> entry : pending.entrySet()) {
+            if(pending.remove(entry.getKey(), entry.getValue())) batch.add(entry.getValue());
+        }
+        if(batch.isEmpty()) return;
+        try {
+            Repositories.await(Repositories.getSeen().saveAll(batch));
+            Configuration.getLogger().write(Level.FINE, "Wrote " + batch.size() + " seen updates to the database.");
+        } catch (Exception ex) {
+            Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+            for(SeenRecord entry : batch) {
+                requeue(entry);
+            }
+        }
+    }
+
+    /**
+     * Puts an update which could not be written back in the buffer, unless a newer one has arrived
+     * @param entry the update to put back
+     */
+    private static void requeue(SeenRecord entry) {
+        String key = getKey(entry.getNick(), entry.getChannel());
+        SeenRecord existing = pending.putIfAbsent(key, entry);
+        while(existing != null && existing.getDate() < entry.getDate()) {
+            if(pending.replace(key, existing, entry)) break;
+            existing = pending.putIfAbsent(key, entry);
+        }
+        if(flushScheduled.compareAndSet(false, true)) {
+            EventDispatcher.schedule(SeenWriter.class.getSimpleName(), new SeenWriter(), Configuration.getSeenFlushInterval(), TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Returns the key for a nick in a channel, ignoring case the same way as SeenIndex
+     * @param nick the nick of the user
+     * @param channel the channel
+     * @return the key for the nick in the channel
+     */
+    private static String getKey(String nick, String channel) {
+        return SeenIndex.normalize(channel) + " " + SeenIndex.normalize(nick);
+    }
+
+    /**
+     * Method that executes upon thread start
+     * (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    public void run() {
+        flush();
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Implementations;
+
+import java.sql.SQLException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import us.rddt.IRCBot.Persistence.Repositories;
+
+/**
+ * Counts the live quotes each nick has contributed to a channel, so the shout statistics
+ * commands don't need to group and count the channel's quotes in the database every time
+ * they run. The counts are loaded from the database the first time a channel's statistics
+ * are needed and then kept current as quotes are added, deleted, undeleted and purged.
+ * 
+ * The counts are also kept in a set sorted from the most to the fewest quotes, so the top
+ * shouters can be read straight off the front of the set.
+ * 
+ * @author Ryan Morrison
+ */
+public class ShoutLeaderboard {
+    /*
+     * Class variables.
+     */
+    private static final Map<String, ShoutLeaderboard> leaderboards = new ConcurrentHashMap<String, ShoutLeaderboard>();
+    // Held while a channel's leaderboard is loaded, so only callers for the same channel wait on the database
+    private static final ConcurrentHashMap<String, Object> loadLocks = new ConcurrentHashMap<String, Object>();
+
+    private final Map<String, Shouter> shouters = new HashMap<String, Shouter>();
+    private final TreeSet<Shouter> ranking = new TreeSet<Shouter>();
+
+    /**
+     * Returns the leaderboard for a channel, loading it from the database if it has not been loaded yet
+     * @param channel the name of the channel
+     * @return the leaderboard for the channel
+     * @throws SQLException if the leaderboard cannot be loaded
+     */
+    public static ShoutLeaderboard getLeaderboard(String channel) throws SQLException {
+        String key = channel.toLowerCase();
+        ShoutLeaderboard leaderboard = leaderboards.get(key);
+        if(leaderboard == null) {
+            synchronized(loadLocks.computeIfAbsent(key, name -> new Object())) {
+                leaderboard = leaderboards.get(key);
+                if(leaderboard == null) {
+                    leaderboard = new ShoutLeaderboard();
+                    leaderboard.load(channel);
+                    leaderboards.put(key, leaderboard);
+                }
+            }
+        }
+        return leaderboard;
+    }
+
+    /**
+     * Returns the leaderboard for a channel if it has been loaded. A change to the database
+     * should only be applied to a leaderboard loaded before the change was made; one loaded
+     * afterwards already counts it.
+     * @param channel the name of the channel
+     * @return the leaderboard for the channel, or null if it has not been loaded
+     */
+    public static ShoutLeaderboard getLoadedLeaderboard(String channel) {
+        return leaderboards.get(channel.toLowerCase());
+    }
+
+    /**
+     * Loads the number of live quotes per nick from the database
+     * @param channel the name of the channel
+     * @throws SQLException if the counts cannot be loaded
+     */
+    private void load(String channel) throws SQLException {
+        for(Map.Entry<String, Integer> count : Repositories.await(Repositories.getQuotes().getShoutCounts(channel)).entrySet()) {
+            adjust(count.getKey(), count.getValue());
+        }
+    }
+
+    /**
+     * Records that a nick has a new live quote
+     * @param nick the nick which shouted the quote
+     */
+    public synchronized void add(String nick) {
+        adjust(nick, 1);
+    }
+
+    /**
+     * Records that one of a nick's quotes has been deleted or purged
+     * @param nick the nick which shouted the quote
+     */
+    public synchronized void remove(String nick) {
+        adjust(nick, -1);
+    }
+
+    /**
+     * Returns the number of live quotes a nick has shouted
+     * @param nick the nick to look up
+     * @return the number of live quotes the nick has shouted
+     */
+    public synchronized int getCount(String nick) {
+        Shouter shouter = shouters.get(nick.toLowerCase());
+        return shouter != null ? shouter.count : 0;
+    }
+
+    /**
+     * Returns the nicks with the most live quotes, from the most to the fewest
+     * @param limit the number of nicks to return
+     * @return the nicks and their number of quotes
+     */
+    public synchronized List<Map.Entry<String, Integer>> getTop(int limit) {
+        List<Map.Entry<String, Integer>> top = new ArrayList<Map.Entry<String, Integer>>(limit);
+        Iterator<Shouter> iterator = ranking.iterator();
+        while(iterator.hasNext() && top.size() < limit) {
+            Shouter shouter = iterator.next();
+            top.add(new AbstractMap.SimpleImmutableEntry<String, Integer>(shouter.nick, shouter.count));
+        }
+        return top;
+    }
+
+    /**
+     * Changes a nick's number of quotes, keeping the ranking in order
+     * @param nick the nick to update
+     * @param delta the change in the number of quotes
+     */
+    private synchronized void adjust(String nick, int delta) {
+        String key = nick.toLowerCase();
+        Shouter shouter = shouters.get(key);
+        if(shouter == null) {
+            if(delta <= 0) return;
+            shouter = new Shouter(key, nick);
+            shouters.put(key, shouter);
+        } else {
+            // The ranking is sorted by count, so the entry must be taken out before its count changes
+            ranking.remove(shouter);
+        }
+        shouter.count += delta;
+        if(shouter.count > 0) ranking.add(shouter);
+        else shouters.remove(key);
+    }
+
+    /**
+     * A nick and the number of live quotes it has shouted, ordered from the most quotes to
+     * the fewest and then by nick.
+     */
+    private static class Shouter implements Comparable<Shouter> {
+        private final String key;
+        private final String nick;
+        private int count = 0;
+
+        /**
+         * Class constructor
+         * @param key the nick in lower case
+         * @param nick the nick as it was first seen
+         */
+        public Shouter(String key, String nick) {
+            this.key = key;
+            this.nick = nick;
+        }
+
+        /**
+         * (non-Javadoc)
+         * @see java.lang.Comparable#compareTo(java.lang.Object)
+         */
+        public int compareTo(Shouter other) {
+            if(count != other.count) return count > other.count ? -1 : 1;
+            return key.compareTo(other.key);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+/**
+ * Classifies channel messages in a single pass over their characters, working out
+ * whether a message is a shout, whether it starts with the command prefix and where
+ * any URLs in it are. Each thread reuses its own classifier, so classifying a message
+ * does not allocate any objects unless a URL is asked for as a string.
+ * 
+ * URLs are matched the same way as the pattern the bot has always used:
+ * \bhttps?://[-a-zA-Z0-9+&@#/%?=~_|!:,.;]*[-a-zA-Z0-9+&@#/%=~_|]
+ * 
+ * @author Ryan Morrison
+ */
+public class MessageClassifier {
+    /*
+     * Class variables.
+     */
+    // The maximum number of URLs to find in a single message
+    public static final int MAX_URLS = 2;
+    // Messages must be longer than this once trimmed to count as a shout
+    public static final int MIN_SHOUT_LENGTH = 5;
+
+    // States used while matching a URL
+    private static final int URL_NONE = 0;
+    private static final int URL_BODY = 8;
+    private static final String URL_SCHEME = "http";
+
+    private static final ThreadLocal<MessageClassifier> classifiers = new ThreadLocal<MessageClassifier>() {
+        protected MessageClassifier initialValue() {
+            return new MessageClassifier();
+        }
+    };
+
+    private String message;
+    private boolean upperCase;
+    private int trimmedLength;
+    private boolean commandPrefix;
+    private int urlCount;
+    private final int[] urlStarts = new int[MAX_URLS];
+    private final int[] urlEnds = new int[MAX_URLS];
+
+    /**
+     * Class constructor.
+     */
+    private MessageClassifier() {
+    }
+
+    /**
+     * Classifies a message using the calling thread's classifier. The returned classifier
+     * is reused for the thread's next message, so it should not be kept around.
+     * @param message the message to classify
+     * @param prefix the command prefix
+     * @return the classification of the message
+     */
+    public static MessageClassifier classify(String message, char prefix) {
+        MessageClassifier classifier = classifiers.get();
+        classifier.scan(message, prefix);
+        return classifier;
+    }
+
+    /**
+     * Walks the message once, recording everything the handlers need to know about it
+     * @param message the message to classify
+     * @param prefix the command prefix
+     */
+    private void scan(String message, char prefix) {
+        this.message = message;
+        int length = message.length();
+        boolean hasLetter = false;
+        boolean hasLowerCase = false;
+        int firstCharacter = -1;
+        int lastCharacter = -1;
+        int urlState = URL_NONE;
+        int urlStart = -1;
+        int urlEnd = -1;
+        urlCount = 0;
+
+        for(int i = 0; i < length; i++) {
+            char c = message.charAt(i);
+            // Track the first and last non-whitespace characters to work out the trimmed length
+            if(!isWhitespace(c)) {
+                if(firstCharacter < 0) firstCharacter = i;
+                lastCharacter = i;
+            }
+            // A string is only upper case if it includes at least one letter and no lower case letters
+            if(Character.isLetter(c)) {
+                hasLetter = true;
+                if(Character.isLowerCase(c)) hasLowerCase = true;
+            }
+            // Match URLs, stopping once we have enough of them
+            if(urlCount < MAX_URLS) {
+                if(urlState == URL_BODY) {
+                    if(isUrlCharacter(c)) {
+                        if(isUrlEndCharacter(c)) urlEnd = i + 1;
+                        continue;
+                    }
+                    if(urlEnd > 0) addUrl(urlStart, urlEnd);
+                    urlState = URL_NONE;
+                    urlEnd = -1;
+                } else if(urlState != URL_NONE) {
+                    urlState = advanceScheme(urlState, c);
+                    if(urlState != URL_NONE) continue;
+                }
+                // Only start matching at a word boundary
+                if(c == 'h' && (i == 0 || !isWordCharacter(message.charAt(i - 1)))) {
+                    urlState = 1;
+                    urlStart = i;
+                }
+            }
+        }
+        if(urlState == URL_BODY && urlEnd > 0 && urlCount < MAX_URLS) addUrl(urlStart, urlEnd);
+
+        upperCase = hasLetter && !hasLowerCase;
+        trimmedLength = firstCharacter < 0 ? 0 : lastCharacter - firstCharacter + 1;
+        commandPrefix = length > 0 && message.charAt(0) == prefix;
+    }
+
+    /**
+     * Moves the URL matcher through the "http://" or "https://" scheme
+     * @param state the number of scheme characters matched so far
+     * @param c the next character
+     * @return the new state, or URL_NONE if the character does not continue the scheme
+     */
+    private static int advanceScheme(int state, char c) {
+        // States 1-3 match the rest of "http"
+        if(state < URL_SCHEME.length()) return c == URL_SCHEME.charAt(state) ? state + 1 : URL_NONE;
+        // State 4 allows an optional 's'
+        if(state == 4) {
+            if(c == 's') return 5;
+            return c == ':' ? 6 : URL_NONE;
+        }
+        if(state == 5) return c == ':' ? 6 : URL_NONE;
+        // States 6 and 7 match the slashes, after which we're in the body of the URL
+        if(state == 6 || state == 7) return c == '/' ? state + 1 : URL_NONE;
+        return URL_NONE;
+    }
+
+    /**
+     * Records a URL found in the message
+     * @param start the index of the first character of the URL
+     * @param end the index after the last character of the URL
+     */
+    private void addUrl(int start, int end) {
+        urlStarts[urlCount] = start;
+        urlEnds[urlCount] = end;
+        urlCount++;
+    }
+
+    /**
+     * Checks to see if a character is whitespace, as matched by \s
+     * @param c the character to check
+     * @return true if the character is whitespace, false if it is not
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Checks to see if a character is a word character, as used by \b
+     * @param c the character to check
+     * @return true if the character is a word character, false if it is not
+     */
+    private static boolean isWordCharacter(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /**
+     * Checks to see if a character may appear inside a URL
+     * @param c the character to check
+     * @return true if the character may appear inside a URL, false if it may not
+     */
+    private static boolean isUrlCharacter(char c) {
+        return isUrlEndCharacter(c) || c == '?' || c == '!' || c == ':' || c == ',' || c == '.' || c == ';';
+    }
+
+    /**
+     * Checks to see if a character may end a URL
+     * @param c the character to check
+     * @return true if the character may end a URL, false if it may not
+     */
+    private static boolean isUrlEndCharacter(char c) {
+        if((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) return true;
+        switch(c) {
+        case '-': case '+': case '&': case '@': case '#': case '/': case '%': case '=': case '~': case '_': case '|':
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Returns if the message is upper case and long enough to count as a shout
+     * @return true if the message is a shout, false if it is not
+     */
+    public boolean isShout() {
+        return upperCase && trimmedLength > MIN_SHOUT_LENGTH;
+    }
+
+    /**
+     * Returns if the message contains letters, none of which are lower case
+     * @return true if the message is upper case, false if it is not
+     */
+    public boolean isUpperCase() {
+        return upperCase;
+    }
+
+    /**
+     * Returns the length of the message without leading or trailing whitespace
+     * @return the trimmed length of the message
+     */
+    public int getTrimmedLength() {
+        return trimmedLength;
+    }
+
+    /**
+     * Returns if the message starts with the command prefix
+     * @return true if the message starts with the command prefix, false if it does not
+     */
+    public boolean hasCommandPrefix() {
+        return commandPrefix;
+    }
+
+    /**
+     * Returns the number of URLs found in the message, up to MAX_URLS
+     * @return the number of URLs found in the message
+     */
+    public int getUrlCount() {
+        return urlCount;
+    }
+
+    /**
+     * Returns the index of the first character of a URL
+     * @param index the URL to return, starting from 0
+     * @return the index of the first character of the URL
+     */
+    public int getUrlStart(int index) {
+        return urlStarts[index];
+    }
+
+    /**
+     * Returns the index after the last character of a URL
+     * @param index the URL to return, starting from 0
+     * @return the index after the last character of the URL
+     */
+    public int getUrlEnd(int index) {
+        return urlEnds[index];
+    }
+
+    /**
+     * Returns a URL found in the message
+     * @param index the URL to return, starting from 0
+     * @return the URL as a string
+     */
+    public String getUrl(int index) {
+        return message.substring(urlStarts[index], urlEnds[index]);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.Database;
+import us.rddt.IRCBot.Dispatch.HandlerPool;
+
+/**
+ * Runs database queries on a dedicated pool with one thread per pooled connection, so
+ * handlers can wait on a future rather than a connection and the number of queries in
+ * flight is capped in one place. Queries which arrive while database_queue_size queries
+ * are already waiting fail straight away instead of piling up.
+ * 
+ * @author Ryan Morrison
+ */
+public class DatabaseExecutor {
+    /*
+     * Class variables.
+     */
+    private static HandlerPool pool = null;
+
+    /**
+     * A unit of work which runs against a connected database.
+     */
+    public interface Query<T> {
+        /**
+         * Runs the query
+         * @param database the connected database
+         * @return the result of the query
+         * @throws Exception if the query fails
+         */
+        T run(Database database) throws Exception;
+    }
+
+    /**
+     * Runs a query on a connection borrowed from the pool
+     * @param query the query to run
+     * @return a future which completes with the query's result, or exceptionally if the query fails or cannot be queued
+     */
+    public static <T> CompletableFuture<T> submit(final Query<T> query) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        try {
+            getPool().execute(() -> {
+                Database database = new Database();
+                try {
+                    database.connect();
+                    try {
+                        future.complete(query.run(database));
+                    } finally {
+                        database.disconnect();
+                    }
+                } catch (Throwable ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Returns the pool queries run on, creating it if it has not been created yet
+     * @return the pool queries run on
+     */
+    public static synchronized HandlerPool getPool() {
+        if(pool == null) {
+            // Any more threads than connections would only wait for a connection to be returned
+            pool = new HandlerPool("Database", Configuration.getDatabasePoolMaxSize(), Configuration.getDatabaseQueueSize(), "abort");
+        }
+        return pool;
+    }
+
+    /**
+     * Discards the pool so it is rebuilt from the reloaded configuration. Queries already
+     * queued on the old pool are allowed to finish.
+     */
+    public static synchronized void reload() {
+        if(pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.IRCUtils;
+
+/**
+ * Holds the bot's data in memory and records every change in an append-only journal on disk,
+ * one journal per kind of data, so no external database is needed. The journals are replayed
+ * when the bot starts, and rewritten from the data in memory when the bot starts or cleans up
+ * once they have grown well past what the data needs.
+ * 
+ * @author Ryan Morrison
+ */
+public class FileStorageBackend extends MemoryStorageBackend {
+    /*
+     * Class variables.
+     */
+    // A journal is compacted once it holds more than this many records beyond twice what the data needs
+    private static final int COMPACTION_SLACK = 1000;
+
+    private final StorageJournal quoteJournal;
+    private final StorageJournal seenJournal;
+    private final StorageJournal gameStatusJournal;
+    private final StorageJournal gameListJournal;
+
+    /**
+     * Class constructor
+     * @param directory the directory the journals are kept in
+     */
+    public FileStorageBackend(File directory) {
+        this(new StorageJournal(new File(directory, "quotes.journal")), new StorageJournal(new File(directory, "seen.journal")), new StorageJournal(new File(directory, "gamestatus.journal")), new StorageJournal(new File(directory, "gamelist.journal")));
+    }
+
+    /**
+     * Class constructor
+     * @param quoteJournal the journal to record quote changes in
+     * @param seenJournal the journal to record seen changes in
+     * @param gameStatusJournal the journal to record game status changes in
+     * @param gameListJournal the journal to record game list changes in
+     */
+    private FileStorageBackend(StorageJournal quoteJournal, StorageJournal seenJournal, StorageJournal gameStatusJournal, StorageJournal gameListJournal) {
+        super(quoteJournal, seenJournal, gameStatusJournal, gameListJournal);
+        this.quoteJournal = quoteJournal;
+        this.seenJournal = seenJournal;
+        this.gameStatusJournal = gameStatusJournal;
+        this.gameListJournal = gameListJournal;
+    }
+
+    /**
+     * Prepares the backend for use, before any repository is called
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.StorageBackend#open()
+     */
+    public void open() throws Exception {
+        File directory = quoteJournal.getFile().getParentFile();
+        if(directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the storage directory " + directory.getPath());
+        }
+        open(quoteJournal, quotes);
+        open(seenJournal, seen);
+        open(gameStatusJournal, gameStatuses);
+        open(gameListJournal, gameList);
+    }
+
+    /**
+     * Returns a task which removes old and unnecessary data from the backend
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.StorageBackend#getCleaner()
+     */
+    public Runnable getCleaner() {
+        final Runnable cleaner = super.getCleaner();
+        return () -> {
+            cleaner.run();
+            try {
+                compact(quoteJournal, quotes);
+                compact(seenJournal, seen);
+                compact(gameStatusJournal, gameStatuses);
+                compact(gameListJournal, gameList);
+            } catch (Exception ex) {
+                Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+            }
+        };
+    }
+
+    /**
+     * Returns a summary of the backend's state for the database admin command
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.StorageBackend#getStatistics()
+     */
+    public List<String> getStatistics() {
+        List<String> statistics = new ArrayList<String>();
+        for(StorageJournal journal : new StorageJournal[] { quoteJournal, seenJournal, gameStatusJournal, gameListJournal }) {
+            statistics.add(journal.getFile().getPath() + ": " + journal.getRecords() + " records, " + journal.getFile().length() + " bytes");
+        }
+        return statistics;
+    }
+
+    /**
+     * Replays a journal into its repository, compacting the journal if it has grown too long
+     * @param journal the journal to replay
+     * @param repository the repository the journal records the changes of
+     * @throws IOException if the journal cannot be read or compacted
+     */
+    private static void open(StorageJournal journal, MemoryRepository repository) throws IOException {
+        long started = System.currentTimeMillis();
+        journal.open(repository::replay);
+        Configuration.getLogger().write(Level.INFO, "Replayed " + journal.getRecords() + " records from " + journal.getFile().getPath() + " (" + (System.currentTimeMillis() - started) + "ms).");
+        compact(journal, repository);
+    }
+
+    /**
+     * Rewrites a journal from its repository's data if the journal has grown too long
+     * @param journal the journal to compact
+     * @param repository the repository the journal records the changes of
+     * @throws IOException if the journal cannot be compacted
+     */
+    private static void compact(StorageJournal journal, MemoryRepository repository) throws IOException {
+        // Changes are journalled while holding the repository's lock, so holding it here keeps
+        // any change from being appended to the old journal after the snapshot was taken
+        synchronized(repository) {
+            List<StorageJournal.Record> snapshot = repository.snapshot();
+            if(journal.getRecords() <= snapshot.size() * 2 + COMPACTION_SLACK) return;
+            journal.compact(snapshot);
+            Configuration.getLogger().write(Level.INFO, "Compacted " + journal.getFile().getPath() + " to " + snapshot.size() + " records.");
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.Database;
+import us.rddt.IRCBot.IRCUtils;
+import us.rddt.IRCBot.Dispatch.HandlerPool;
+
+/**
+ * Commits writes in groups. Writes are queued and a single writer thread takes them off
+ * the queue in groups, waiting up to database_commit_delay milliseconds after the first
+ * write for up to database_commit_size writes, then applies the whole group in one
+ * transaction. Consecutive writes of the same statement are sent as one JDBC batch. Each
+ * write's future completes once its transaction has been committed. Writes queued together
+ * through updateAll are always committed in the same transaction.
+ * 
+ * One commit per group rather than per write matters most on SQLite, where every commit
+ * waits for the disk. If a group fails, its writes are retried one transaction at a time
+ * (writes queued together are retried together), so one bad write cannot fail the writes
+ * grouped with it.
+ * 
+ * @author Ryan Morrison
+ */
+public class GroupCommitWriter implements Runnable {
+    /*
+     * Class variables.
+     */
+    private static final BlockingQueue<Unit> queue = new LinkedBlockingQueue<Unit>();
+    private static final AtomicLong groups = new AtomicLong();
+    private static final AtomicLong writes = new AtomicLong();
+    private static Thread writer = null;
+
+    /**
+     * Queues an INSERT, UPDATE or DELETE
+     * @param sql the statement to run
+     * @param parameters the values of the statement's parameters
+     * @return a future which completes with the number of rows changed once the write has been committed
+     */
+    public static CompletableFuture<Integer> update(String sql, Object... parameters) {
+        return submit(new Unit(new Write(sql, parameters, false)));
+    }
+
+    /**
+     * Queues INSERTs, UPDATEs and DELETEs which must be committed in the same transaction
+     * @param statements the statements to run, in order
+     * @param parameters the values of each statement's parameters
+     * @return a future which completes with the total number of rows changed once the writes have been committed
+     */
+    public static CompletableFuture<Integer> updateAll(List<String> statements, List<Object[]> parameters) {
+        if(statements.isEmpty()) return CompletableFuture.completedFuture(0);
+        Write[] writes = new Write[statements.size()];
+        for(int i = 0; i < writes.length; i++) {
+            writes[i] = new Write(statements.get(i), parameters.get(i), false);
+        }
+        return submit(new Unit(writes));
+    }
+
+    /**
+     * Queues an INSERT which generates a key
+     * @param sql the statement to run
+     * @param parameters the values of the statement's parameters
+     * @return a future which completes with the generated key, or -1 if no row was inserted, once the write has been committed
+     */
+    public static CompletableFuture<Integer> insert(String sql, Object... parameters) {
+        return submit(new Unit(new Write(sql, parameters, true)));
+    }
+
+    /**
+     * Returns a human-readable summary of the writer's counters
+     * @return a human-readable summary of the writer's counters
+     */
+    public static String getStatistics() {
+        long groupCount = groups.get();
+        long writeCount = writes.get();
+        return "Group commits: " + writeCount + " writes in " + groupCount + " transactions (" + (groupCount == 0 ? 0 : writeCount / groupCount) + " per transaction), " + queue.size() + " queued";
+    }
+
+    /**
+     * Queues writes, starting the writer thread if it is not running yet
+     * @param unit the writes to queue
+     * @return the writes' future
+     */
+    private static CompletableFuture<Integer> submit(Unit unit) {
+        synchronized(GroupCommitWriter.class) {
+            if(writer == null) {
+                writer = new HandlerPool.NamedThreadFactory("GroupCommit").newThread(new GroupCommitWriter());
+                writer.start();
+            }
+        }
+        queue.add(unit);
+        return unit.future;
+    }
+
+    /**
+     * Method that executes upon thread start
+     * (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    public void run() {
+        try {
+            while(true) {
+                List<Unit> group = new ArrayList<Unit>();
+                Unit next = queue.take();
+                group.add(next);
+                int count = next.writes.length;
+                // Give other writes a moment to join the group
+                long deadline = System.currentTimeMillis() + Configuration.getDatabaseCommitDelay();
+                int size = Configuration.getDatabaseCommitSize();
+                while(count < size) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    next = remaining > 0 ? queue.poll(remaining, TimeUnit.MILLISECONDS) : queue.poll();
+                    if(next == null) break;
+                    group.add(next);
+                    count += next.writes.length;
+                }
+                try {
+                    commit(group);
+                } catch (Throwable ex) {
+                    // Keep the thread alive, as no later write would be committed without it
+                    Configuration.getLogger().write(Level.SEVERE, IRCUtils.getStackTraceString(ex));
+                    for(Unit unit : group) {
+                        unit.future.completeExceptionally(ex);
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Applies a group of writes in a single transaction, falling back to one transaction per
+     * write if the group fails
+     * @param group the writes to apply
+     */
+    private static void commit(List<Unit> group) {
+        Database database = new Database();
+        try {
+            database.connect();
+            try {
+                database.getConnection().setAutoCommit(false);
+                try {
+                    complete(group, apply(database, group));
+                    groups.incrementAndGet();
+                    return;
+                } catch (SQLException ex) {
+                    database.getConnection().rollback();
+                    if(group.size() == 1) throw ex;
+                    Configuration.getLogger().write(Level.WARNING, "Group commit of " + group.size() + " writes failed, retrying them one at a time: " + ex.getMessage());
+                }
+                for(Unit unit : group) {
+                    List<Unit> single = new ArrayList<Unit>(1);
+                    single.add(unit);
+                    try {
+                        complete(single, apply(database, single));
+                        groups.incrementAndGet();
+                    } catch (SQLException ex) {
+                        database.getConnection().rollback();
+                        unit.future.completeExceptionally(ex);
+                    }
+                }
+            } finally {
+                database.disconnect();
+            }
+        } catch (Exception ex) {
+            Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+            for(Unit unit : group) {
+                unit.future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /**
+     * Runs a group of writes and commits them. Runs of the same statement are sent as one batch,
+     * except for inserts which generate keys, which are run one by one to read back their keys.
+     * @param database the connected database, with auto-commit turned off
+     * @param units the writes to run
+     * @return the result of each write
+     * @throws SQLException if any write fails
+     */
+    private static int[] apply(Database database, List<Unit> units) throws SQLException {
+        List<Write> group = new ArrayList<Write>();
+        for(Unit unit : units) {
+            Collections.addAll(group, unit.writes);
+        }
+        int[] results = new int[group.size()];
+        int start = 0;
+        while(start < group.size()) {
+            Write first = group.get(start);
+            if(first.returnsKey) {
+                PreparedStatement statement = database.prepareStatement(first.sql, Statement.RETURN_GENERATED_KEYS);
+                first.bind(statement);
+                results[start] = -1;
+                if(statement.executeUpdate() > 0) {
+                    ResultSet keys = statement.getGeneratedKeys();
+                    try {
+                        if(keys.next()) results[start] = keys.getInt(1);
+                    } finally {
+                        keys.close();
+                    }
+                }
+                start++;
+                continue;
+            }
+            int end = start;
+            PreparedStatement statement = database.prepareStatement(first.sql);
+            while(end < group.size() && !group.get(end).returnsKey && group.get(end).sql.equals(first.sql)) {
+                group.get(end).bind(statement);
+                statement.addBatch();
+                end++;
+            }
+            int[] counts = statement.executeBatch();
+            for(int i = 0; i < counts.length; i++) {
+                // Drivers which cannot report update counts return SUCCESS_NO_INFO, count those as one row
+                results[start + i] = counts[i] == Statement.SUCCESS_NO_INFO ? 1 : counts[i];
+            }
+            start = end;
+        }
+        database.getConnection().commit();
+        return results;
+    }
+
+    /**
+     * Completes the futures of a group of writes which have been committed
+     * @param group the writes which were committed
+     * @param results the result of each write
+     */
+    private static void complete(List<Unit> group, int[] results) {
+        int index = 0;
+        for(Unit unit : group) {
+            // Writes queued together complete with the total number of rows they changed
+            int result = results[index++];
+            for(int i = 1; i < unit.writes.length; i++) {
+                result += results[index++];
+            }
+            unit.future.complete(result);
+            writes.addAndGet(unit.writes.length);
+        }
+    }
+
+    /**
+     * Writes which are committed in the same transaction and the future to complete once they have been.
+     */
+    private static class Unit {
+        private final Write[] writes;
+        private final CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+
+        /**
+         * Class constructor
+         * @param writes the writes to commit together
+         */
+        public Unit(Write... writes) {
+            this.writes = writes;
+        }
+    }
+
+    /**
+     * A single statement to run and the values of its parameters.
+     */
+    private static class Write {
+        private final String sql;
+        private final Object[] parameters;
+        private final boolean returnsKey;
+
+        /**
+         * Class constructor
+         * @param sql the statement to run
+         * @param parameters the values of the statement's parameters
+         * @param returnsKey whether the statement generates a key which should be returned
+         */
+        public Write(String sql, Object[] parameters, boolean returnsKey) {
+            this.sql = sql;
+            this.parameters = parameters;
+            this.returnsKey = returnsKey;
+        }
+
+        /**
+         * Sets the statement's parameters to this write's values
+         * @param statement the statement to bind
+         * @throws SQLException if a parameter cannot be set
+         */
+        public void bind(PreparedStatement statement) throws SQLException {
+            for(int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+        }
+    }
+}
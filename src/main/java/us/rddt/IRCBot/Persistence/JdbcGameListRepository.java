@@ -0,0 +1,75 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Stores the known games in the GameList table.
+ * 
+ * @author Ryan Morrison
+ */
+public class JdbcGameListRepository implements GameListRepository {
+    /**
+     * Returns every known game
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.GameListRepository#getAll()
+     */
+    public CompletableFuture<Map<String, String>> getAll() {
+        return DatabaseExecutor.submit(database -> {
+            ResultSet resultSet = database.prepareStatement("SELECT GameID, GameName FROM GameList").executeQuery();
+            Map<String, String> games = new HashMap<String, String>();
+            while(resultSet.next()) {
+                games.put(resultSet.getString("GameID"), resultSet.getString("GameName"));
+            }
+            return games;
+        });
+    }
+
+    /**
+     * Adds a game
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.GameListRepository#add(String, String)
+     */
+    public CompletableFuture<Void> add(String gameId, String game) {
+        return GroupCommitWriter.update("INSERT INTO GameList(GameID, GameName) VALUES (?, ?)", gameId, game).thenAccept(rows -> {});
+    }
+
+    /**
+     * Deletes a game
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.GameListRepository#delete(String)
+     */
+    public CompletableFuture<Void> delete(String gameId) {
+        return GroupCommitWriter.update("DELETE FROM GameList WHERE GameID = ?", gameId).thenAccept(rows -> {});
+    }
+}
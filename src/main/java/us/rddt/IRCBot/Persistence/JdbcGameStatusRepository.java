@@ -0,0 +1,82 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import us.rddt.IRCBot.Implementations.GameStatusStore;
+
+/**
+ * Stores game statuses in the GameStatus table.
+ * 
+ * @author Ryan Morrison
+ */
+public class JdbcGameStatusRepository implements GameStatusRepository {
+    /**
+     * Returns every stored status
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.GameStatusRepository#getAll()
+     */
+    public CompletableFuture<List<GameStatusStore.Status>> getAll() {
+        return DatabaseExecutor.submit(database -> {
+            ResultSet resultSet = database.prepareStatement("SELECT Nick, Date, Game FROM GameStatus").executeQuery();
+            List<GameStatusStore.Status> statuses = new ArrayList<GameStatusStore.Status>();
+            while(resultSet.next()) {
+                statuses.add(new GameStatusStore.Status(resultSet.getString("Nick"), resultSet.getString("Game"), resultSet.getTimestamp("Date").getTime()));
+            }
+            return statuses;
+        });
+    }
+
+    /**
+     * Stores a batch of changes, replacing any existing status for the same nicks
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.GameStatusRepository#saveAll(List)
+     */
+    public CompletableFuture<Void> saveAll(List<GameStatusStore.Status> statuses) {
+        // Queue the whole batch as one write, so a nick's old status is never deleted without its
+        // new one being inserted. Every delete comes before any insert so each runs as a single batch.
+        List<String> statements = new ArrayList<String>();
+        List<Object[]> parameters = new ArrayList<Object[]>();
+        for(GameStatusStore.Status status : statuses) {
+            statements.add("DELETE FROM GameStatus WHERE Nick = ?");
+            parameters.add(new Object[] { status.getNick() });
+        }
+        for(GameStatusStore.Status status : statuses) {
+            if(status.getGame() == null) continue;
+            statements.add("INSERT INTO GameStatus(Nick, Date, Game) VALUES (?, ?, ?)");
+            parameters.add(new Object[] { status.getNick(), new Timestamp(status.getSince().getTime()), status.getGame() });
+        }
+        return GroupCommitWriter.updateAll(statements, parameters).thenApply(rows -> null);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import us.rddt.IRCBot.Configuration;
+
+/**
+ * Stores quotes in the Quotes table.
+ * 
+ * @author Ryan Morrison
+ */
+public class JdbcQuoteRepository implements QuoteRepository {
+    /**
+     * Returns the IDs of a channel's live quotes
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#getLiveIds(String)
+     */
+    public CompletableFuture<List<Integer>> getLiveIds(final String channel) {
+        return DatabaseExecutor.submit(database -> {
+            PreparedStatement statement = database.prepareStatement("SELECT ID FROM Quotes WHERE Channel = ? AND Deleted = '0' ORDER BY ID");
+            statement.setString(1, channel);
+            ResultSet resultSet = statement.executeQuery();
+            List<Integer> ids = new ArrayList<Integer>();
+            while(resultSet.next()) {
+                ids.add(resultSet.getInt("ID"));
+            }
+            return ids;
+        });
+    }
+
+    /**
+     * Returns a channel's live quotes
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#getLive(String)
+     */
+    public CompletableFuture<List<Quote>> getLive(final String channel) {
+        return DatabaseExecutor.submit(database -> {
+            PreparedStatement statement = database.prepareStatement("SELECT * FROM Quotes WHERE Channel = ? AND Deleted = '0' ORDER BY ID");
+            statement.setString(1, channel);
+            return readAll(statement.executeQuery());
+        });
+    }
+
+    /**
+     * Returns the number of live quotes each nick has shouted in a channel
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#getShoutCounts(String)
+     */
+    public CompletableFuture<Map<String, Integer>> getShoutCounts(final String channel) {
+        return DatabaseExecutor.submit(database -> {
+            PreparedStatement statement = database.prepareStatement("SELECT Nick, COUNT(*) FROM Quotes WHERE Channel = ? AND Deleted = '0' GROUP BY Nick");
+            statement.setString(1, channel);
+            ResultSet resultSet = statement.executeQuery();
+            Map<String, Integer> counts = new HashMap<String, Integer>();
+            while(resultSet.next()) {
+                counts.put(resultSet.getString(1), resultSet.getInt(2));
+            }
+            return counts;
+        });
+    }
+
+    /**
+     * Returns the hashes of every quote (deleted or not) in a channel
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#getHashes(String)
+     */
+    public CompletableFuture<List<String>> getHashes(final String channel) {
+        return DatabaseExecutor.submit(database -> {
+            PreparedStatement statement = database.prepareStatement("SELECT QuoteHash FROM Quotes WHERE Channel = ? AND QuoteHash IS NOT NULL");
+            statement.setString(1, channel);
+            ResultSet resultSet = statement.executeQuery();
+            List<String> hashes = new ArrayList<String>();
+            while(resultSet.next()) {
+                hashes.add(resultSet.getString(1));
+            }
+            return hashes;
+        });
+    }
+
+    /**
+     * Checks whether a channel has a quote (deleted or not) with the provided hash
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#containsHash(String, String)
+     */
+    public CompletableFuture<Boolean> containsHash(final String channel, final String hash) {
+        return DatabaseExecutor.submit(database -> {
+            PreparedStatement statement = database.prepareStatement("SELECT 1 FROM Quotes WHERE Channel = ? AND QuoteHash = ?");
+            statement.setString(1, channel);
+            statement.setString(2, hash);
+            return statement.executeQuery().next();
+        });
+    }
+
+    /**
+     * Returns a live quote
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#get(String, int)
+     */
+    public CompletableFuture<Quote> get(final String channel, final int id) {
+        return DatabaseExecutor.submit(database -> {
+            PreparedStatement statement = database.prepareStatement("SELECT * FROM Quotes WHERE ID = ? AND Channel = ? AND Deleted = '0'");
+            statement.setInt(1, id);
+            statement.setString(2, channel);
+            List<Quote> quotes = readAll(statement.executeQuery());
+            return quotes.isEmpty() ? null : quotes.get(0);
+        });
+    }
+
+    /**
+     * Returns every quote (deleted or not) in a channel matching the provided text
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#find(String, String)
+     */
+    public CompletableFuture<List<Quote>> find(final String channel, final String text) {
+        return DatabaseExecutor.submit(database -> {
+            PreparedStatement statement = database.prepareStatement("SELECT * FROM Quotes WHERE Quote = ? AND Channel = ?");
+            statement.setString(1, text);
+            statement.setString(2, channel);
+            return readAll(statement.executeQuery());
+        });
+    }
+
+    /**
+     * Adds a quote, unless the channel already has a quote with the same hash
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#add(String, String, String, String)
+     */
+    public CompletableFuture<Integer> add(String channel, String nick, String text, String hash) {
+        // The unique index on the hash makes the insert a no-op if the quote exists
+        String insert = Configuration.getDatabaseDriver().equalsIgnoreCase("sqlite") ? "INSERT OR IGNORE" : "INSERT IGNORE";
+        return GroupCommitWriter.insert(insert + " INTO Quotes(Nick, Date, Channel, Quote, QuoteHash, Deleted) VALUES (?, ?, ?, ?, ?, 0)", nick, new Timestamp(System.currentTimeMillis()), channel, text, hash);
+    }
+
+    /**
+     * Marks every quote in a channel matching the provided text as deleted or undeleted
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#setDeleted(String, String, boolean)
+     */
+    public CompletableFuture<Integer> setDeleted(String channel, String text, boolean deleted) {
+        return GroupCommitWriter.update("UPDATE Quotes SET Deleted = ? WHERE Quote = ? AND Channel = ? AND Deleted = ?", deleted ? "1" : "0", text, channel, deleted ? "0" : "1");
+    }
+
+    /**
+     * Permanently removes every quote in a channel matching the provided text
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#purge(String, String)
+     */
+    public CompletableFuture<Integer> purge(String channel, String text) {
+        return GroupCommitWriter.update("DELETE FROM Quotes WHERE Quote = ? AND Channel = ?", text, channel);
+    }
+
+    /**
+     * Reads every quote from a result set
+     * @param resultSet the result set to read
+     * @return the quotes
+     * @throws SQLException if the result set cannot be read
+     */
+    private static List<Quote> readAll(ResultSet resultSet) throws SQLException {
+        List<Quote> quotes = new ArrayList<Quote>();
+        while(resultSet.next()) {
+            quotes.add(new Quote(resultSet.getInt("ID"), resultSet.getString("Nick"), resultSet.getString("Channel"), resultSet.getString("Quote"), resultSet.getTimestamp("Date").getTime(), resultSet.getBoolean("Deleted")));
+        }
+        return quotes;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Stores seen records in the Seen table.
+ * 
+ * @author Ryan Morrison
+ */
+public class JdbcSeenRepository implements SeenRepository {
+    /**
+     * Returns every stored record
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.SeenRepository#getAll()
+     */
+    public CompletableFuture<List<SeenRecord>> getAll() {
+        return DatabaseExecutor.submit(database -> {
+            ResultSet resultSet = database.prepareStatement("SELECT Nick, Channel, Date FROM Seen").executeQuery();
+            List<SeenRecord> records = new ArrayList<SeenRecord>();
+            while(resultSet.next()) {
+                records.add(new SeenRecord(resultSet.getString("Nick"), resultSet.getString("Channel"), resultSet.getTimestamp("Date").getTime()));
+            }
+            return records;
+        });
+    }
+
+    /**
+     * Returns the last time a nick was seen leaving a channel
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.SeenRepository#get(String, String)
+     */
+    public CompletableFuture<SeenRecord> get(final String nick, final String channel) {
+        return DatabaseExecutor.submit(database -> {
+            PreparedStatement statement = database.prepareStatement("SELECT Date FROM Seen WHERE Nick = ? AND Channel = ?");
+            statement.setString(1, nick);
+            statement.setString(2, channel);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() ? new SeenRecord(nick, channel, resultSet.getTimestamp("Date").getTime()) : null;
+        });
+    }
+
+    /**
+     * Stores a batch of records, replacing any existing records for the same nicks and channels
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.SeenRepository#saveAll(List)
+     */
+    public CompletableFuture<Void> saveAll(final List<SeenRecord> records) {
+        return DatabaseExecutor.submit(database -> {
+            // Update the existing rows in a single transaction, then insert rows for the users who were not in the database yet
+            database.getConnection().setAutoCommit(false);
+            PreparedStatement statement = database.prepareStatement("UPDATE Seen SET Date = ? WHERE Nick = ? AND Channel = ?");
+            for(SeenRecord record : records) {
+                statement.setTimestamp(1, new Timestamp(record.getDate()));
+                statement.setString(2, record.getNick());
+                statement.setString(3, record.getChannel());
+                statement.addBatch();
+            }
+            int[] updated = statement.executeBatch();
+            boolean inserting = false;
+            statement = database.prepareStatement("INSERT INTO Seen(Nick, Date, Channel) VALUES (?, ?, ?)");
+            for(int i = 0; i < records.size(); i++) {
+                // Drivers which cannot report update counts return SUCCESS_NO_INFO, assume those rows existed
+                if(updated[i] != 0 && updated[i] != Statement.EXECUTE_FAILED) continue;
+                statement.setString(1, records.get(i).getNick());
+                statement.setTimestamp(2, new Timestamp(records.get(i).getDate()));
+                statement.setString(3, records.get(i).getChannel());
+                statement.addBatch();
+                inserting = true;
+            }
+            if(inserting) statement.executeBatch();
+            database.getConnection().commit();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.util.Arrays;
+import java.util.List;
+
+import us.rddt.IRCBot.Database;
+import us.rddt.IRCBot.Implementations.DatabaseCleaner;
+
+/**
+ * Stores the bot's data in a MySQL or SQLite database.
+ * 
+ * @author Ryan Morrison
+ */
+public class JdbcStorageBackend implements StorageBackend {
+    /*
+     * Class variables.
+     */
+    private final QuoteRepository quotes = new JdbcQuoteRepository();
+    private final SeenRepository seen = new JdbcSeenRepository();
+    private final GameStatusRepository gameStatuses = new JdbcGameStatusRepository();
+    private final GameListRepository gameList = new JdbcGameListRepository();
+
+    /**
+     * Prepares the backend for use, before any repository is called
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.StorageBackend#open()
+     */
+    public void open() throws Exception {
+        // Bring the database schema up to date
+        SchemaMigrator.migrate();
+    }
+
+    /**
+     * Returns the repository of quotes
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.StorageBackend#getQuotes()
+     */
+    public QuoteRepository getQuotes() {
+        return quotes;
+    }
+
+    /**
+     * Returns the repository of seen records
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.StorageBackend#getSeen()
+     */
+    public SeenRepository getSeen() {
+        return seen;
+    }
+
+    /**
+     * Returns the repository of game statuses
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.StorageBackend#getGameStatuses()
+     */
+    public GameStatusRepository getGameStatuses() {
+        return gameStatuses;
+    }
+
+    /**
+     * Returns the repository of known games
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.StorageBackend#getGameList()
+     */
+    public GameListRepository getGameList() {
+        return gameList;
+    }
+
+    /**
+     * Returns a task which removes old and unnecessary data from the backend
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.StorageBackend#getCleaner()
+     */
+    public Runnable getCleaner() {
+        return new DatabaseCleaner();
+    }
+
+    /**
+     * Returns a summary of the backend's state for the database admin command
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.StorageBackend#getStatistics()
+     */
+    public List<String> getStatistics() {
+        return Arrays.asList(Database.getPoolStatistics(), DatabaseExecutor.getPool().toString(), GroupCommitWriter.getStatistics());
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Holds the known games in memory, keyed by their shorthand identifiers.
+ * 
+ * @author Ryan Morrison
+ */
+public class MemoryGameListRepository extends MemoryRepository implements GameListRepository {
+    /*
+     * Class variables.
+     */
+    private static final byte ADD = 1;
+    private static final byte DELETE = 2;
+
+    private final Map<String, String> games = new HashMap<String, String>();
+
+    /**
+     * Class constructor
+     * @param journal the journal to record changes in, or null to keep the games in memory only
+     */
+    public MemoryGameListRepository(StorageJournal journal) {
+        super(journal);
+    }
+
+    /**
+     * Returns every known game
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.GameListRepository#getAll()
+     */
+    public synchronized CompletableFuture<Map<String, String>> getAll() {
+        return CompletableFuture.completedFuture(new HashMap<String, String>(games));
+    }
+
+    /**
+     * Adds a game
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.GameListRepository#add(String, String)
+     */
+    public synchronized CompletableFuture<Void> add(final String gameId, final String game) {
+        try {
+            log(record(gameId, game));
+        } catch (IOException ex) {
+            return failed(ex);
+        }
+        games.put(gameId, game);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Deletes a game
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.GameListRepository#delete(String)
+     */
+    public synchronized CompletableFuture<Void> delete(final String gameId) {
+        if(!games.containsKey(gameId)) return CompletableFuture.completedFuture(null);
+        try {
+            log(out -> {
+                out.writeByte(DELETE);
+                out.writeUTF(gameId);
+            });
+        } catch (IOException ex) {
+            return failed(ex);
+        }
+        games.remove(gameId);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Applies a change read back from the journal
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.MemoryRepository#replay(DataInputStream)
+     */
+    synchronized void replay(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        if(type == ADD) {
+            String gameId = in.readUTF();
+            games.put(gameId, in.readUTF());
+        } else if(type == DELETE) {
+            games.remove(in.readUTF());
+        } else {
+            throw new IOException("Unknown game list record type " + type);
+        }
+    }
+
+    /**
+     * Returns the changes which rebuild the repository's current data from nothing
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.MemoryRepository#snapshot()
+     */
+    synchronized List<StorageJournal.Record> snapshot() {
+        List<StorageJournal.Record> records = new ArrayList<StorageJournal.Record>();
+        for(Map.Entry<String, String> game : games.entrySet()) {
+            records.add(record(game.getKey(), game.getValue()));
+        }
+        return records;
+    }
+
+    /**
+     * Returns the record which adds a game
+     * @param gameId the shorthand identifier of the game
+     * @param game the full title of the game
+     * @return the record adding the game
+     */
+    private static StorageJournal.Record record(final String gameId, final String game) {
+        return out -> {
+            out.writeByte(ADD);
+            out.writeUTF(gameId);
+            out.writeUTF(game);
+        };
+    }
+}
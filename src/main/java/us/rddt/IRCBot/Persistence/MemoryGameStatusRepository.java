@@ -0,0 +1,140 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import us.rddt.IRCBot.Implementations.GameStatusStore;
+
+/**
+ * Holds game statuses in memory, keyed by nick.
+ * 
+ * @author Ryan Morrison
+ */
+public class MemoryGameStatusRepository extends MemoryRepository implements GameStatusRepository {
+    /*
+     * Class variables.
+     */
+    private final Map<String, GameStatusStore.Status> statuses = new HashMap<String, GameStatusStore.Status>();
+
+    /**
+     * Class constructor
+     * @param journal the journal to record changes in, or null to keep the statuses in memory only
+     */
+    public MemoryGameStatusRepository(StorageJournal journal) {
+        super(journal);
+    }
+
+    /**
+     * Returns every stored status
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.GameStatusRepository#getAll()
+     */
+    public synchronized CompletableFuture<List<GameStatusStore.Status>> getAll() {
+        return CompletableFuture.completedFuture(new ArrayList<GameStatusStore.Status>(statuses.values()));
+    }
+
+    /**
+     * Stores a batch of changes, replacing any existing status for the same nicks
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.GameStatusRepository#saveAll(List)
+     */
+    public synchronized CompletableFuture<Void> saveAll(final List<GameStatusStore.Status> batch) {
+        try {
+            log(out -> write(out, batch));
+        } catch (IOException ex) {
+            return failed(ex);
+        }
+        for(GameStatusStore.Status status : batch) {
+            put(status);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Applies a change read back from the journal
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.MemoryRepository#replay(DataInputStream)
+     */
+    synchronized void replay(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        for(int i = 0; i < count; i++) {
+            String nick = in.readUTF();
+            String game = in.readBoolean() ? in.readUTF() : null;
+            put(new GameStatusStore.Status(nick, game, in.readLong()));
+        }
+    }
+
+    /**
+     * Returns the changes which rebuild the repository's current data from nothing
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.MemoryRepository#snapshot()
+     */
+    synchronized List<StorageJournal.Record> snapshot() {
+        final List<GameStatusStore.Status> all = new ArrayList<GameStatusStore.Status>(statuses.values());
+        if(all.isEmpty()) return Collections.emptyList();
+        return Collections.singletonList(out -> write(out, all));
+    }
+
+    /**
+     * Stores a status, replacing any existing status for the same nick
+     * @param status the status to store, where a status without a game clears the nick's status
+     */
+    private void put(GameStatusStore.Status status) {
+        if(status.getGame() == null) {
+            statuses.remove(status.getNick());
+        } else {
+            statuses.put(status.getNick(), status);
+        }
+    }
+
+    /**
+     * Writes a batch of statuses
+     * @param out the stream to write to
+     * @param batch the statuses to write
+     * @throws IOException if the statuses cannot be written
+     */
+    private static void write(DataOutputStream out, List<GameStatusStore.Status> batch) throws IOException {
+        out.writeInt(batch.size());
+        for(GameStatusStore.Status status : batch) {
+            out.writeUTF(status.getNick());
+            out.writeBoolean(status.getGame() != null);
+            if(status.getGame() != null) out.writeUTF(status.getGame());
+            out.writeLong(status.getSince().getTime());
+        }
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Holds quotes in memory, keyed by channel and then by ID.
+ * 
+ * @author Ryan Morrison
+ */
+public class MemoryQuoteRepository extends MemoryRepository implements QuoteRepository {
+    /*
+     * Class variables.
+     */
+    private static final byte ADD = 1;
+    private static final byte SET_DELETED = 2;
+    private static final byte REMOVE = 3;
+
+    // Keyed by lowercased channel name, since MySQL compares channel names case-insensitively
+    private final Map<String, TreeMap<Integer, Quote>> channels = new HashMap<String, TreeMap<Integer, Quote>>();
+    private final Map<Integer, Quote> quotesById = new HashMap<Integer, Quote>();
+    private final Map<Integer, String> hashes = new HashMap<Integer, String>();
+    // Channel and hash of every quote, standing in for the unique index of the Quotes table
+    private final Map<String, Integer> hashIndex = new HashMap<String, Integer>();
+    private int lastId = 0;
+
+    /**
+     * Class constructor
+     * @param journal the journal to record changes in, or null to keep the quotes in memory only
+     */
+    public MemoryQuoteRepository(StorageJournal journal) {
+        super(journal);
+    }
+
+    /**
+     * Returns the IDs of a channel's live quotes
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#getLiveIds(String)
+     */
+    public synchronized CompletableFuture<List<Integer>> getLiveIds(String channel) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for(Quote quote : getChannel(channel).values()) {
+            if(!quote.isDeleted()) ids.add(quote.getId());
+        }
+        return CompletableFuture.completedFuture(ids);
+    }
+
+    /**
+     * Returns a channel's live quotes
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#getLive(String)
+     */
+    public synchronized CompletableFuture<List<Quote>> getLive(String channel) {
+        List<Quote> quotes = new ArrayList<Quote>();
+        for(Quote quote : getChannel(channel).values()) {
+            if(!quote.isDeleted()) quotes.add(quote);
+        }
+        return CompletableFuture.completedFuture(quotes);
+    }
+
+    /**
+     * Returns the number of live quotes each nick has shouted in a channel
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#getShoutCounts(String)
+     */
+    public synchronized CompletableFuture<Map<String, Integer>> getShoutCounts(String channel) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for(Quote quote : getChannel(channel).values()) {
+            if(!quote.isDeleted()) counts.merge(quote.getNick(), 1, Integer::sum);
+        }
+        return CompletableFuture.completedFuture(counts);
+    }
+
+    /**
+     * Returns the hashes of every quote (deleted or not) in a channel
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#getHashes(String)
+     */
+    public synchronized CompletableFuture<List<String>> getHashes(String channel) {
+        List<String> channelHashes = new ArrayList<String>();
+        for(Integer id : getChannel(channel).keySet()) {
+            String hash = hashes.get(id);
+            if(hash != null) channelHashes.add(hash);
+        }
+        return CompletableFuture.completedFuture(channelHashes);
+    }
+
+    /**
+     * Checks whether a channel has a quote (deleted or not) with the provided hash
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#containsHash(String, String)
+     */
+    public synchronized CompletableFuture<Boolean> containsHash(String channel, String hash) {
+        return CompletableFuture.completedFuture(hashIndex.containsKey(key(channel) + " " + hash));
+    }
+
+    /**
+     * Returns a live quote
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#get(String, int)
+     */
+    public synchronized CompletableFuture<Quote> get(String channel, int id) {
+        Quote quote = getChannel(channel).get(id);
+        return CompletableFuture.completedFuture(quote != null && !quote.isDeleted() ? quote : null);
+    }
+
+    /**
+     * Returns every quote (deleted or not) in a channel matching the provided text
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#find(String, String)
+     */
+    public synchronized CompletableFuture<List<Quote>> find(String channel, String text) {
+        return CompletableFuture.completedFuture(findAll(channel, text));
+    }
+
+    /**
+     * Adds a quote, unless the channel already has a quote with the same hash
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#add(String, String, String, String)
+     */
+    public synchronized CompletableFuture<Integer> add(String channel, String nick, String text, String hash) {
+        if(hashIndex.containsKey(key(channel) + " " + hash)) return CompletableFuture.completedFuture(-1);
+        final Quote quote = new Quote(lastId + 1, nick, channel, text, System.currentTimeMillis(), false);
+        try {
+            log(record(quote, hash));
+        } catch (IOException ex) {
+            return failed(ex);
+        }
+        put(quote, hash);
+        return CompletableFuture.completedFuture(quote.getId());
+    }
+
+    /**
+     * Marks every quote in a channel matching the provided text as deleted or undeleted
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#setDeleted(String, String, boolean)
+     */
+    public synchronized CompletableFuture<Integer> setDeleted(String channel, String text, final boolean deleted) {
+        final List<Integer> ids = new ArrayList<Integer>();
+        for(Quote quote : findAll(channel, text)) {
+            if(quote.isDeleted() != deleted) ids.add(quote.getId());
+        }
+        if(ids.isEmpty()) return CompletableFuture.completedFuture(0);
+        try {
+            log(out -> {
+                out.writeByte(SET_DELETED);
+                out.writeBoolean(deleted);
+                writeIds(out, ids);
+            });
+        } catch (IOException ex) {
+            return failed(ex);
+        }
+        setDeleted(ids, deleted);
+        return CompletableFuture.completedFuture(ids.size());
+    }
+
+    /**
+     * Permanently removes every quote in a channel matching the provided text
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.QuoteRepository#purge(String, String)
+     */
+    public synchronized CompletableFuture<Integer> purge(String channel, String text) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for(Quote quote : findAll(channel, text)) {
+            ids.add(quote.getId());
+        }
+        try {
+            return CompletableFuture.completedFuture(remove(ids));
+        } catch (IOException ex) {
+            return failed(ex);
+        }
+    }
+
+    /**
+     * Permanently removes every quote which was shouted before the provided time and has since
+     * been deleted
+     * @param before the time (in milliseconds since the epoch) before which deleted quotes are removed
+     * @return the number of quotes which were removed
+     * @throws IOException if the removal cannot be recorded in the journal
+     */
+    public synchronized int purgeDeleted(long before) throws IOException {
+        List<Integer> ids = new ArrayList<Integer>();
+        for(Quote quote : quotesById.values()) {
+            if(quote.isDeleted() && quote.getDate().getTime() < before) ids.add(quote.getId());
+        }
+        return remove(ids);
+    }
+
+    /**
+     * Applies a change read back from the journal
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.MemoryRepository#replay(DataInputStream)
+     */
+    synchronized void replay(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        if(type == ADD) {
+            int id = in.readInt();
+            String nick = in.readUTF();
+            String channel = in.readUTF();
+            String text = in.readUTF();
+            String hash = in.readBoolean() ? in.readUTF() : null;
+            put(new Quote(id, nick, channel, text, in.readLong(), in.readBoolean()), hash);
+        } else if(type == SET_DELETED) {
+            boolean deleted = in.readBoolean();
+            setDeleted(readIds(in), deleted);
+        } else if(type == REMOVE) {
+            for(int id : readIds(in)) {
+                drop(id);
+            }
+        } else {
+            throw new IOException("Unknown quote record type " + type);
+        }
+    }
+
+    /**
+     * Returns the changes which rebuild the repository's current data from nothing
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.MemoryRepository#snapshot()
+     */
+    synchronized List<StorageJournal.Record> snapshot() {
+        List<StorageJournal.Record> records = new ArrayList<StorageJournal.Record>();
+        for(Quote quote : quotesById.values()) {
+            records.add(record(quote, hashes.get(quote.getId())));
+        }
+        return records;
+    }
+
+    /**
+     * Returns the quotes of a channel
+     * @param channel the name of the channel
+     * @return the quotes of the channel keyed by ID, which is empty if the channel has none
+     */
+    private TreeMap<Integer, Quote> getChannel(String channel) {
+        TreeMap<Integer, Quote> quotes = channels.get(key(channel));
+        return quotes != null ? quotes : new TreeMap<Integer, Quote>();
+    }
+
+    /**
+     * Returns the key a channel's quotes are held under
+     * @param channel the name of the channel
+     * @return the lowercased name of the channel
+     */
+    private static String key(String channel) {
+        return channel.toLowerCase();
+    }
+
+    /**
+     * Returns every quote (deleted or not) in a channel matching the provided text
+     * @param channel the name of the channel
+     * @param text the text of the quote
+     * @return the matching quotes
+     */
+    private List<Quote> findAll(String channel, String text) {
+        List<Quote> matches = new ArrayList<Quote>();
+        for(Quote quote : getChannel(channel).values()) {
+            if(quote.getText().equals(text)) matches.add(quote);
+        }
+        return matches;
+    }
+
+    /**
+     * Stores a quote
+     * @param quote the quote to store
+     * @param hash the hash of the quote's text, or null if it has none
+     */
+    private void put(Quote quote, String hash) {
+        TreeMap<Integer, Quote> quotes = channels.get(key(quote.getChannel()));
+        if(quotes == null) {
+            quotes = new TreeMap<Integer, Quote>();
+            channels.put(key(quote.getChannel()), quotes);
+        }
+        quotes.put(quote.getId(), quote);
+        quotesById.put(quote.getId(), quote);
+        if(hash != null) {
+            hashes.put(quote.getId(), hash);
+            hashIndex.put(key(quote.getChannel()) + " " + hash, quote.getId());
+        }
+        lastId = Math.max(lastId, quote.getId());
+    }
+
+    /**
+     * Marks quotes as deleted or undeleted
+     * @param ids the IDs of the quotes
+     * @param deleted true to delete the quotes, false to undelete them
+     */
+    private void setDeleted(List<Integer> ids, boolean deleted) {
+        for(int id : ids) {
+            Quote quote = quotesById.get(id);
+            if(quote == null) continue;
+            quote = new Quote(id, quote.getNick(), quote.getChannel(), quote.getText(), quote.getDate().getTime(), deleted);
+            quotesById.put(id, quote);
+            channels.get(key(quote.getChannel())).put(id, quote);
+        }
+    }
+
+    /**
+     * Records the removal of quotes in the journal, then removes them
+     * @param ids the IDs of the quotes
+     * @return the number of quotes which were removed
+     * @throws IOException if the removal cannot be recorded
+     */
+    private int remove(final List<Integer> ids) throws IOException {
+        if(ids.isEmpty()) return 0;
+        log(out -> {
+            out.writeByte(REMOVE);
+            writeIds(out, ids);
+        });
+        for(int id : ids) {
+            drop(id);
+        }
+        return ids.size();
+    }
+
+    /**
+     * Removes a quote
+     * @param id the ID of the quote
+     */
+    private void drop(int id) {
+        Quote quote = quotesById.remove(id);
+        if(quote == null) return;
+        String hash = hashes.remove(id);
+        if(hash != null) hashIndex.remove(key(quote.getChannel()) + " " + hash);
+        TreeMap<Integer, Quote> quotes = channels.get(key(quote.getChannel()));
+        quotes.remove(id);
+        if(quotes.isEmpty()) channels.remove(key(quote.getChannel()));
+    }
+
+    /**
+     * Returns the record which adds a quote
+     * @param quote the quote
+     * @param hash the hash of the quote's text, or null if it has none
+     * @return the record adding the quote
+     */
+    private static StorageJournal.Record record(final Quote quote, final String hash) {
+        return out -> {
+            out.writeByte(ADD);
+            out.writeInt(quote.getId());
+            out.writeUTF(quote.getNick());
+            out.writeUTF(quote.getChannel());
+            out.writeUTF(quote.getText());
+            out.writeBoolean(hash != null);
+            if(hash != null) out.writeUTF(hash);
+            out.writeLong(quote.getDate().getTime());
+            out.writeBoolean(quote.isDeleted());
+        };
+    }
+
+    /**
+     * Writes a list of quote IDs
+     * @param out the stream to write to
+     * @param ids the IDs to write
+     * @throws IOException if the IDs cannot be written
+     */
+    private static void writeIds(DataOutputStream out, List<Integer> ids) throws IOException {
+        out.writeInt(ids.size());
+        for(int id : ids) {
+            out.writeInt(id);
+        }
+    }
+
+    /**
+     * Reads a list of quote IDs
+     * @param in the stream to read from
+     * @return the IDs which were read
+     * @throws IOException if the IDs cannot be read
+     */
+    private static List<Integer> readIds(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<Integer> ids = new ArrayList<Integer>(count);
+        for(int i = 0; i < count; i++) {
+            ids.add(in.readInt());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The base of the repositories which hold their data in memory. Where a journal is provided,
+ * every change is appended to it before it is applied, so the data can be rebuilt by replaying
+ * the journal when the bot starts.
+ * 
+ * Calls complete before they return, on the caller's thread, so they never queue behind the
+ * database executor.
+ * 
+ * @author Ryan Morrison
+ */
+abstract class MemoryRepository {
+    /*
+     * Class variables.
+     */
+    private final StorageJournal journal;
+
+    /**
+     * Class constructor
+     * @param journal the journal to record changes in, or null to keep the data in memory only
+     */
+    protected MemoryRepository(StorageJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Records a change in the journal, if there is one
+     * @param record the change to record
+     * @throws IOException if the change cannot be recorded
+     */
+    protected void log(StorageJournal.Record record) throws IOException {
+        if(journal != null) journal.append(record);
+    }
+
+    /**
+     * Returns a future which has failed with the provided reason
+     * @param cause the reason the call failed
+     * @return the failed future
+     */
+    protected static <T> CompletableFuture<T> failed(Throwable cause) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+
+    /**
+     * Applies a change read back from the journal
+     * @param in the stream holding the change
+     * @throws IOException if the change cannot be read
+     */
+    abstract void replay(DataInputStream in) throws IOException;
+
+    /**
+     * Returns the changes which rebuild the repository's current data from nothing
+     * @return the changes describing the current data
+     */
+    abstract List<StorageJournal.Record> snapshot();
+}
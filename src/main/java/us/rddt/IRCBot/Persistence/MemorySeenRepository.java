@@ -0,0 +1,144 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Holds seen records in memory, keyed by channel and nick.
+ * 
+ * @author Ryan Morrison
+ */
+public class MemorySeenRepository extends MemoryRepository implements SeenRepository {
+    /*
+     * Class variables.
+     */
+    private final Map<String, SeenRecord> records = new HashMap<String, SeenRecord>();
+
+    /**
+     * Class constructor
+     * @param journal the journal to record changes in, or null to keep the records in memory only
+     */
+    public MemorySeenRepository(StorageJournal journal) {
+        super(journal);
+    }
+
+    /**
+     * Returns every stored record
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.SeenRepository#getAll()
+     */
+    public synchronized CompletableFuture<List<SeenRecord>> getAll() {
+        return CompletableFuture.completedFuture(new ArrayList<SeenRecord>(records.values()));
+    }
+
+    /**
+     * Returns the last time a nick was seen leaving a channel
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.SeenRepository#get(String, String)
+     */
+    public synchronized CompletableFuture<SeenRecord> get(String nick, String channel) {
+        return CompletableFuture.completedFuture(records.get(channel + " " + nick));
+    }
+
+    /**
+     * Stores a batch of records, replacing any existing records for the same nicks and channels
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.SeenRepository#saveAll(List)
+     */
+    public synchronized CompletableFuture<Void> saveAll(final List<SeenRecord> batch) {
+        try {
+            log(out -> write(out, batch));
+        } catch (IOException ex) {
+            return failed(ex);
+        }
+        for(SeenRecord record : batch) {
+            put(record);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Applies a change read back from the journal
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.MemoryRepository#replay(DataInputStream)
+     */
+    synchronized void replay(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        for(int i = 0; i < count; i++) {
+            put(new SeenRecord(in.readUTF(), in.readUTF(), in.readLong()));
+        }
+    }
+
+    /**
+     * Returns the changes which rebuild the repository's current data from nothing
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.MemoryRepository#snapshot()
+     */
+    synchronized List<StorageJournal.Record> snapshot() {
+        List<StorageJournal.Record> snapshot = new ArrayList<StorageJournal.Record>();
+        // Each record holds a few hundred entries, so no single record grows too large
+        List<SeenRecord> all = new ArrayList<SeenRecord>(records.values());
+        for(int i = 0; i < all.size(); i += 256) {
+            final List<SeenRecord> batch = all.subList(i, Math.min(i + 256, all.size()));
+            snapshot.add(out -> write(out, batch));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Stores a record, replacing any existing record for the same nick and channel
+     * @param record the record to store
+     */
+    private void put(SeenRecord record) {
+        records.put(record.getChannel() + " " + record.getNick(), record);
+    }
+
+    /**
+     * Writes a batch of records
+     * @param out the stream to write to
+     * @param batch the records to write
+     * @throws IOException if the records cannot be written
+     */
+    private static void write(DataOutputStream out, List<SeenRecord> batch) throws IOException {
+        out.writeInt(batch.size());
+        for(SeenRecord record : batch) {
+            out.writeUTF(record.getNick());
+            out.writeUTF(record.getChannel());
+            out.writeLong(record.getDate());
+        }
+    }
+}
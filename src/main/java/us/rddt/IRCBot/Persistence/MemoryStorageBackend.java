@@ -0,0 +1,149 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.IRCUtils;
+import us.rddt.IRCBot.Implementations.QuoteFilter;
+
+/**
+ * Holds the bot's data in memory only, so it is lost when the bot stops. Useful for testing
+ * and for measuring the rest of the bot without a database behind it.
+ * 
+ * @author Ryan Morrison
+ */
+public class MemoryStorageBackend implements StorageBackend {
+    /*
+     * Class variables.
+     */
+    protected final MemoryQuoteRepository quotes;
+    protected final MemorySeenRepository seen;
+    protected final MemoryGameStatusRepository gameStatuses;
+    protected final MemoryGameListRepository gameList;
+
+    /**
+     * Class constructor.
+     */
+    public MemoryStorageBackend() {
+        this(null, null, null, null);
+    }
+
+    /**
+     * Class constructor
+     * @param quoteJournal the journal to record quote changes in, or null
+     * @param seenJournal the journal to record seen changes in, or null
+     * @param gameStatusJournal the journal to record game status changes in, or null
+     * @param gameListJournal the journal to record game list changes in, or null
+     */
+    protected MemoryStorageBackend(StorageJournal quoteJournal, StorageJournal seenJournal, StorageJournal gameStatusJournal, StorageJournal gameListJournal) {
+        quotes = new MemoryQuoteRepository(quoteJournal);
+        seen = new MemorySeenRepository(seenJournal);
+        gameStatuses = new MemoryGameStatusRepository(gameStatusJournal);
+        gameList = new MemoryGameListRepository(gameListJournal);
+    }
+
+    /**
+     * Prepares the backend for use, before any repository is called
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.StorageBackend#open()
+     */
+    public void open() throws Exception {
+    }
+
+    /**
+     * Returns the repository of quotes
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.StorageBackend#getQuotes()
+     */
+    public QuoteRepository getQuotes() {
+        return quotes;
+    }
+
+    /**
+     * Returns the repository of seen records
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.StorageBackend#getSeen()
+     */
+    public SeenRepository getSeen() {
+        return seen;
+    }
+
+    /**
+     * Returns the repository of game statuses
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.StorageBackend#getGameStatuses()
+     */
+    public GameStatusRepository getGameStatuses() {
+        return gameStatuses;
+    }
+
+    /**
+     * Returns the repository of known games
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.StorageBackend#getGameList()
+     */
+    public GameListRepository getGameList() {
+        return gameList;
+    }
+
+    /**
+     * Returns a task which removes old and unnecessary data from the backend
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.StorageBackend#getCleaner()
+     */
+    public Runnable getCleaner() {
+        return () -> {
+            try {
+                // Clean out deleted quotes older than one week, as the database cleaner does
+                int removed = quotes.purgeDeleted(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(7));
+                Configuration.getLogger().write(Level.INFO, "Cleaned up " + removed + " deleted quotes.");
+                // Purged quotes may be shouted again, so the filters must forget them
+                if(removed > 0) QuoteFilter.invalidateAll();
+            } catch (Exception ex) {
+                Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+            }
+        };
+    }
+
+    /**
+     * Returns a summary of the backend's state for the database admin command
+     * (non-Javadoc)
+     * @see us.rddt.IRCBot.Persistence.StorageBackend#getStatistics()
+     */
+    public List<String> getStatistics() {
+        List<String> statistics = new ArrayList<String>();
+        statistics.add("Data is held in memory only and will be lost when the bot stops.");
+        return statistics;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.util.Date;
+
+/**
+ * A quote as it is stored, whether or not it has been deleted.
+ * 
+ * @author Ryan Morrison
+ */
+public class Quote {
+    /*
+     * Class variables.
+     */
+    private final int id;
+    private final String nick;
+    private final String channel;
+    private final String text;
+    private final long date;
+    private final boolean deleted;
+
+    /**
+     * Class constructor
+     * @param id the ID of the quote
+     * @param nick the nick which shouted the quote
+     * @param channel the channel the quote was shouted in
+     * @param text the text of the quote
+     * @param date the time the quote was shouted
+     * @param deleted whether the quote has been deleted
+     */
+    public Quote(int id, String nick, String channel, String text, long date, boolean deleted) {
+        this.id = id;
+        this.nick = nick;
+        this.channel = channel;
+        this.text = text;
+        this.date = date;
+        this.deleted = deleted;
+    }
+
+    /**
+     * Returns the ID of the quote
+     * @return the ID of the quote
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the nick which shouted the quote
+     * @return the nick which shouted the quote
+     */
+    public String getNick() {
+        return nick;
+    }
+
+    /**
+     * Returns the channel the quote was shouted in
+     * @return the channel the quote was shouted in
+     */
+    public String getChannel() {
+        return channel;
+    }
+
+    /**
+     * Returns the text of the quote
+     * @return the text of the quote
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns the time the quote was shouted
+     * @return the time the quote was shouted
+     */
+    public Date getDate() {
+        return new Date(date);
+    }
+
+    /**
+     * Returns whether the quote has been deleted
+     * @return true if the quote has been deleted, false if it is live
+     */
+    public boolean isDeleted() {
+        return deleted;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Stores the quotes shouted in each channel.
+ * 
+ * @author Ryan Morrison
+ */
+public interface QuoteRepository {
+    /**
+     * Returns the IDs of a channel's live quotes
+     * @param channel the name of the channel
+     * @return the IDs of the live quotes, in ascending order
+     */
+    CompletableFuture<List<Integer>> getLiveIds(String channel);
+
+    /**
+     * Returns a channel's live quotes
+     * @param channel the name of the channel
+     * @return the live quotes, in ascending order of ID
+     */
+    CompletableFuture<List<Quote>> getLive(String channel);
+
+    /**
+     * Returns the number of live quotes each nick has shouted in a channel
+     * @param channel the name of the channel
+     * @return the number of live quotes keyed by nick
+     */
+    CompletableFuture<Map<String, Integer>> getShoutCounts(String channel);
+
+    /**
+     * Returns the hashes of every quote (deleted or not) in a channel
+     * @param channel the name of the channel
+     * @return the hashes of the quotes
+     */
+    CompletableFuture<List<String>> getHashes(String channel);
+
+    /**
+     * Checks whether a channel has a quote (deleted or not) with the provided hash
+     * @param channel the name of the channel
+     * @param hash the hash of the quote's text
+     * @return true if the channel has a quote with the hash, false if it does not
+     */
+    CompletableFuture<Boolean> containsHash(String channel, String hash);
+
+    /**
+     * Returns a live quote
+     * @param channel the name of the channel
+     * @param id the ID of the quote
+     * @return the quote, or null if there is no live quote with the ID in the channel
+     */
+    CompletableFuture<Quote> get(String channel, int id);
+
+    /**
+     * Returns every quote (deleted or not) in a channel matching the provided text
+     * @param channel the name of the channel
+     * @param text the text of the quote
+     * @return the matching quotes
+     */
+    CompletableFuture<List<Quote>> find(String channel, String text);
+
+    /**
+     * Adds a quote, unless the channel already has a quote with the same hash
+     * @param channel the name of the channel
+     * @param nick the nick which shouted the quote
+     * @param text the text of the quote
+     * @param hash the hash of the quote's text
+     * @return the ID of the new quote, or -1 if the channel already had the quote
+     */
+    CompletableFuture<Integer> add(String channel, String nick, String text, String hash);
+
+    /**
+     * Marks every quote in a channel matching the provided text as deleted or undeleted
+     * @param channel the name of the channel
+     * @param text the text of the quote
+     * @param deleted true to delete the quotes, false to undelete them
+     * @return the number of quotes which were changed
+     */
+    CompletableFuture<Integer> setDeleted(String channel, String text, boolean deleted);
+
+    /**
+     * Permanently removes every quote in a channel matching the provided text
+     * @param channel the name of the channel
+     * @param text the text of the quote
+     * @return the number of quotes which were removed
+     */
+    CompletableFuture<Integer> purge(String channel, String text);
+}
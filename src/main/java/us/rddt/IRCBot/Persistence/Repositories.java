@@ -0,0 +1,143 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import us.rddt.IRCBot.Configuration;
+
+/**
+ * Provides the repositories the bot's data is stored in, from the storage backend chosen by
+ * the database_driver setting: mysql or sqlite for a database, file for journals on disk, or
+ * memory to keep nothing. Every repository method returns a future, so callers choose whether
+ * to compose the result or to wait for it.
+ * 
+ * @author Ryan Morrison
+ */
+public class Repositories {
+    /*
+     * Class variables.
+     */
+    // The backend is chosen once, the first time any repository is needed
+    private static final StorageBackend backend = createBackend();
+
+    /**
+     * Creates the storage backend named by the database_driver setting
+     * @return the storage backend
+     */
+    private static StorageBackend createBackend() {
+        String driver = Configuration.getDatabaseDriver();
+        if(driver.equalsIgnoreCase("memory")) {
+            return new MemoryStorageBackend();
+        } else if(driver.equalsIgnoreCase("file")) {
+            return new FileStorageBackend(new File(Configuration.getFileDatabase()));
+        }
+        return new JdbcStorageBackend();
+    }
+
+    /**
+     * Returns the storage backend the repositories belong to
+     * @return the storage backend
+     */
+    public static StorageBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Returns the repository of quotes
+     * @return the repository of quotes
+     */
+    public static QuoteRepository getQuotes() {
+        return backend.getQuotes();
+    }
+
+    /**
+     * Returns the repository of seen records
+     * @return the repository of seen records
+     */
+    public static SeenRepository getSeen() {
+        return backend.getSeen();
+    }
+
+    /**
+     * Returns the repository of game statuses
+     * @return the repository of game statuses
+     */
+    public static GameStatusRepository getGameStatuses() {
+        return backend.getGameStatuses();
+    }
+
+    /**
+     * Returns the repository of known games
+     * @return the repository of known games
+     */
+    public static GameListRepository getGameList() {
+        return backend.getGameList();
+    }
+
+    /**
+     * Waits for a repository call to complete. This must never be called from the database
+     * executor itself, which could then run out of threads waiting on its own queue. Gives up
+     * after database_timeout seconds; a write given up on may still be applied later.
+     * @param future the result of the repository call
+     * @return the result of the call
+     * @throws SQLException if the call failed or did not complete in time
+     */
+    public static <T> T await(CompletableFuture<T> future) throws SQLException {
+        try {
+            if(Configuration.getDatabaseTimeout() <= 0) return future.get();
+            return future.get(Configuration.getDatabaseTimeout(), TimeUnit.SECONDS);
+        } catch (TimeoutException ex) {
+            throw new SQLException("Timed out after " + Configuration.getDatabaseTimeout() + " seconds waiting for the database", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the database", ex);
+        } catch (ExecutionException ex) {
+            throw unwrap(ex.getCause());
+        }
+    }
+
+    /**
+     * Returns the SQLException behind a failed repository call
+     * @param cause the reason the call failed
+     * @return the SQLException which caused the failure, or one wrapping it
+     */
+    public static SQLException unwrap(Throwable cause) {
+        while(cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof SQLException ? (SQLException)cause : new SQLException(cause);
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.Database;
+import us.rddt.IRCBot.Implementations.QuoteFilter;
+
+/**
+ * Brings the database schema up to date when the bot starts. Each migration is a SQL
+ * script bundled with the bot under migrations/[driver]/, with a separate version of
+ * every script for each database driver. The SchemaVersion table records which
+ * migrations have been applied, so each one runs exactly once against a database.
+ * 
+ * To change the schema, add a new script for every driver and append its name to
+ * MIGRATIONS. Scripts which have been released must never be edited. A migration
+ * which needs to transform data as well may also run Java code after its script
+ * (see afterScript).
+ * 
+ * @author Ryan Morrison
+ */
+public class SchemaMigrator {
+    /*
+     * Class variables.
+     */
+    // Migrations in the order they are applied. The number before the underscore is the schema version.
+    private static final String[] MIGRATIONS = {
+        "1_create_tables",
+        "2_add_indexes",
+        "3_add_quote_hash",
+        "4_add_quote_hash_index"
+    };
+    private static final Pattern CREATE_INDEX = Pattern.compile("^CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+(\\w+)\\s+ON\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ADD_COLUMN = Pattern.compile("^ALTER\\s+TABLE\\s+(\\w+)\\s+ADD\\s+(?:COLUMN\\s+)?(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Applies every migration which has not been applied to the database yet
+     * @throws SQLException if a migration fails
+     * @throws IOException if a migration script cannot be read
+     * @throws ClassNotFoundException if the JDBC driver cannot be loaded
+     */
+    public static void migrate() throws SQLException, IOException, ClassNotFoundException {
+        Database database = new Database();
+        database.connect();
+        try {
+            database.getStatement().executeUpdate("CREATE TABLE IF NOT EXISTS SchemaVersion (Version INT PRIMARY KEY, Description VARCHAR(255) NOT NULL, Applied DATETIME NOT NULL)");
+            int current = getVersion(database);
+            for(String migration : MIGRATIONS) {
+                int version = Integer.parseInt(migration.substring(0, migration.indexOf('_')));
+                if(version <= current) continue;
+                Configuration.getLogger().write(Level.INFO, "Applying database migration " + migration);
+                apply(database, version, migration);
+            }
+            Configuration.getLogger().write(Level.INFO, "Database schema is at version " + getVersion(database));
+        } finally {
+            database.disconnect();
+        }
+    }
+
+    /**
+     * Returns the version of the latest migration applied to the database
+     * @param database the connected database
+     * @return the current schema version, or 0 if no migrations have been applied
+     * @throws SQLException if the version cannot be read
+     */
+    private static int getVersion(Database database) throws SQLException {
+        ResultSet resultSet = database.getStatement().executeQuery("SELECT MAX(Version) FROM SchemaVersion");
+        try {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        } finally {
+            resultSet.close();
+        }
+    }
+
+    /**
+     * Runs the statements in a migration script and records the migration as applied. Where
+     * the database supports it (SQLite), the whole migration runs in a single transaction.
+     * MySQL commits schema changes as they are made, so a migration which fails part way
+     * leaves its earlier changes behind; statements whose change is already in the schema are
+     * skipped, so the migration can simply be run again.
+     * @param database the connected database
+     * @param version the schema version the migration brings the database to
+     * @param migration the name of the migration
+     * @throws SQLException if a statement fails
+     * @throws IOException if the migration script cannot be read
+     */
+    private static void apply(Database database, int version, String migration) throws SQLException, IOException {
+        List<String> statements = readScript("/migrations/" + Configuration.getDatabaseDriver().toLowerCase() + "/" + migration + ".sql");
+        database.getConnection().setAutoCommit(false);
+        try {
+            Statement statement = database.getStatement();
+            for(String sql : statements) {
+                if(isApplied(database, sql)) {
+                    Configuration.getLogger().write(Level.INFO, "Skipping statement already applied to the schema: " + sql);
+                    continue;
+                }
+                statement.executeUpdate(sql);
+            }
+            afterScript(database, migration);
+            PreparedStatement record = database.prepareStatement("INSERT INTO SchemaVersion(Version, Description, Applied) VALUES (?, ?, ?)");
+            record.setInt(1, version);
+            record.setString(2, migration.substring(migration.indexOf('_') + 1).replace('_', ' '));
+            record.setTimestamp(3, new java.sql.Timestamp(System.currentTimeMillis()));
+            record.executeUpdate();
+            database.getConnection().commit();
+        } catch (SQLException ex) {
+            database.getConnection().rollback();
+            throw new SQLException("Database migration " + migration + " failed: " + ex.getMessage(), ex);
+        } finally {
+            database.getConnection().setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Checks whether the change made by a schema statement is already in the database
+     * @param database the connected database
+     * @param sql the statement
+     * @return true if the statement creates an index or adds a column which already exists, otherwise false
+     * @throws SQLException if the schema cannot be read
+     */
+    private static boolean isApplied(Database database, String sql) throws SQLException {
+        DatabaseMetaData metaData = database.getConnection().getMetaData();
+        Matcher index = CREATE_INDEX.matcher(sql);
+        if(index.find()) {
+            ResultSet resultSet = metaData.getIndexInfo(database.getConnection().getCatalog(), null, index.group(2), false, true);
+            try {
+                while(resultSet.next()) {
+                    if(index.group(1).equalsIgnoreCase(resultSet.getString("INDEX_NAME"))) return true;
+                }
+            } finally {
+                resultSet.close();
+            }
+        }
+        Matcher column = ADD_COLUMN.matcher(sql);
+        if(column.find()) {
+            ResultSet resultSet = metaData.getColumns(database.getConnection().getCatalog(), null, column.group(1), null);
+            try {
+                while(resultSet.next()) {
+                    if(column.group(2).equalsIgnoreCase(resultSet.getString("COLUMN_NAME"))) return true;
+                }
+            } finally {
+                resultSet.close();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the part of a migration which cannot be written in SQL common to every driver
+     * @param database the connected database
+     * @param migration the name of the migration
+     * @throws SQLException if a statement fails
+     */
+    private static void afterScript(Database database, String migration) throws SQLException {
+        if(migration.equals("3_add_quote_hash")) backfillQuoteHashes(database);
+    }
+
+    /**
+     * Fills in the hash of every existing quote. Where a channel already holds the same quote
+     * more than once, only the oldest copy is given a hash so the unique index can be created.
+     * @param database the connected database
+     * @throws SQLException if a statement fails
+     */
+    private static void backfillQuoteHashes(Database database) throws SQLException {
+        Set<String> hashed = new HashSet<String>();
+        int duplicates = 0;
+        ResultSet resultSet = database.prepareStatement("SELECT ID, Channel, Quote FROM Quotes ORDER BY ID").executeQuery();
+        PreparedStatement update = database.prepareStatement("UPDATE Quotes SET QuoteHash = ? WHERE ID = ?");
+        while(resultSet.next()) {
+            String hash = QuoteFilter.hash(resultSet.getString("Quote"));
+            if(!hashed.add(resultSet.getString("Channel").toLowerCase() + " " + hash)) {
+                duplicates++;
+                continue;
+            }
+            update.setString(1, hash);
+            update.setInt(2, resultSet.getInt("ID"));
+            update.addBatch();
+        }
+        resultSet.close();
+        update.executeBatch();
+        Configuration.getLogger().write(Level.INFO, "Hashed " + hashed.size() + " quotes (" + duplicates + " duplicates left without a hash)");
+    }
+
+    /**
+     * Reads a migration script and splits it into statements, dropping comments
+     * @param resource the path of the script on the classpath
+     * @return the statements in the script
+     * @throws IOException if the script cannot be read
+     */
+    private static List<String> readScript(String resource) throws IOException {
+        InputStream stream = SchemaMigrator.class.getResourceAsStream(resource);
+        if(stream == null) throw new IOException("Missing database migration " + resource);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+        List<String> statements = new ArrayList<String>();
+        StringBuilder builder = new StringBuilder();
+        boolean inComment = false;
+        try {
+            String line;
+            while((line = reader.readLine()) != null) {
+                line = line.trim();
+                // Scripts only use /* */ comments which start and end at line boundaries
+                if(inComment || line.startsWith("/*")) {
+                    inComment = !line.endsWith("*/");
+                    continue;
+                }
+                if(line.length() == 0 || line.startsWith("--")) continue;
+                builder.append(line).append(' ');
+                if(line.endsWith(";")) {
+                    statements.add(builder.substring(0, builder.lastIndexOf(";")));
+                    builder.setLength(0);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if(builder.toString().trim().length() > 0) statements.add(builder.toString().trim());
+        return statements;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+/**
+ * The last time a nick was seen leaving a channel.
+ * 
+ * @author Ryan Morrison
+ */
+public class SeenRecord {
+    /*
+     * Class variables.
+     */
+    private final String nick;
+    private final String channel;
+    private final long date;
+
+    /**
+     * Class constructor
+     * @param nick the nick of the user
+     * @param channel the channel the user left
+     * @param date the time the user was seen (in milliseconds since the epoch)
+     */
+    public SeenRecord(String nick, String channel, long date) {
+        this.nick = nick;
+        this.channel = channel;
+        this.date = date;
+    }
+
+    /**
+     * Returns the nick of the user
+     * @return the nick of the user
+     */
+    public String getNick() {
+        return nick;
+    }
+
+    /**
+     * Returns the channel the user left
+     * @return the channel the user left
+     */
+    public String getChannel() {
+        return channel;
+    }
+
+    /**
+     * Returns the time the user was seen
+     * @return the time the user was seen (in milliseconds since the epoch)
+     */
+    public long getDate() {
+        return date;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.util.List;
+
+/**
+ * A place the bot's data can be stored. A backend provides one repository for each kind of
+ * data, and is chosen by the database_driver setting when the bot starts.
+ * 
+ * @author Ryan Morrison
+ */
+public interface StorageBackend {
+    /**
+     * Prepares the backend for use, before any repository is called
+     * @throws Exception if the backend cannot be prepared
+     */
+    void open() throws Exception;
+
+    /**
+     * Returns the repository of quotes
+     * @return the repository of quotes
+     */
+    QuoteRepository getQuotes();
+
+    /**
+     * Returns the repository of seen records
+     * @return the repository of seen records
+     */
+    SeenRepository getSeen();
+
+    /**
+     * Returns the repository of game statuses
+     * @return the repository of game statuses
+     */
+    GameStatusRepository getGameStatuses();
+
+    /**
+     * Returns the repository of known games
+     * @return the repository of known games
+     */
+    GameListRepository getGameList();
+
+    /**
+     * Returns a task which removes old and unnecessary data from the backend
+     * @return the cleanup task
+     */
+    Runnable getCleaner();
+
+    /**
+     * Returns a summary of the backend's state for the database admin command
+     * @return the lines of the summary
+     */
+    List<String> getStatistics();
+}
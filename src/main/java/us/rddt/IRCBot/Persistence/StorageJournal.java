@@ -0,0 +1,239 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Persistence;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+import us.rddt.IRCBot.Configuration;
+
+/**
+ * An append-only file of records, which is replayed in order to rebuild whatever the records
+ * describe. Each record is framed with its length and a CRC32 of its contents, so a record
+ * torn by a crash part way through a write is detected on replay and cut off the end of the
+ * file rather than being read as garbage.
+ * 
+ * Records are handed to the operating system as they are appended, so they survive the bot
+ * crashing but not necessarily the machine losing power.
+ * 
+ * @author Ryan Morrison
+ */
+public class StorageJournal {
+    /*
+     * Class variables.
+     */
+    // No single record comes anywhere near this, so a larger length can only be a torn frame
+    private static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+
+    private final File file;
+    private FileOutputStream output = null;
+    private int records = 0;
+
+    /**
+     * Writes the contents of a record.
+     */
+    public interface Record {
+        /**
+         * Writes the contents of the record
+         * @param out the stream to write the record to
+         * @throws IOException if the record cannot be written
+         */
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Reads the contents of a record back when the journal is replayed.
+     */
+    public interface Reader {
+        /**
+         * Reads the contents of a record and applies it
+         * @param in the stream holding exactly the record's contents
+         * @throws IOException if the record cannot be read
+         */
+        void read(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * Class constructor
+     * @param file the file the journal is kept in
+     */
+    public StorageJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Replays every record in the journal and opens it for appending. A torn record at the end
+     * of the file, and anything after it, is cut off.
+     * @param reader the reader to hand each record to
+     * @throws IOException if the journal cannot be read or opened
+     */
+    public synchronized void open(Reader reader) throws IOException {
+        long valid = 0;
+        records = 0;
+        if(file.exists()) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                byte[] payload;
+                while((payload = readFrame(in)) != null) {
+                    reader.read(new DataInputStream(new ByteArrayInputStream(payload)));
+                    valid += 8 + payload.length;
+                    records++;
+                }
+            } finally {
+                in.close();
+            }
+            if(valid < file.length()) {
+                Configuration.getLogger().write(Level.WARNING, "Discarding " + (file.length() - valid) + " bytes of torn records from the end of " + file.getPath());
+                RandomAccessFile truncate = new RandomAccessFile(file, "rw");
+                try {
+                    truncate.setLength(valid);
+                } finally {
+                    truncate.close();
+                }
+            }
+        }
+        output = new FileOutputStream(file, true);
+    }
+
+    /**
+     * Appends a record to the journal
+     * @param record the record to append
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized void append(Record record) throws IOException {
+        if(output == null) throw new IOException("The journal " + file.getPath() + " has not been opened");
+        output.write(frame(record));
+        records++;
+    }
+
+    /**
+     * Replaces the journal with a shorter one holding only the provided records. The new journal
+     * is written beside the old one and renamed over it, so a crash part way through leaves the
+     * old journal in place.
+     * @param snapshot the records describing the current state
+     * @throws IOException if the new journal cannot be written
+     */
+    public synchronized void compact(List<Record> snapshot) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temporary);
+        try {
+            for(Record record : snapshot) {
+                out.write(frame(record));
+            }
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if(output != null) output.close();
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        output = new FileOutputStream(file, true);
+        records = snapshot.size();
+    }
+
+    /**
+     * Closes the journal
+     * @throws IOException if the journal cannot be closed
+     */
+    public synchronized void close() throws IOException {
+        if(output != null) {
+            output.close();
+            output = null;
+        }
+    }
+
+    /**
+     * Returns the number of records in the journal
+     * @return the number of records in the journal
+     */
+    public synchronized int getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns the file the journal is kept in
+     * @return the file the journal is kept in
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Frames a record with its length and checksum
+     * @param record the record to frame
+     * @return the framed record
+     * @throws IOException if the record cannot be written
+     */
+    private static byte[] frame(Record record) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        record.write(new DataOutputStream(payload));
+        CRC32 crc = new CRC32();
+        crc.update(payload.toByteArray());
+        ByteArrayOutputStream framed = new ByteArrayOutputStream(payload.size() + 8);
+        DataOutputStream out = new DataOutputStream(framed);
+        out.writeInt(payload.size());
+        out.writeInt((int)crc.getValue());
+        payload.writeTo(out);
+        return framed.toByteArray();
+    }
+
+    /**
+     * Reads the next framed record
+     * @param in the stream to read from
+     * @return the contents of the record, or null at the end of the journal or at a torn record
+     * @throws IOException if the journal cannot be read
+     */
+    private static byte[] readFrame(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if(length < 0 || length > MAX_RECORD_LENGTH) return null;
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            return (int)crc.getValue() == checksum ? payload : null;
+        } catch (EOFException ex) {
+            return null;
+        }
+    }
+}
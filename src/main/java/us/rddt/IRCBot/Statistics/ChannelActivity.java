@@ -0,0 +1,202 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Statistics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps rolling counts of a channel's activity over the last 24 hours, in a ring of one bucket
+ * per minute. Unlike the daily statistics these are never cleared, so they can answer how busy
+ * the channel has been over any recent window, for example to hold back responses while it is
+ * busy. A window of n minutes is read in O(n) and the ring never grows.
+ * 
+ * Distinct speakers are estimated with a sliding HyperLogLog sketch rather than by remembering
+ * every nick, so the memory used does not grow with the number of people in the channel.
+ * 
+ * @author Ryan Morrison
+ */
+public class ChannelActivity {
+    /*
+     * Class variables.
+     */
+    // One bucket per minute of the day
+    public static final int WINDOW_MINUTES = 1440;
+
+    // The minute each bucket currently counts, so buckets left over from an earlier day are ignored
+    private final long[] minutes = new long[WINDOW_MINUTES];
+    private final int[] lines = new int[WINDOW_MINUTES];
+    private final int[] shouts = new int[WINDOW_MINUTES];
+    private final int[] urls = new int[WINDOW_MINUTES];
+    // 256 registers, accurate to about 6.5% and a few KB in size
+    private final SlidingHyperLogLog speakers = new SlidingHyperLogLog(8, WINDOW_MINUTES);
+    private long currentMinute = -1;
+
+    /**
+     * Class constructor
+     */
+    public ChannelActivity() {
+        for(int i = 0; i < WINDOW_MINUTES; i++) {
+            minutes[i] = -1;
+        }
+    }
+
+    /**
+     * Records a line.
+     * @param nick the user who spoke in the channel
+     */
+    public synchronized void addLine(String nick) {
+        lines[record(nick)]++;
+    }
+
+    /**
+     * Records a shout.
+     * @param nick the user who shouted in the channel
+     */
+    public synchronized void addShout(String nick) {
+        shouts[record(nick)]++;
+    }
+
+    /**
+     * Records a URL.
+     * @param nick the user who entered a URL in the channel
+     */
+    public synchronized void addUrl(String nick) {
+        urls[record(nick)]++;
+    }
+
+    /**
+     * Returns the number of lines spoken over a recent window
+     * @param window the length of the window in minutes, up to 24 hours
+     * @return the number of lines spoken in the window
+     */
+    public synchronized int getLines(int window) {
+        return sum(lines, window);
+    }
+
+    /**
+     * Returns the number of shouts over a recent window
+     * @param window the length of the window in minutes, up to 24 hours
+     * @return the number of shouts in the window
+     */
+    public synchronized int getShouts(int window) {
+        return sum(shouts, window);
+    }
+
+    /**
+     * Returns the number of URLs entered over a recent window
+     * @param window the length of the window in minutes, up to 24 hours
+     * @return the number of URLs entered in the window
+     */
+    public synchronized int getUrls(int window) {
+        return sum(urls, window);
+    }
+
+    /**
+     * Returns the estimated number of distinct users who spoke over a recent window
+     * @param window the length of the window in minutes, up to 24 hours
+     * @return the estimated number of distinct users who spoke in the window
+     */
+    public synchronized long getSpeakers(int window) {
+        return speakers.estimate(TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis()) - clamp(window) + 1);
+    }
+
+    /**
+     * Returns the registers of a HyperLogLog sketch of the users who spoke over a recent window,
+     * for merging with other sketches of the same window
+     * @param window the length of the window in minutes, up to 24 hours
+     * @return the registers of the sketch of the users who spoke in the window
+     */
+    public synchronized byte[] getSpeakerRegisters(int window) {
+        return speakers.getRegisters(TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis()) - clamp(window) + 1);
+    }
+
+    /**
+     * Returns the average number of messages (lines, shouts and URLs) per minute over a recent window
+     * @param window the length of the window in minutes, up to 24 hours
+     * @return the average number of messages per minute in the window
+     */
+    public synchronized double getMessagesPerMinute(int window) {
+        window = clamp(window);
+        return (double)(sum(lines, window) + sum(shouts, window) + sum(urls, window)) / window;
+    }
+
+    /**
+     * Moves to the current minute and records that a user spoke in it
+     * @param nick the user who spoke
+     * @return the bucket of the current minute
+     */
+    private int record(String nick) {
+        long now = advance();
+        speakers.add(nick, now);
+        return (int)(now % WINDOW_MINUTES);
+    }
+
+    /**
+     * Clears the bucket of the current minute if it still holds an earlier day's counts
+     * @return the current minute
+     */
+    private long advance() {
+        long now = TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis());
+        if(now == currentMinute) return now;
+        currentMinute = now;
+        int bucket = (int)(now % WINDOW_MINUTES);
+        if(minutes[bucket] != now) {
+            minutes[bucket] = now;
+            lines[bucket] = 0;
+            shouts[bucket] = 0;
+            urls[bucket] = 0;
+        }
+        return now;
+    }
+
+    /**
+     * Sums a counter over a recent window
+     * @param counter the counter's buckets
+     * @param window the length of the window in minutes
+     * @return the sum of the counter over the window
+     */
+    private int sum(int[] counter, int window) {
+        long now = TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis());
+        int total = 0;
+        for(long minute = now - clamp(window) + 1; minute <= now; minute++) {
+            int bucket = (int)(minute % WINDOW_MINUTES);
+            if(minutes[bucket] == minute) total += counter[bucket];
+        }
+        return total;
+    }
+
+    /**
+     * Limits a window to between one minute and 24 hours
+     * @param window the length of the window in minutes
+     * @return the length of the window in minutes, within the limits
+     */
+    private static int clamp(int window) {
+        return Math.max(1, Math.min(window, WINDOW_MINUTES));
+    }
+}
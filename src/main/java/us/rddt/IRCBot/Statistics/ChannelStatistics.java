@@ -28,24 +28,39 @@
 
 package us.rddt.IRCBot.Statistics;
 
-import java.util.HashMap;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import us.rddt.IRCBot.Configuration;
 
 /**
  * Manages a variety of statistics for a given channel. These statistics can
  * be used to return information to any channel, or to be displayed via external
  * sources (e.g. webpages, Twitter).
  * 
+ * Counters may be updated from any thread. Each total is a LongAdder, which spreads concurrent
+ * increments over several cells rather than having every thread contend for one value. Only
+ * the statistics_top_k most frequent users of each counter are tracked, so the memory used does
+ * not grow with the number of users who pass through the channel, and the number of distinct
+ * users is estimated with a HyperLogLog sketch rather than by remembering them all.
+ * 
  * @author Ryan Morrison
  */
 public class ChannelStatistics {
-    private int totalLines;
-    private int totalShouts;
-    private int totalUrls;
+    private final LongAdder totalLines = new LongAdder();
+    private final LongAdder totalShouts = new LongAdder();
+    private final LongAdder totalUrls = new LongAdder();
     
-    private Map<String, Integer> linesMap = new HashMap<String, Integer>();
-    private Map<String, Integer> shoutsMap = new HashMap<String, Integer>();
-    private Map<String, Integer> urlsMap = new HashMap<String, Integer>();
+    private final HeavyHitters topLines = new HeavyHitters(Configuration.getStatisticsTopK());
+    private final HeavyHitters topShouts = new HeavyHitters(Configuration.getStatisticsTopK());
+    private final HeavyHitters topUrls = new HeavyHitters(Configuration.getStatisticsTopK());
+    // 1024 registers, accurate to about 3% and 1KB in size
+    private final HyperLogLog speakers = new HyperLogLog(10);
     
     /**
      * Class constructor
@@ -57,72 +72,91 @@ public class ChannelStatistics {
      * Returns the user with the most lines spoken in the channel.
      * @return the user with the most lines spoken in the channel
      */
-    public Map.Entry<String, Integer> getMostLines() {
-        Map.Entry<String, Integer> maximum = null;
-        
-        for(Map.Entry<String, Integer> entry : linesMap.entrySet()) {
-            if(maximum == null || entry.getValue() > maximum.getValue()) {
-                maximum = entry;
-            }
-        }
-        
-        return maximum;
+    public Map.Entry<String, Long> getMostLines() {
+        return getMaximum(topLines);
     }
     
     /**
      * Returns the user with the most shouts in the channel.
      * @return the user with the most shouts in the channel
      */
-    public Map.Entry<String, Integer> getMostShouts() {
-        Map.Entry<String, Integer> maximum = null;
-        
-        for(Map.Entry<String, Integer> entry : shoutsMap.entrySet()) {
-            if(maximum == null || entry.getValue() > maximum.getValue()) {
-                maximum = entry;
-            }
-        }
-        
-        return maximum;
+    public Map.Entry<String, Long> getMostShouts() {
+        return getMaximum(topShouts);
     }
     
     /**
      * Returns the user with the most URLs in the channel.
      * @return the user with the most URLs in the channel
      */
-    public Map.Entry<String, Integer> getMostUrls() {
-        Map.Entry<String, Integer> maximum = null;
-        
-        for(Map.Entry<String, Integer> entry : urlsMap.entrySet()) {
-            if(maximum == null || entry.getValue() > maximum.getValue()) {
-                maximum = entry;
-            }
-        }
-        
-        return maximum;
+    public Map.Entry<String, Long> getMostUrls() {
+        return getMaximum(topUrls);
+    }
+    
+    /**
+     * Returns the users with the most lines spoken in the channel.
+     * @param limit the most users to return
+     * @return the users with the most lines, most first
+     */
+    public List<HeavyHitters.Estimate> getTopLines(int limit) {
+        return topLines.getTop(limit);
+    }
+    
+    /**
+     * Returns the users with the most shouts in the channel.
+     * @param limit the most users to return
+     * @return the users with the most shouts, most first
+     */
+    public List<HeavyHitters.Estimate> getTopShouts(int limit) {
+        return topShouts.getTop(limit);
+    }
+    
+    /**
+     * Returns the users with the most URLs in the channel.
+     * @param limit the most users to return
+     * @return the users with the most URLs, most first
+     */
+    public List<HeavyHitters.Estimate> getTopUrls(int limit) {
+        return topUrls.getTop(limit);
+    }
+    
+    /**
+     * Returns the estimated number of distinct users who spoke, shouted or entered a URL in the channel.
+     * @return the estimated number of distinct users in the channel
+     */
+    public long getDistinctSpeakers() {
+        return speakers.estimate();
+    }
+    
+    /**
+     * Returns the sketch of the distinct users in the channel, for merging with other sketches.
+     * @return the sketch of the distinct users in the channel
+     */
+    public HyperLogLog getSpeakerSketch() {
+        return speakers;
     }
     
     /**
      * Returns the total number of lines spoken in the channel.
      * @return the total number of lines spoken in the channel
      */
-    public int getTotalLines() {
-        return totalLines;
+    public long getTotalLines() {
+        return totalLines.sum();
     }
     
     /**
      * Returns the total number of shouts in the channel.
      * @return the total number of shouts in the channel
      */
-    public int getTotalShouts() {
-        return totalShouts;
+    public long getTotalShouts() {
+        return totalShouts.sum();
     }
     
     /**
      * Returns the total number of URLs in the channel.
      * @return the total number of URLs in the channel
      */
-    public int getTotalUrls() {
-        return totalUrls;
+    public long getTotalUrls() {
+        return totalUrls.sum();
     }
     
     /**
@@ -130,12 +164,9 @@ public class ChannelStatistics {
      * @param username the user who spoke in the channel
      */
     public void addLine(String username) {
-        if(linesMap.containsKey(username)) {
-            linesMap.put(username, (int)linesMap.get(username) + 1);
-        } else {
-            linesMap.put(username, 1);
-        }
-        totalLines++;
+        topLines.add(username);
+        speakers.add(username);
+        totalLines.increment();
     }
     
     /**
@@ -143,12 +174,9 @@ public class ChannelStatistics {
      * @param username the user who shouted in the channel
      */
     public void addShout(String username) {
-        if(shoutsMap.containsKey(username)) {
-            shoutsMap.put(username, (int)shoutsMap.get(username) + 1);
-        } else {
-            shoutsMap.put(username, 1);
-        }
-        totalShouts++;
+        topShouts.add(username);
+        speakers.add(username);
+        totalShouts.increment();
     }
     
     /**
@@ -156,11 +184,52 @@ public class ChannelStatistics {
      * @param username the user who entered a URL in the channel
      */
     public void addUrl(String username) {
-        if(urlsMap.containsKey(username)) {
-            urlsMap.put(username, (int)urlsMap.get(username) + 1);
-        } else {
-            urlsMap.put(username, 1);
-        }
-        totalUrls++;
+        topUrls.add(username);
+        speakers.add(username);
+        totalUrls.increment();
+    }
+    
+    /**
+     * Writes the statistics to a snapshot.
+     * @param out the stream to write the statistics to
+     * @throws IOException if the statistics cannot be written
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(totalLines.sum());
+        out.writeLong(totalShouts.sum());
+        out.writeLong(totalUrls.sum());
+        topLines.writeTo(out);
+        topShouts.writeTo(out);
+        topUrls.writeTo(out);
+        byte[] registers = speakers.getRegisters();
+        out.writeInt(registers.length);
+        out.write(registers);
+    }
+    
+    /**
+     * Restores statistics written by writeTo.
+     * @param in the snapshot to read the statistics from
+     */
+    void readFrom(ByteBuffer in) {
+        totalLines.add(in.getLong());
+        totalShouts.add(in.getLong());
+        totalUrls.add(in.getLong());
+        topLines.readFrom(in);
+        topShouts.readFrom(in);
+        topUrls.readFrom(in);
+        byte[] registers = new byte[in.getInt()];
+        in.get(registers);
+        speakers.merge(HyperLogLog.fromRegisters(registers));
+    }
+    
+    /**
+     * Returns the user with the highest count
+     * @param counters the tracker of the counter
+     * @return the user with the highest count and their count, or null if nobody has been counted
+     */
+    private static Map.Entry<String, Long> getMaximum(HeavyHitters counters) {
+        List<HeavyHitters.Estimate> top = counters.getTop(1);
+        if(top.isEmpty()) return null;
+        return new AbstractMap.SimpleImmutableEntry<String, Long>(top.get(0).getKey(), top.get(0).getCount());
     }
 }
@@ -0,0 +1,368 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Statistics;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks the most frequent keys in a stream using the Space-Saving algorithm, in a fixed
+ * amount of memory however many distinct keys pass through. At most capacity keys are counted;
+ * when an untracked key arrives it takes over the counter of the least frequent key, inheriting
+ * its count as the possible error of the new key's count.
+ * 
+ * A reported count is never below the true count, and exceeds it by at most the reported
+ * error, which is itself at most the total number of keys added divided by the capacity. Any
+ * key occurring more often than that is guaranteed to be tracked.
+ * 
+ * Updates are spread over several independent summaries chosen by thread, so threads counting
+ * the same stream rarely wait on one another. The summaries are merged when the top keys are
+ * read, which takes time proportional to the capacity.
+ * 
+ * @author Ryan Morrison
+ */
+public class HeavyHitters {
+    /*
+     * Class variables.
+     */
+    // The number of independent summaries, which must be a power of two
+    private static final int STRIPES = 4;
+
+    private final Summary[] summaries = new Summary[STRIPES];
+
+    /**
+     * Class constructor
+     * @param capacity the number of keys to count in each summary
+     */
+    public HeavyHitters(int capacity) {
+        for(int i = 0; i < STRIPES; i++) {
+            summaries[i] = new Summary(Math.max(1, capacity));
+        }
+    }
+
+    /**
+     * Counts an occurrence of a key
+     * @param key the key which occurred
+     */
+    public void add(String key) {
+        summaries[(int)Thread.currentThread().getId() & (STRIPES - 1)].add(key);
+    }
+
+    /**
+     * Returns the most frequent keys
+     * @param limit the most keys to return
+     * @return the estimates of the most frequent keys, most frequent first
+     */
+    public List<Estimate> getTop(int limit) {
+        // A key missing from a full summary may still have occurred there as often as that
+        // summary's smallest count, so that much is added to both its count and its error
+        List<List<Estimate>> snapshots = new ArrayList<List<Estimate>>(STRIPES);
+        long[] floors = new long[STRIPES];
+        long missing = 0;
+        for(int i = 0; i < STRIPES; i++) {
+            synchronized(summaries[i]) {
+                snapshots.add(summaries[i].snapshot());
+                floors[i] = summaries[i].floor();
+            }
+            missing += floors[i];
+        }
+        Map<String, long[]> merged = new HashMap<String, long[]>();
+        for(int i = 0; i < STRIPES; i++) {
+            for(Estimate estimate : snapshots.get(i)) {
+                long[] totals = merged.get(estimate.getKey());
+                if(totals == null) {
+                    totals = new long[] { missing, missing };
+                    merged.put(estimate.getKey(), totals);
+                }
+                totals[0] += estimate.getCount() - floors[i];
+                totals[1] += estimate.getError() - floors[i];
+            }
+        }
+        List<Estimate> top = new ArrayList<Estimate>(merged.size());
+        for(Map.Entry<String, long[]> entry : merged.entrySet()) {
+            top.add(new Estimate(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+        }
+        Collections.sort(top, new Comparator<Estimate>() {
+            public int compare(Estimate a, Estimate b) {
+                return Long.compare(b.getCount(), a.getCount());
+            }
+        });
+        return top.size() > limit ? new ArrayList<Estimate>(top.subList(0, limit)) : top;
+    }
+
+    /**
+     * Writes every summary's counters to a snapshot. Each summary is locked only while its
+     * counters are copied, so counting carries on while the snapshot is written.
+     * @param out the stream to write the counters to
+     * @throws IOException if the counters cannot be written
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(STRIPES);
+        for(int i = 0; i < STRIPES; i++) {
+            List<Estimate> estimates = summaries[i].snapshot();
+            out.writeInt(estimates.size());
+            for(Estimate estimate : estimates) {
+                StatisticsSnapshot.writeString(out, estimate.getKey());
+                out.writeLong(estimate.getCount());
+                out.writeLong(estimate.getError());
+            }
+        }
+    }
+
+    /**
+     * Restores counters written by writeTo. If the snapshot has more summaries than this tracker
+     * they are folded together, and if it holds more keys than a summary can count the least
+     * frequent are dropped.
+     * @param in the snapshot to read the counters from
+     */
+    void readFrom(ByteBuffer in) {
+        int stripes = in.getInt();
+        for(int i = 0; i < stripes; i++) {
+            int count = in.getInt();
+            List<Estimate> estimates = new ArrayList<Estimate>(count);
+            for(int j = 0; j < count; j++) {
+                estimates.add(new Estimate(StatisticsSnapshot.readString(in), in.getLong(), in.getLong()));
+            }
+            summaries[i & (STRIPES - 1)].restore(estimates);
+        }
+    }
+
+    /**
+     * An estimate of how often a key occurred.
+     */
+    public static class Estimate {
+        private final String key;
+        private final long count;
+        private final long error;
+
+        /**
+         * Class constructor
+         * @param key the key
+         * @param count the number of times the key occurred, at most error more than the true count
+         * @param error the most the count may exceed the true count by
+         */
+        public Estimate(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        /**
+         * Returns the key
+         * @return the key
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the number of times the key occurred
+         * @return the number of times the key occurred, at most the error more than the true count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the most the count may exceed the true count by
+         * @return the most the count may exceed the true count by, which is 0 if the count is exact
+         */
+        public long getError() {
+            return error;
+        }
+    }
+
+    /**
+     * A single Space-Saving summary. The counters are kept in a binary min-heap ordered by count,
+     * so the least frequent key can be found and replaced in logarithmic time.
+     */
+    private static class Summary {
+        private final Map<String, Counter> counters = new HashMap<String, Counter>();
+        private final Counter[] heap;
+        private int size = 0;
+
+        /**
+         * Class constructor
+         * @param capacity the number of keys to count
+         */
+        Summary(int capacity) {
+            heap = new Counter[capacity];
+        }
+
+        /**
+         * Counts an occurrence of a key
+         * @param key the key which occurred
+         */
+        synchronized void add(String key) {
+            Counter counter = counters.get(key);
+            if(counter == null) {
+                if(size < heap.length) {
+                    counter = new Counter(key, size);
+                    heap[size++] = counter;
+                    counters.put(key, counter);
+                    siftUp(counter.index);
+                } else {
+                    // Take over the counter of the least frequent key
+                    counter = heap[0];
+                    counters.remove(counter.key);
+                    counter.key = key;
+                    counter.error = counter.count;
+                    counters.put(key, counter);
+                }
+            }
+            counter.count++;
+            siftDown(counter.index);
+        }
+
+        /**
+         * Returns the smallest count a key not in the summary may have reached
+         * @return the smallest tracked count if the summary is full, otherwise 0
+         */
+        synchronized long floor() {
+            return size == heap.length ? heap[0].count : 0;
+        }
+
+        /**
+         * Returns the counted keys
+         * @return an estimate for every counted key
+         */
+        synchronized List<Estimate> snapshot() {
+            List<Estimate> estimates = new ArrayList<Estimate>(size);
+            for(int i = 0; i < size; i++) {
+                estimates.add(new Estimate(heap[i].key, heap[i].count, heap[i].error));
+            }
+            return estimates;
+        }
+
+        /**
+         * Adds restored counters to the summary, keeping the most frequent keys if there are
+         * more than the summary can count
+         * @param estimates the restored counters
+         */
+        synchronized void restore(List<Estimate> estimates) {
+            Map<String, Estimate> merged = new HashMap<String, Estimate>();
+            for(Estimate estimate : snapshot()) {
+                merged.put(estimate.getKey(), estimate);
+            }
+            for(Estimate estimate : estimates) {
+                Estimate existing = merged.get(estimate.getKey());
+                if(existing != null) {
+                    estimate = new Estimate(estimate.getKey(), existing.getCount() + estimate.getCount(), existing.getError() + estimate.getError());
+                }
+                merged.put(estimate.getKey(), estimate);
+            }
+            List<Estimate> sorted = new ArrayList<Estimate>(merged.values());
+            Collections.sort(sorted, new Comparator<Estimate>() {
+                public int compare(Estimate a, Estimate b) {
+                    return Long.compare(b.getCount(), a.getCount());
+                }
+            });
+            counters.clear();
+            size = 0;
+            for(Estimate estimate : sorted) {
+                if(size == heap.length) break;
+                Counter counter = new Counter(estimate.getKey(), size);
+                counter.count = estimate.getCount();
+                counter.error = estimate.getError();
+                heap[size++] = counter;
+                counters.put(counter.key, counter);
+                siftUp(counter.index);
+            }
+        }
+
+        /**
+         * Moves a counter towards the root of the heap until its parent's count is no larger
+         * @param index the position of the counter
+         */
+        private void siftUp(int index) {
+            while(index > 0) {
+                int parent = (index - 1) >>> 1;
+                if(heap[parent].count <= heap[index].count) return;
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        /**
+         * Moves a counter away from the root of the heap until neither child has a smaller count
+         * @param index the position of the counter
+         */
+        private void siftDown(int index) {
+            while(true) {
+                int smallest = index;
+                int left = index * 2 + 1;
+                if(left < size && heap[left].count < heap[smallest].count) smallest = left;
+                if(left + 1 < size && heap[left + 1].count < heap[smallest].count) smallest = left + 1;
+                if(smallest == index) return;
+                swap(index, smallest);
+                index = smallest;
+            }
+        }
+
+        /**
+         * Swaps two counters in the heap
+         * @param a the position of the first counter
+         * @param b the position of the second counter
+         */
+        private void swap(int a, int b) {
+            Counter counter = heap[a];
+            heap[a] = heap[b];
+            heap[b] = counter;
+            heap[a].index = a;
+            heap[b].index = b;
+        }
+    }
+
+    /**
+     * The count of a key and its position in the heap.
+     */
+    private static class Counter {
+        private String key;
+        private long count = 0;
+        private long error = 0;
+        private int index;
+
+        /**
+         * Class constructor
+         * @param key the key being counted
+         * @param index the position of the counter in the heap
+         */
+        Counter(String key, int index) {
+            this.key = key;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Statistics;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the number of distinct values added to it using the HyperLogLog algorithm, in a
+ * fixed 2^precision bytes however many values pass through. Each value is hashed to 64 bits;
+ * the first precision bits pick a register, which keeps the longest run of leading zeros seen
+ * in the remaining bits. The standard error of the estimate is about 1.04 / sqrt(2^precision),
+ * so a precision of 10 (1KB) is accurate to about 3%.
+ * 
+ * Sketches of the same precision can be merged, by keeping the larger of each pair of registers,
+ * to count the distinct values added to either, for example across days or bot instances.
+ * 
+ * Values may be added from any thread. Registers are read without a lock and only locked when
+ * they are raised, which stops happening once most registers have filled.
+ * 
+ * @author Ryan Morrison
+ */
+public class HyperLogLog {
+    /*
+     * Class variables.
+     */
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * Class constructor
+     * @param precision the number of bits of each hash used to pick a register, from 4 to 16
+     */
+    public HyperLogLog(int precision) {
+        if(precision < 4 || precision > 16) throw new IllegalArgumentException("HyperLogLog precision must be between 4 and 16");
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Adds a value
+     * @param value the value to add
+     */
+    public void add(String value) {
+        long hash = hash(value);
+        int register = register(hash, precision);
+        byte rank = rank(hash, precision);
+        if(registers[register] >= rank) return;
+        synchronized(this) {
+            if(registers[register] < rank) registers[register] = rank;
+        }
+    }
+
+    /**
+     * Adds every value added to another sketch to this one
+     * @param other the sketch to merge into this one, which must have the same precision
+     */
+    public synchronized void merge(HyperLogLog other) {
+        if(other.precision != precision) throw new IllegalArgumentException("Cannot merge HyperLogLog sketches of different precisions");
+        byte[] merging = other.getRegisters();
+        for(int i = 0; i < registers.length; i++) {
+            if(merging[i] > registers[i]) registers[i] = merging[i];
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct values added
+     * @return the estimated number of distinct values added
+     */
+    public long estimate() {
+        return estimate(getRegisters());
+    }
+
+    /**
+     * Returns the number of bits of each hash used to pick a register
+     * @return the precision of the sketch
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Returns a copy of the sketch's registers, for storing or sending the sketch elsewhere
+     * @return a copy of the registers
+     */
+    public synchronized byte[] getRegisters() {
+        return Arrays.copyOf(registers, registers.length);
+    }
+
+    /**
+     * Creates a sketch from registers copied from another sketch
+     * @param registers the registers, whose length must be a power of two
+     * @return the sketch holding the registers
+     */
+    public static HyperLogLog fromRegisters(byte[] registers) {
+        HyperLogLog sketch = new HyperLogLog(Integer.numberOfTrailingZeros(registers.length));
+        if(sketch.registers.length != registers.length) throw new IllegalArgumentException("HyperLogLog register count must be a power of two");
+        System.arraycopy(registers, 0, sketch.registers, 0, registers.length);
+        return sketch;
+    }
+
+    /**
+     * Hashes a value to 64 bits, using FNV-1a over its characters followed by the MurmurHash3
+     * finalizer so every bit of the result depends on every character
+     * @param value the value to hash
+     * @return the hash of the value
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Returns the register a hash belongs to
+     * @param hash the hash of a value
+     * @param precision the number of bits used to pick a register
+     * @return the index of the register
+     */
+    static int register(long hash, int precision) {
+        return (int)(hash >>> (64 - precision));
+    }
+
+    /**
+     * Returns the position of the first set bit after the register bits of a hash
+     * @param hash the hash of a value
+     * @param precision the number of bits used to pick a register
+     * @return the rank of the hash, from 1 to 65 - precision
+     */
+    static byte rank(long hash, int precision) {
+        // The guard bit caps the rank when every remaining bit is zero
+        return (byte)(Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+    }
+
+    /**
+     * Estimates the number of distinct values from a set of registers, falling back to linear
+     * counting for small cardinalities where HyperLogLog is biased
+     * @param registers the registers
+     * @return the estimated number of distinct values
+     */
+    static long estimate(byte[] registers) {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for(byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if(register == 0) zeros++;
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if(estimate <= 2.5 * m && zeros > 0) estimate = m * Math.log((double)m / zeros);
+        return Math.round(estimate);
+    }
+}
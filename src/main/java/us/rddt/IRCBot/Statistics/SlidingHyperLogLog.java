@@ -0,0 +1,162 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Statistics;
+
+import java.util.Arrays;
+
+/**
+ * A HyperLogLog sketch which can estimate the distinct values added over any recent window,
+ * rather than only since it was created. Instead of a single rank, each register keeps the
+ * times and ranks of the hashes which could still be the highest in some window: a hash is
+ * dropped once a later hash of at least the same rank arrives, so each register's entries
+ * run from oldest to newest with strictly falling ranks, and only a handful are ever kept.
+ * Entries older than the horizon are dropped as well.
+ * 
+ * A window is read by taking, for each register, the rank of its oldest entry inside the window,
+ * and estimating from those registers as an ordinary HyperLogLog would.
+ * 
+ * This class is not thread-safe; callers must synchronize access to it.
+ * 
+ * @author Ryan Morrison
+ */
+public class SlidingHyperLogLog {
+    /*
+     * Class variables.
+     */
+    private final int precision;
+    private final long horizon;
+    // The entries of each register, packed as time * 128 + rank
+    private final long[][] entries;
+    private final int[] sizes;
+
+    /**
+     * Class constructor
+     * @param precision the number of bits of each hash used to pick a register, from 4 to 16
+     * @param horizon the longest window which will be read, in the same units as the times added
+     */
+    public SlidingHyperLogLog(int precision, long horizon) {
+        if(precision < 4 || precision > 16) throw new IllegalArgumentException("HyperLogLog precision must be between 4 and 16");
+        this.precision = precision;
+        this.horizon = horizon;
+        this.entries = new long[1 << precision][];
+        this.sizes = new int[1 << precision];
+    }
+
+    /**
+     * Adds a value
+     * @param value the value to add
+     * @param time the time the value was added, which must not be earlier than any time already added
+     */
+    public void add(String value, long time) {
+        long hash = HyperLogLog.hash(value);
+        add(HyperLogLog.register(hash, precision), HyperLogLog.rank(hash, precision), time);
+    }
+
+    /**
+     * Returns the estimated number of distinct values added since a time
+     * @param since the earliest time to count values from
+     * @return the estimated number of distinct values added since the time
+     */
+    public long estimate(long since) {
+        return HyperLogLog.estimate(getRegisters(since));
+    }
+
+    /**
+     * Returns the registers of an ordinary sketch of the values added since a time, for merging
+     * with other sketches of the same precision
+     * @param since the earliest time to count values from
+     * @return the registers of the values added since the time
+     */
+    public byte[] getRegisters(long since) {
+        byte[] registers = new byte[entries.length];
+        for(int i = 0; i < entries.length; i++) {
+            // Ranks fall from the oldest entry to the newest, so the first one in the window is the highest
+            for(int j = 0; j < sizes[i]; j++) {
+                if(entries[i][j] >> 7 >= since) {
+                    registers[i] = (byte)(entries[i][j] & 127);
+                    break;
+                }
+            }
+        }
+        return registers;
+    }
+
+    /**
+     * Adds every value added to another sliding sketch to this one
+     * @param other the sketch to merge into this one, which must have the same precision
+     */
+    public void merge(SlidingHyperLogLog other) {
+        if(other.precision != precision) throw new IllegalArgumentException("Cannot merge HyperLogLog sketches of different precisions");
+        for(int i = 0; i < entries.length; i++) {
+            if(other.sizes[i] == 0) continue;
+            // Interleave both registers' entries by time, then let add() drop the ones which are overtaken
+            long[] mine = sizes[i] > 0 ? Arrays.copyOf(entries[i], sizes[i]) : new long[0];
+            long[] theirs = Arrays.copyOf(other.entries[i], other.sizes[i]);
+            sizes[i] = 0;
+            int a = 0;
+            int b = 0;
+            while(a < mine.length || b < theirs.length) {
+                long entry = b >= theirs.length || (a < mine.length && mine[a] >> 7 <= theirs[b] >> 7) ? mine[a++] : theirs[b++];
+                add(i, (byte)(entry & 127), entry >> 7);
+            }
+        }
+    }
+
+    /**
+     * Records a hash's rank in a register
+     * @param register the index of the register
+     * @param rank the rank of the hash
+     * @param time the time the hash was added
+     */
+    private void add(int register, byte rank, long time) {
+        long[] list = entries[register];
+        int size = sizes[register];
+        // Later entries of no greater rank can never again be the highest in any window
+        while(size > 0 && (list[size - 1] & 127) <= rank) {
+            size--;
+        }
+        // Neither can entries which have fallen past the horizon
+        int expired = 0;
+        while(expired < size && list[expired] >> 7 < time - horizon) {
+            expired++;
+        }
+        if(expired > 0) {
+            System.arraycopy(list, expired, list, 0, size - expired);
+            size -= expired;
+        }
+        if(list == null) {
+            list = new long[2];
+        } else if(size == list.length) {
+            list = Arrays.copyOf(list, size * 2);
+        }
+        list[size++] = time << 7 | rank;
+        entries[register] = list;
+        sizes[register] = size;
+    }
+}
@@ -28,22 +28,31 @@
 
 package us.rddt.IRCBot.Statistics;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.pircbotx.Channel;
 
 /**
- * Manages statistics for the various channels the bot is participating in.
+ * Manages statistics for the various channels the bot is participating in. Channels are
+ * registered atomically the first time they are counted, so two threads counting a new channel
+ * at once share the same statistics. Daily statistics are cleared once they have been posted,
+ * while each channel's rolling activity is kept for as long as the bot runs.
+ * 
+ * Statistics are kept by channel name rather than by channel, so they can be restored from a
+ * snapshot before the bot has joined any channels.
  * 
  * @author Ryan Morrison
  */
 public class Statistics {
-    private static volatile Map<Channel, ChannelStatistics> statisticsMap = Collections.synchronizedMap(new HashMap<Channel, ChannelStatistics>());
-    private static volatile List<Channel> disabledChannels = Collections.synchronizedList(new ArrayList<Channel>());
+    private static volatile ConcurrentHashMap<String, ChannelStatistics> statisticsMap = new ConcurrentHashMap<String, ChannelStatistics>();
+    // The day the current statistics were started, as a count of days since the epoch
+    private static volatile long statisticsDay = LocalDate.now().toEpochDay();
+    private static final ConcurrentHashMap<String, ChannelActivity> activityMap = new ConcurrentHashMap<String, ChannelActivity>();
+    private static final Set<String> disabledChannels = ConcurrentHashMap.newKeySet();
     
     /**
      * Adds a channel to not appear in statistics.
@@ -51,49 +60,71 @@ public class Statistics {
      * @return true if the channel was added, false if it already exists in the list
      */
     public static boolean addDisabledChannel(Channel channel) {
-        if(!disabledChannels.contains(channel)) {
-            disabledChannels.add(channel);
-            return true;
-        } else {
-            return false;
-        }
+        return disabledChannels.add(channel.getName());
     }
     
     /**
      * Checks if a channel is disabled from appearing in statistics.
-     * @param channel the channel to check
+     * @param channel the name of the channel to check
      * @return true if the channel is disabled, false if it is not
      */
-    public static boolean checkDisabledChannel(Channel channel) {
+    public static boolean checkDisabledChannel(String channel) {
         return disabledChannels.contains(channel);
     }
     
     /**
-     * Creates a new HashMap to clear the current statistics
+     * Creates a new map to clear the current statistics
      */
     public static void clearStatistics() {
-        statisticsMap = Collections.synchronizedMap(new HashMap<Channel, ChannelStatistics>());
+        statisticsMap = new ConcurrentHashMap<String, ChannelStatistics>();
+        statisticsDay = LocalDate.now().toEpochDay();
     }
     
     /**
      * Returns the entire map of statistics.
-     * @return the entire map of statistics
+     * @return the entire map of statistics, keyed by channel name
      */
-    public static Map<Channel, ChannelStatistics> getAllStatistics() {
+    public static Map<String, ChannelStatistics> getAllStatistics() {
         return statisticsMap;
     }
     
+    /**
+     * Returns the day the current statistics were started.
+     * @return the day the current statistics were started, as a count of days since the epoch
+     */
+    public static long getStatisticsDay() {
+        return statisticsDay;
+    }
+    
     /**
      * Returns the channel statistics of a provided channel.
      * @param channel the channel to receive statistics for
      * @return the statistics of the provided channel
      */
     public static ChannelStatistics getChannelStatistics(Channel channel) {
-        if(!statisticsMap.containsKey(channel)) {
-            statisticsMap.put(channel, new ChannelStatistics());
-        }
-        
-        return statisticsMap.get(channel);
+        ConcurrentHashMap<String, ChannelStatistics> statistics = statisticsMap;
+        ChannelStatistics channelStatistics = statistics.get(channel.getName());
+        if(channelStatistics != null) return channelStatistics;
+        return statistics.computeIfAbsent(channel.getName(), key -> new ChannelStatistics());
+    }
+    
+    /**
+     * Returns the rolling activity of a provided channel.
+     * @param channel the channel to receive the activity of
+     * @return the rolling activity of the provided channel
+     */
+    public static ChannelActivity getChannelActivity(Channel channel) {
+        ChannelActivity activity = activityMap.get(channel.getName());
+        if(activity != null) return activity;
+        return activityMap.computeIfAbsent(channel.getName(), key -> new ChannelActivity());
+    }
+    
+    /**
+     * Returns the channels disabled from appearing in statistics.
+     * @return the names of the disabled channels
+     */
+    public static Collection<String> getDisabledChannels() {
+        return disabledChannels;
     }
     
     /**
@@ -102,11 +133,17 @@ public class Statistics {
      * @return true if the channel was removed, false if it did not exist
      */
     public static boolean removeDisabledChannel(Channel channel) {
-        if(disabledChannels.contains(channel)) {
-            disabledChannels.remove(channel);
-            return true;
-        } else {
-            return false;
-        }
+        return disabledChannels.remove(channel.getName());
+    }
+    
+    /**
+     * Replaces the current statistics with ones restored from a snapshot. This must be called
+     * before any statistics are counted.
+     * @param statistics the restored statistics, keyed by channel name
+     * @param disabled the names of the channels disabled from appearing in statistics
+     */
+    static void restore(Map<String, ChannelStatistics> statistics, Collection<String> disabled) {
+        statisticsMap = new ConcurrentHashMap<String, ChannelStatistics>(statistics);
+        disabledChannels.addAll(disabled);
     }
 }
@@ -0,0 +1,249 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Statistics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+import us.rddt.IRCBot.Configuration;
+import us.rddt.IRCBot.IRCUtils;
+import us.rddt.IRCBot.Dispatch.EventDispatcher;
+
+/**
+ * Saves the day's channel statistics to disk so they survive the bot being restarted or
+ * crashing. Every statistics_snapshot_interval seconds the statistics are written to a
+ * compact binary snapshot, which replaces the previous one atomically, so a crash part way
+ * through a write leaves the last complete snapshot in place. The snapshot is restored on
+ * startup before the bot connects, provided it was taken on the same day.
+ * 
+ * Taking a snapshot costs time proportional to the number of channels and statistics_top_k,
+ * not to the number of messages counted. Counters are copied one summary at a time under that
+ * summary's own lock, so messages keep being counted while the snapshot is written, and a
+ * snapshot is skipped entirely if nothing has been counted since the last one.
+ * 
+ * @author Ryan Morrison
+ */
+public class StatisticsSnapshot implements Runnable {
+    /*
+     * Class variables.
+     */
+    // "IRCS"
+    private static final int MAGIC = 0x49524353;
+    private static final int VERSION = 1;
+
+    private static long lastFingerprint = 0;
+
+    /**
+     * Schedules the next snapshot, unless snapshots are disabled
+     */
+    public static void schedule() {
+        if(Configuration.getStatisticsSnapshotInterval() > 0) {
+            EventDispatcher.schedule(StatisticsSnapshot.class.getSimpleName(), new StatisticsSnapshot(), Configuration.getStatisticsSnapshotInterval(), TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Writes the current statistics to the snapshot file, replacing the previous snapshot
+     */
+    public static synchronized void write() {
+        if(Configuration.getStatisticsSnapshotInterval() <= 0) return;
+        long fingerprint = getFingerprint();
+        if(fingerprint == lastFingerprint) return;
+        try {
+            long start = System.currentTimeMillis();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(Statistics.getStatisticsDay());
+            out.writeLong(start);
+            List<String> disabled = new ArrayList<String>(Statistics.getDisabledChannels());
+            out.writeInt(disabled.size());
+            for(String channel : disabled) {
+                writeString(out, channel);
+            }
+            List<Map.Entry<String, ChannelStatistics>> channels = new ArrayList<Map.Entry<String, ChannelStatistics>>(Statistics.getAllStatistics().entrySet());
+            out.writeInt(channels.size());
+            for(Map.Entry<String, ChannelStatistics> channel : channels) {
+                writeString(out, channel.getKey());
+                channel.getValue().writeTo(out);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int)crc.getValue());
+            out.flush();
+
+            File file = new File(Configuration.getStatisticsSnapshotFile());
+            File temporary = new File(file.getPath() + ".tmp");
+            FileOutputStream output = new FileOutputStream(temporary);
+            try {
+                bytes.writeTo(output);
+                output.getFD().sync();
+            } finally {
+                output.close();
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lastFingerprint = fingerprint;
+            Configuration.getLogger().write(Level.FINE, "Wrote statistics snapshot of " + channels.size() + " channels (" + bytes.size() + " bytes) in " + (System.currentTimeMillis() - start) + "ms.");
+        } catch (Exception ex) {
+            Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+        }
+    }
+
+    /**
+     * Restores the statistics from the snapshot file. Must be called before any statistics are
+     * counted. Channels disabled from statistics are always restored, while the counts are only
+     * restored if the snapshot was taken today.
+     */
+    public static synchronized void restore() {
+        if(Configuration.getStatisticsSnapshotInterval() <= 0) return;
+        File file = new File(Configuration.getStatisticsSnapshotFile());
+        if(!file.exists()) return;
+        try {
+            long start = System.currentTimeMillis();
+            MappedByteBuffer buffer;
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                // The mapping stays valid once the channel is closed
+                channel.close();
+            }
+            if(buffer.limit() < 12 || buffer.getInt(0) != MAGIC) {
+                Configuration.getLogger().write(Level.WARNING, "Ignoring statistics snapshot " + file + ", which is not a statistics snapshot.");
+                return;
+            }
+            ByteBuffer contents = buffer.duplicate();
+            contents.limit(buffer.limit() - 4);
+            CRC32 crc = new CRC32();
+            crc.update(contents);
+            if((int)crc.getValue() != buffer.getInt(buffer.limit() - 4)) {
+                Configuration.getLogger().write(Level.WARNING, "Ignoring statistics snapshot " + file + ", which is corrupt.");
+                return;
+            }
+            buffer.position(4);
+            int version = buffer.getInt();
+            if(version != VERSION) {
+                Configuration.getLogger().write(Level.WARNING, "Ignoring statistics snapshot " + file + ", which was written by an unsupported version (" + version + ").");
+                return;
+            }
+            long day = buffer.getLong();
+            buffer.getLong();
+            int disabledCount = buffer.getInt();
+            List<String> disabled = new ArrayList<String>(disabledCount);
+            for(int i = 0; i < disabledCount; i++) {
+                disabled.add(readString(buffer));
+            }
+            Map<String, ChannelStatistics> statistics = new HashMap<String, ChannelStatistics>();
+            if(day == LocalDate.now().toEpochDay()) {
+                int channels = buffer.getInt();
+                for(int i = 0; i < channels; i++) {
+                    String name = readString(buffer);
+                    ChannelStatistics channelStatistics = new ChannelStatistics();
+                    channelStatistics.readFrom(buffer);
+                    statistics.put(name, channelStatistics);
+                }
+            }
+            Statistics.restore(statistics, disabled);
+            lastFingerprint = getFingerprint();
+            Configuration.getLogger().write(Level.INFO, "Restored statistics for " + statistics.size() + " channels from " + file + " in " + (System.currentTimeMillis() - start) + "ms.");
+        } catch (Exception ex) {
+            Configuration.getLogger().write(Level.WARNING, IRCUtils.getStackTraceString(ex));
+        }
+    }
+
+    /**
+     * Writes a string as its length followed by its UTF-8 bytes
+     * @param out the stream to write the string to
+     * @param value the string to write
+     * @throws IOException if the string cannot be written
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by writeString
+     * @param in the buffer to read the string from
+     * @return the string
+     */
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xffff];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a value which changes whenever anything is counted, the day's statistics are
+     * cleared or channels are disabled or enabled
+     * @return the fingerprint of the current statistics
+     */
+    private static long getFingerprint() {
+        Map<String, ChannelStatistics> statistics = Statistics.getAllStatistics();
+        long fingerprint = System.identityHashCode(statistics) * 31L + Statistics.getStatisticsDay();
+        fingerprint = fingerprint * 31 + Statistics.getDisabledChannels().hashCode();
+        for(ChannelStatistics channel : statistics.values()) {
+            fingerprint = fingerprint * 31 + channel.getTotalLines() + channel.getTotalShouts() * 7 + channel.getTotalUrls() * 13;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Method that executes upon thread start
+     * (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    public void run() {
+        try {
+            write();
+        } finally {
+            schedule();
+        }
+    }
+}
@@ -33,8 +33,6 @@ import java.util.TimerTask;
 import java.util.Map.Entry;
 import java.util.logging.Level;
 
-import org.pircbotx.Channel;
-
 import twitter4j.Twitter;
 import twitter4j.TwitterException;
 import twitter4j.TwitterFactory;
@@ -76,21 +74,21 @@ public class StatisticsTask extends TimerTask {
         twitter.setOAuthAccessToken(new AccessToken(Configuration.getTwitterAccessToken(), Configuration.getTwitterAccessSecret()));
 
         try {
-            for(Entry<Channel, ChannelStatistics> cs : Statistics.getAllStatistics().entrySet()) {
+            for(Entry<String, ChannelStatistics> cs : Statistics.getAllStatistics().entrySet()) {
                 // Ensure the channel is allowed to be shown
                 if(!Statistics.checkDisabledChannel(cs.getKey())) {
                     // Place the entries into their own variables
                     // This avoids needlessly recalculating the top values for each
-                    Entry<String, Integer> mostLines = cs.getValue().getMostLines();
-                    Entry<String, Integer> mostShouts = cs.getValue().getMostShouts();
-                    Entry<String, Integer> mostURLs = cs.getValue().getMostUrls();
+                    Entry<String, Long> mostLines = cs.getValue().getMostLines();
+                    Entry<String, Long> mostShouts = cs.getValue().getMostShouts();
+                    Entry<String, Long> mostURLs = cs.getValue().getMostUrls();
                     
                     // Rounding float values for display
                     DecimalFormat df = new DecimalFormat("00.#");
                     
                     // Post the update to Twitter!
                     // Sleep for 2 seconds after each tweet to avoid flooding Twitter and breaking API access limits.
-                    twitter.updateStatus("Today in " + cs.getKey().getName() + ": " + cs.getValue().getTotalLines() + " total lines spoken, " + cs.getValue().getTotalShouts() + " total shouts and " + cs.getValue().getTotalUrls() + " total linked URLs.");
+                    twitter.updateStatus("Today in " + cs.getKey() + ": " + cs.getValue().getTotalLines() + " total lines spoken by about " + cs.getValue().getDistinctSpeakers() + " people, " + cs.getValue().getTotalShouts() + " total shouts and " + cs.getValue().getTotalUrls() + " total linked URLs.");
                     Thread.sleep(2000);
 
                     /*
@@ -100,7 +98,7 @@ public class StatisticsTask extends TimerTask {
                      */
                     StringBuilder tweetBuilder = new StringBuilder();
                     if(mostLines != null) {
-                        tweetBuilder.append(mostLines.getKey() + " was most chatty in " + cs.getKey().getName() + ", speaking " + mostLines.getValue() + " times (" + df.format((mostLines.getValue() * 100.0) / cs.getValue().getTotalLines()) + "% of total). ");
+                        tweetBuilder.append(mostLines.getKey() + " was most chatty in " + cs.getKey() + ", speaking " + mostLines.getValue() + " times (" + df.format((mostLines.getValue() * 100.0) / cs.getValue().getTotalLines()) + "% of total). ");
                     }
                     if(mostShouts != null) {
                         tweetBuilder.append(mostShouts.getKey() + " ANGRILY shouted " + mostShouts.getValue() + " times. ");
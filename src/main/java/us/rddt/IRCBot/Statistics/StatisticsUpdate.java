@@ -0,0 +1,81 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Statistics;
+
+import org.pircbotx.Channel;
+
+/**
+ * Records a single line or URL against a channel's statistics. Updates are
+ * delivered to the channel's mailbox so they are counted in the order they arrived;
+ * the counters themselves may be updated from any thread.
+ * 
+ * @author Ryan Morrison
+ */
+public class StatisticsUpdate implements Runnable {
+    private Channel channel;
+    private String nick;
+    private Counter counter;
+
+    public enum Counter {
+        LINE,
+        URL
+    }
+
+    /**
+     * Class constructor
+     * @param channel the channel the statistic was recorded in
+     * @param nick the user who spoke in the channel
+     * @param counter the counter to increment
+     */
+    public StatisticsUpdate(Channel channel, String nick, Counter counter) {
+        this.channel = channel;
+        this.nick = nick;
+        this.counter = counter;
+    }
+
+    /**
+     * Method that executes upon thread start
+     * (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    public void run() {
+        switch(counter) {
+        case LINE:
+            Statistics.getChannelStatistics(channel).addLine(nick);
+            Statistics.getChannelActivity(channel).addLine(nick);
+            break;
+        case URL:
+            Statistics.getChannelStatistics(channel).addUrl(nick);
+            Statistics.getChannelActivity(channel).addUrl(nick);
+            break;
+        default:
+            return;
+        }
+    }
+}
@@ -72,4 +72,35 @@ public class UserUtils {
         else if(channel.getVoices().contains(user)) return CHANNEL_VOICE;
         else return CHANNEL_NORMAL;
     }
+    
+    /**
+     * Checks to see if a user is a bot administrator
+     * @param user the user to check
+     * @return true if the user is a bot administrator, false if they are not
+     */
+    public static boolean isUserAdmin(User user) {
+        if(user.getNick().equals(Configuration.getAdminNick()) && user.getHostmask().equals(Configuration.getAdminHostmask())) return true;
+        else return false;
+    }
+
+    /**
+     * Checks to see if a user is a channel operator or higher
+     * @param user the user to check
+     * @param channel the channel to check against
+     * @return true if the user is a channel operator or higher, false if they are not
+     */
+    public static boolean isUserOperator(User user, Channel channel) {
+        if(channel.isOp(user) || channel.isSuperOp(user) || channel.isOwner(user)) return true;
+        else return false;
+    }
+    
+    /**
+     * Checks to see if a user is a channel owner
+     * @param user the user to check
+     * @param channel the channel to check against
+     * @return true if the user is a channel owner, false if they are not
+     */
+    public static boolean isUserOwner(User user, Channel channel) {
+        return channel.isOwner(user);
+    }
 }
@@ -1,6 +1,6 @@
 /*
  * This file is part of IRCBot.
- * Copyright (c) 2011 Ryan Morrison
+ * Copyright (c) 2011-2013 Ryan Morrison
  * Redistribution and use in source and binary forms, with or without
  * modification, are permitted provided that the following conditions are met:
  * 
@@ -26,12 +26,7 @@
  *  POSSIBILITY OF SUCH DAMAGE.
  */
 
-/* Execute this SQL file against a database to prepare tables for use with IRCBot. */
-
-DROP TABLE IF EXISTS Quotes;
-DROP TABLE IF EXISTS Seen;
-DROP TABLE IF EXISTS GameStatus;
-DROP TABLE IF EXISTS GameList;
+/* Creates the tables used by IRCBot. Existing tables (e.g. from an older setup_tables.sql) are kept. */
 
 CREATE TABLE IF NOT EXISTS Quotes (
 	ID INT PRIMARY KEY AUTO_INCREMENT,
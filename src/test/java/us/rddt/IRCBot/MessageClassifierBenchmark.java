@@ -0,0 +1,138 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares MessageClassifier with the checks onMessage used to run on every channel message:
+ * isUpperCase, two replaceAll calls to trim the message, the command prefix and a URL pattern
+ * compiled for every line. Each invocation classifies a mix of ordinary lines, shouts,
+ * commands and lines with URLs.
+ * 
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=us.rddt.IRCBot.MessageClassifierBenchmark
+ * 
+ * @author Ryan Morrison
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageClassifierBenchmark {
+    /*
+     * Class variables.
+     */
+    private static final String[] MESSAGES = {
+        "anyone around tonight?",
+        "lol that's what I said earlier",
+        "I CAN'T BELIEVE IT'S NOT BUTTER",
+        "!who list",
+        "check this out http://www.reddit.com/r/java/comments/abc123/some_title/",
+        "   WHY IS EVERYTHING ON FIRE   ",
+        "brb",
+        "two links: https://example.com/a?b=c and http://imgur.com/xyz.png, enjoy",
+        "meh",
+        "so the build broke again because someone pushed without running the tests, classic"
+    };
+
+    /**
+     * Classifies the messages with MessageClassifier
+     * @param blackhole consumes the results so they are not optimized away
+     */
+    @Benchmark
+    public void classifier(Blackhole blackhole) {
+        for(String message : MESSAGES) {
+            MessageClassifier classifier = MessageClassifier.classify(message, '!');
+            blackhole.consume(classifier.isShout());
+            blackhole.consume(classifier.hasCommandPrefix());
+            for(int i = 0; i < classifier.getUrlCount(); i++) {
+                blackhole.consume(classifier.getUrlStart(i));
+            }
+        }
+    }
+
+    /**
+     * Classifies the messages the way onMessage used to
+     * @param blackhole consumes the results so they are not optimized away
+     */
+    @Benchmark
+    public void regex(Blackhole blackhole) {
+        for(String message : MESSAGES) {
+            blackhole.consume(isUpperCase(message) && message.replaceAll("^\\s+", "").replaceAll("\\s+$", "").length() > 5);
+            blackhole.consume(message.charAt(0) == '!');
+            Matcher matcher = Pattern.compile("\\bhttps?://[-a-zA-Z0-9+&@#/%?=~_|!:,.;]*[-a-zA-Z0-9+&@#/%=~_|]").matcher(message);
+            int urlCount = 0;
+            while(matcher.find()) {
+                if(++urlCount > 2) break;
+                blackhole.consume(matcher.start());
+            }
+        }
+    }
+
+    /**
+     * Checks to see if a string is uppercase, as onMessage used to
+     * @param s the string to check
+     * @return true if the string is uppercase, false if it is not
+     */
+    private static boolean isUpperCase(String s) {
+        boolean includesLetter = false;
+        for(int i = 0; i < s.length(); i++) {
+            if(Character.isLetter(s.charAt(i))) includesLetter = true;
+            if(Character.isLowerCase(s.charAt(i))) return false;
+        }
+        return includesLetter;
+    }
+
+    /**
+     * Runs the benchmark
+     * @param args not used
+     * @throws RunnerException if the benchmark cannot be run
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MessageClassifierBenchmark.class.getSimpleName()).build()).run();
+    }
+}
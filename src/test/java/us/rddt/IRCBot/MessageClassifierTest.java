@@ -0,0 +1,204 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Checks that MessageClassifier gives the same answers as the regular expressions and
+ * string checks it replaced, on hand-picked messages and on a large number of generated ones.
+ * 
+ * @author Ryan Morrison
+ */
+public class MessageClassifierTest {
+    /*
+     * Class variables.
+     */
+    private static final Pattern URL_PATTERN = Pattern.compile("\\bhttps?://[-a-zA-Z0-9+&@#/%?=~_|!:,.;]*[-a-zA-Z0-9+&@#/%=~_|]");
+    private static final char PREFIX = '!';
+    // Pieces generated messages are built from, chosen to exercise URL boundaries, case and whitespace
+    private static final String[] PIECES = {
+        "http://", "https://", "http:/", "https:", "HTTP://", "h", "ttp", "example.com", "/path", "?q=1", "#top",
+        "a", "B", "z9", "_", "-", ".", ",", ";", ":", "!", "?", "(", ")", "\"", "'", "~", "|", "%20", "@",
+        " ", "  ", "\t", "\n", "\r", "WHY", "LOUD", "quiet", "123"
+    };
+
+    /**
+     * Checks shouts, including the letter and length rules
+     */
+    @Test
+    public void shouts() {
+        assertTrue(classify("THIS IS A SHOUT").isShout());
+        assertTrue(classify("  \u00c9COLE NOW  ").isShout());
+        assertTrue(classify("WHAT?! 123").isShout());
+        assertFalse(classify("This is not").isShout());
+        assertFalse(classify("12345678").isShout());
+        // Upper case, but not longer than MIN_SHOUT_LENGTH once trimmed
+        assertFalse(classify("   HELLO   ").isShout());
+        assertTrue(classify("   HELLO!   ").isShout());
+        assertEquals(reference("   HELLO   ").shout, classify("   HELLO   ").isShout());
+    }
+
+    /**
+     * Checks the trimmed length ignores exactly the whitespace \s matches
+     */
+    @Test
+    public void trimming() {
+        assertEquals(5, classify(" \t\nHELLO\r\f\u000B").getTrimmedLength());
+        assertEquals(0, classify(" \t ").getTrimmedLength());
+        assertEquals(0, classify("").getTrimmedLength());
+        // A non-breaking space is not matched by \s, so it is not trimmed
+        assertEquals(7, classify("\u00a0HELLO\u00a0").getTrimmedLength());
+    }
+
+    /**
+     * Checks the command prefix is only recognized at the start of a message
+     */
+    @Test
+    public void commandPrefix() {
+        assertTrue(classify("!who list").hasCommandPrefix());
+        assertFalse(classify(" !who list").hasCommandPrefix());
+        assertFalse(classify(".who list").hasCommandPrefix());
+        assertFalse(classify("").hasCommandPrefix());
+        assertTrue(MessageClassifier.classify(".who list", '.').hasCommandPrefix());
+    }
+
+    /**
+     * Checks URL spans on hand-picked messages
+     */
+    @Test
+    public void urls() {
+        assertUrls("see http://example.com/a?b=c.", "http://example.com/a?b=c");
+        assertUrls("(https://example.com/x), http://b.org!", "https://example.com/x", "http://b.org");
+        assertUrls("xhttp://example.com and http:// alone");
+        assertUrls("a http://one.com b http://two.com c http://three.com", "http://one.com", "http://two.com");
+        assertUrls("http://a.http://b", "http://a.http://b");
+        assertUrls("_http://not.a.boundary");
+        assertUrls("HTTP://upper.case");
+    }
+
+    /**
+     * Checks the classifier against the reference on generated messages
+     */
+    @Test
+    public void matchesReferenceOnGeneratedMessages() {
+        Random random = new Random(20130101);
+        for(int n = 0; n < 200000; n++) {
+            StringBuilder builder = new StringBuilder();
+            if(random.nextInt(8) == 0) builder.append(PREFIX);
+            int pieces = random.nextInt(12);
+            for(int i = 0; i < pieces; i++) {
+                builder.append(PIECES[random.nextInt(PIECES.length)]);
+            }
+            String message = builder.toString();
+            Reference expected = reference(message);
+            MessageClassifier actual = classify(message);
+            assertEquals("Shout: " + message, expected.shout, actual.isShout());
+            assertEquals("Upper case: " + message, expected.upperCase, actual.isUpperCase());
+            assertEquals("Trimmed length: " + message, expected.trimmedLength, actual.getTrimmedLength());
+            assertEquals("Command prefix: " + message, expected.commandPrefix, actual.hasCommandPrefix());
+            assertEquals("URL count: " + message, expected.urlStarts.size(), actual.getUrlCount());
+            for(int i = 0; i < actual.getUrlCount(); i++) {
+                assertEquals("URL start: " + message, expected.urlStarts.get(i).intValue(), actual.getUrlStart(i));
+                assertEquals("URL end: " + message, expected.urlEnds.get(i).intValue(), actual.getUrlEnd(i));
+            }
+        }
+    }
+
+    /**
+     * Checks the URLs found in a message
+     * @param message the message
+     * @param urls the URLs which should be found
+     */
+    private static void assertUrls(String message, String... urls) {
+        MessageClassifier classifier = classify(message);
+        assertEquals("URL count: " + message, urls.length, classifier.getUrlCount());
+        for(int i = 0; i < urls.length; i++) {
+            assertEquals(urls[i], classifier.getUrl(i));
+        }
+        Reference expected = reference(message);
+        assertEquals(expected.urlStarts.size(), classifier.getUrlCount());
+    }
+
+    /**
+     * Classifies a message with the test's command prefix
+     * @param message the message
+     * @return the classification
+     */
+    private static MessageClassifier classify(String message) {
+        return MessageClassifier.classify(message, PREFIX);
+    }
+
+    /**
+     * Classifies a message the way the bot did before MessageClassifier
+     * @param message the message
+     * @return the classification
+     */
+    private static Reference reference(String message) {
+        Reference reference = new Reference();
+        boolean includesLetter = false;
+        boolean lowerCase = false;
+        for(int i = 0; i < message.length(); i++) {
+            if(Character.isLetter(message.charAt(i))) includesLetter = true;
+            if(Character.isLowerCase(message.charAt(i))) lowerCase = true;
+        }
+        reference.upperCase = includesLetter && !lowerCase;
+        reference.trimmedLength = message.replaceAll("^\\s+", "").replaceAll("\\s+$", "").length();
+        reference.shout = reference.upperCase && reference.trimmedLength > MessageClassifier.MIN_SHOUT_LENGTH;
+        reference.commandPrefix = message.length() > 0 && message.charAt(0) == PREFIX;
+        Matcher matcher = URL_PATTERN.matcher(message);
+        while(matcher.find() && reference.urlStarts.size() < MessageClassifier.MAX_URLS) {
+            reference.urlStarts.add(matcher.start());
+            reference.urlEnds.add(matcher.end());
+        }
+        return reference;
+    }
+
+    /**
+     * What the old checks made of a message.
+     */
+    private static class Reference {
+        private boolean shout;
+        private boolean upperCase;
+        private int trimmedLength;
+        private boolean commandPrefix;
+        private final List<Integer> urlStarts = new ArrayList<Integer>();
+        private final List<Integer> urlEnds = new ArrayList<Integer>();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import us.rddt.IRCBot.Configuration;
+
+/**
+ * Counts lines, shouts and URLs for one channel from many threads at once and checks that
+ * nothing is lost: the totals and the count for every nick must come out exact.
+ * 
+ * @author Ryan Morrison
+ */
+public class ChannelStatisticsTest {
+    /*
+     * Class variables.
+     */
+    private static final int THREADS = 8;
+    private static final int UPDATES_PER_THREAD = 200000;
+    // Fewer nicks than the number of users tracked, so every nick's count is exact
+    private static final int NICKS = 10;
+    private static final int TOP_K = 20;
+
+    /**
+     * Tracks more users than the test uses, as the configuration is not loaded in tests
+     * @throws Exception if the setting cannot be changed
+     */
+    @BeforeClass
+    public static void setUpConfiguration() throws Exception {
+        Field topK = Configuration.class.getDeclaredField("statistics_top_k");
+        topK.setAccessible(true);
+        topK.setInt(null, TOP_K);
+    }
+
+    /**
+     * Updates one channel from several threads and checks the totals and per-nick counts
+     * @throws Exception if a counting thread fails
+     */
+    @Test
+    public void concurrentUpdatesAreExact() throws Exception {
+        final ChannelStatistics statistics = new ChannelStatistics();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for(int t = 0; t < THREADS; t++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        for(int i = 0; i < UPDATES_PER_THREAD; i++) {
+                            String nick = "nick" + (i % NICKS);
+                            statistics.addLine(nick);
+                            if(i % 4 == 0) statistics.addShout(nick);
+                            if(i % 8 == 0) statistics.addUrl(nick);
+                        }
+                    } catch (Throwable ex) {
+                        synchronized(failures) {
+                            failures.add(ex);
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue("Counting threads failed: " + failures, failures.isEmpty());
+
+        Map<String, Long> lines = new HashMap<String, Long>();
+        Map<String, Long> shouts = new HashMap<String, Long>();
+        Map<String, Long> urls = new HashMap<String, Long>();
+        for(int i = 0; i < UPDATES_PER_THREAD; i++) {
+            String nick = "nick" + (i % NICKS);
+            increment(lines, nick, THREADS);
+            if(i % 4 == 0) increment(shouts, nick, THREADS);
+            if(i % 8 == 0) increment(urls, nick, THREADS);
+        }
+        assertEquals(sum(lines), statistics.getTotalLines());
+        assertEquals(sum(shouts), statistics.getTotalShouts());
+        assertEquals(sum(urls), statistics.getTotalUrls());
+        assertCounts(lines, statistics.getTopLines(TOP_K));
+        assertCounts(shouts, statistics.getTopShouts(TOP_K));
+        assertCounts(urls, statistics.getTopUrls(TOP_K));
+        assertEquals(NICKS, statistics.getDistinctSpeakers());
+    }
+
+    /**
+     * Checks that every nick was counted exactly
+     * @param expected the expected count of each nick
+     * @param actual the counts reported by the statistics
+     */
+    private static void assertCounts(Map<String, Long> expected, List<HeavyHitters.Estimate> actual) {
+        assertEquals(expected.size(), actual.size());
+        for(HeavyHitters.Estimate estimate : actual) {
+            assertEquals("Count of " + estimate.getKey(), expected.get(estimate.getKey()).longValue(), estimate.getCount());
+            assertEquals("Error of " + estimate.getKey(), 0, estimate.getError());
+        }
+    }
+
+    /**
+     * Adds to a nick's expected count
+     * @param counts the expected counts
+     * @param nick the nick
+     * @param amount the amount to add
+     */
+    private static void increment(Map<String, Long> counts, String nick, long amount) {
+        Long count = counts.get(nick);
+        counts.put(nick, (count == null ? 0 : count) + amount);
+    }
+
+    /**
+     * Returns the total of a set of counts
+     * @param counts the counts
+     * @return the total
+     */
+    private static long sum(Map<String, Long> counts) {
+        long total = 0;
+        for(long count : counts.values()) {
+            total += count;
+        }
+        return total;
+    }
+}
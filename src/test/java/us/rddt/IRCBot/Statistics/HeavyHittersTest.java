@@ -0,0 +1,198 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the Space-Saving guarantees of HeavyHitters: counts are exact while there is room,
+ * never fall below the true count, exceed it by no more than the reported error, and merging
+ * the summaries charges a key missing from a full summary with that summary's smallest count.
+ * 
+ * @author Ryan Morrison
+ */
+public class HeavyHittersTest {
+    /*
+     * Class variables.
+     */
+    private static final int CAPACITY = 20;
+    private static final int THREADS = 4;
+
+    /**
+     * Counts fewer keys than the capacity and checks every count is exact and in order
+     */
+    @Test
+    public void exactUnderCapacity() {
+        HeavyHitters hitters = new HeavyHitters(CAPACITY);
+        for(int i = 1; i <= 5; i++) {
+            for(int j = 0; j < i * 10; j++) {
+                hitters.add("key" + i);
+            }
+        }
+        List<HeavyHitters.Estimate> top = hitters.getTop(3);
+        assertEquals(3, top.size());
+        for(int i = 0; i < top.size(); i++) {
+            assertEquals("key" + (5 - i), top.get(i).getKey());
+            assertEquals((5 - i) * 10, top.get(i).getCount());
+            assertEquals(0, top.get(i).getError());
+        }
+    }
+
+    /**
+     * Restores known summaries and checks the merged counts and errors by hand
+     * @throws IOException if the summaries cannot be written
+     */
+    @Test
+    public void mergeChargesMissingKeysWithFloor() throws IOException {
+        HeavyHitters hitters = new HeavyHitters(2);
+        Map<String, long[]> first = new HashMap<String, long[]>();
+        first.put("a", new long[] { 10, 0 });
+        first.put("b", new long[] { 5, 0 });
+        Map<String, long[]> second = new HashMap<String, long[]>();
+        second.put("a", new long[] { 3, 0 });
+        second.put("c", new long[] { 4, 1 });
+        hitters.readFrom(summaries(first, second));
+
+        // The floors are 5 and 3: a is tracked in both, b is missing from the second summary
+        // and c from the first, so each is charged that summary's floor
+        List<HeavyHitters.Estimate> top = hitters.getTop(10);
+        assertEquals(3, top.size());
+        assertEstimate(top.get(0), "a", 13, 0);
+        assertEstimate(top.get(1), "c", 9, 6);
+        assertEstimate(top.get(2), "b", 8, 3);
+    }
+
+    /**
+     * Counts a skewed stream from several threads into small summaries and checks the bounds
+     * hold for every reported key and the heaviest keys are always reported
+     * @throws Exception if a counting thread fails
+     */
+    @Test
+    public void boundsHoldAfterMerge() throws Exception {
+        final HeavyHitters hitters = new HeavyHitters(CAPACITY);
+        final List<Map<String, Long>> counts = new ArrayList<Map<String, Long>>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for(int t = 0; t < THREADS; t++) {
+            final Map<String, Long> local = new HashMap<String, Long>();
+            final Random random = new Random(t);
+            counts.add(local);
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    for(int i = 0; i < 50000; i++) {
+                        // Roughly Zipfian: low-numbered keys are far more frequent
+                        String key = "key" + (int)Math.floor(Math.pow(1000, random.nextDouble()));
+                        hitters.add(key);
+                        Long count = local.get(key);
+                        local.put(key, (count == null ? 0 : count) + 1);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        Map<String, Long> truth = new HashMap<String, Long>();
+        long total = 0;
+        for(Map<String, Long> local : counts) {
+            for(Map.Entry<String, Long> entry : local.entrySet()) {
+                Long count = truth.get(entry.getKey());
+                truth.put(entry.getKey(), (count == null ? 0 : count) + entry.getValue());
+                total += entry.getValue();
+            }
+        }
+
+        List<HeavyHitters.Estimate> top = hitters.getTop(Integer.MAX_VALUE);
+        Map<String, HeavyHitters.Estimate> reported = new HashMap<String, HeavyHitters.Estimate>();
+        for(HeavyHitters.Estimate estimate : top) {
+            long actual = truth.get(estimate.getKey());
+            assertTrue("Count of " + estimate.getKey() + " is below its true count", estimate.getCount() >= actual);
+            assertTrue("Count of " + estimate.getKey() + " exceeds its error", estimate.getCount() - estimate.getError() <= actual);
+            assertTrue("Error of " + estimate.getKey() + " exceeds the bound", estimate.getError() <= total / CAPACITY);
+            reported.put(estimate.getKey(), estimate);
+        }
+        for(int i = 1; i < top.size(); i++) {
+            assertTrue(top.get(i - 1).getCount() >= top.get(i).getCount());
+        }
+        for(Map.Entry<String, Long> entry : truth.entrySet()) {
+            if(entry.getValue() > total / CAPACITY) assertNotNull("Heavy key " + entry.getKey() + " was not reported", reported.get(entry.getKey()));
+        }
+    }
+
+    /**
+     * Checks an estimate's key, count and error
+     * @param estimate the estimate
+     * @param key the expected key
+     * @param count the expected count
+     * @param error the expected error
+     */
+    private static void assertEstimate(HeavyHitters.Estimate estimate, String key, long count, long error) {
+        assertEquals(key, estimate.getKey());
+        assertEquals("Count of " + key, count, estimate.getCount());
+        assertEquals("Error of " + key, error, estimate.getError());
+    }
+
+    /**
+     * Writes summaries in the format HeavyHitters.readFrom reads
+     * @param stripes the count and error of each key, one map per summary
+     * @return the written summaries
+     * @throws IOException if the summaries cannot be written
+     */
+    @SafeVarargs
+    private static ByteBuffer summaries(Map<String, long[]>... stripes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(stripes.length);
+        for(Map<String, long[]> stripe : stripes) {
+            out.writeInt(stripe.size());
+            for(Map.Entry<String, long[]> entry : stripe.entrySet()) {
+                StatisticsSnapshot.writeString(out, entry.getKey());
+                out.writeLong(entry.getValue()[0]);
+                out.writeLong(entry.getValue()[1]);
+            }
+        }
+        out.flush();
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+}
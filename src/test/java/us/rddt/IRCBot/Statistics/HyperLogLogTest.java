@@ -0,0 +1,133 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Statistics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks the accuracy of HyperLogLog estimates at small and large cardinalities, and that
+ * merging sketches and rebuilding them from their registers lose nothing.
+ * 
+ * @author Ryan Morrison
+ */
+public class HyperLogLogTest {
+    /*
+     * Class variables.
+     */
+    private static final int PRECISION = 12;
+    // Four standard errors of a sketch with 2^12 registers, 1.04 / sqrt(4096)
+    private static final double TOLERANCE = 4 * 1.04 / 64;
+
+    /**
+     * Checks estimates stay within the expected error from tens to millions of values
+     */
+    @Test
+    public void estimatesAreAccurate() {
+        for(int cardinality : new int[] { 10, 100, 1000, 10000, 100000, 1000000 }) {
+            HyperLogLog sketch = new HyperLogLog(PRECISION);
+            for(int i = 0; i < cardinality; i++) {
+                sketch.add("value" + i);
+            }
+            assertWithinTolerance(cardinality, sketch.estimate());
+        }
+    }
+
+    /**
+     * Checks adding the same values again does not change the estimate
+     */
+    @Test
+    public void duplicatesAreNotCounted() {
+        HyperLogLog sketch = new HyperLogLog(PRECISION);
+        for(int i = 0; i < 5000; i++) {
+            sketch.add("value" + i);
+        }
+        long estimate = sketch.estimate();
+        for(int repeat = 0; repeat < 10; repeat++) {
+            for(int i = 0; i < 5000; i++) {
+                sketch.add("value" + i);
+            }
+        }
+        assertEquals(estimate, sketch.estimate());
+    }
+
+    /**
+     * Checks merging two sketches gives the same registers as one sketch of every value
+     */
+    @Test
+    public void mergeMatchesUnion() {
+        HyperLogLog first = new HyperLogLog(PRECISION);
+        HyperLogLog second = new HyperLogLog(PRECISION);
+        HyperLogLog union = new HyperLogLog(PRECISION);
+        for(int i = 0; i < 30000; i++) {
+            // The two halves overlap by a third
+            if(i < 20000) first.add("value" + i);
+            if(i >= 10000) second.add("value" + i);
+            union.add("value" + i);
+        }
+        first.merge(second);
+        assertArrayEquals(union.getRegisters(), first.getRegisters());
+        assertWithinTolerance(30000, first.estimate());
+    }
+
+    /**
+     * Checks a sketch rebuilt from its registers gives the same estimate
+     */
+    @Test
+    public void registersRoundTrip() {
+        HyperLogLog sketch = new HyperLogLog(PRECISION);
+        for(int i = 0; i < 20000; i++) {
+            sketch.add("value" + i);
+        }
+        HyperLogLog copy = HyperLogLog.fromRegisters(sketch.getRegisters());
+        assertEquals(PRECISION, copy.getPrecision());
+        assertEquals(sketch.estimate(), copy.estimate());
+    }
+
+    /**
+     * Checks sketches of different precisions cannot be merged
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeRejectsOtherPrecisions() {
+        new HyperLogLog(PRECISION).merge(new HyperLogLog(PRECISION - 1));
+    }
+
+    /**
+     * Checks an estimate is within the tolerance of the true cardinality
+     * @param cardinality the true number of distinct values
+     * @param estimate the estimated number of distinct values
+     */
+    private static void assertWithinTolerance(long cardinality, long estimate) {
+        double error = Math.abs(estimate - cardinality) / (double)cardinality;
+        assertTrue("Estimated " + estimate + " for " + cardinality + " values", error <= TOLERANCE);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Statistics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that a SlidingHyperLogLog read over any window within its horizon matches an
+ * ordinary HyperLogLog of only the values added during that window.
+ * 
+ * @author Ryan Morrison
+ */
+public class SlidingHyperLogLogTest {
+    /*
+     * Class variables.
+     */
+    private static final int PRECISION = 10;
+    private static final long HORIZON = 10000;
+
+    /**
+     * Adds values over time, some repeated, and compares every window with a sketch of only
+     * the values added in it
+     */
+    @Test
+    public void windowsMatchOrdinarySketches() {
+        SlidingHyperLogLog sliding = new SlidingHyperLogLog(PRECISION, HORIZON);
+        String[] values = new String[(int)HORIZON * 2];
+        long[] times = new long[(int)HORIZON * 2];
+        Random random = new Random(42);
+        for(int i = 0; i < values.length; i++) {
+            // Later values repeat earlier ones now and then, as regulars talk again
+            values[i] = "nick" + (random.nextInt(4) == 0 ? random.nextInt(i + 1) : i);
+            times[i] = i / 2;
+            sliding.add(values[i], times[i]);
+        }
+        for(long since : new long[] { 0, 1, 100, 2500, 4999, 5000, 9000 }) {
+            HyperLogLog window = new HyperLogLog(PRECISION);
+            for(int i = 0; i < values.length; i++) {
+                if(times[i] >= since) window.add(values[i]);
+            }
+            assertArrayEquals("Window since " + since, window.getRegisters(), sliding.getRegisters(since));
+            assertEquals("Window since " + since, window.estimate(), sliding.estimate(since));
+        }
+    }
+
+    /**
+     * Checks a window after the last value added is empty
+     */
+    @Test
+    public void emptyWindowEstimatesZero() {
+        SlidingHyperLogLog sliding = new SlidingHyperLogLog(PRECISION, HORIZON);
+        for(int i = 0; i < 1000; i++) {
+            sliding.add("nick" + i, i);
+        }
+        assertEquals(0, sliding.estimate(1000));
+        assertEquals(1, sliding.estimate(999));
+    }
+
+    /**
+     * Checks values which have fallen past the horizon are forgotten, so the entries kept do
+     * not grow without bound, while the windows which can still be read stay exact
+     */
+    @Test
+    public void valuesPastHorizonAreDropped() {
+        SlidingHyperLogLog sliding = new SlidingHyperLogLog(PRECISION, 100);
+        HyperLogLog recent = new HyperLogLog(PRECISION);
+        for(int i = 0; i < 100000; i++) {
+            sliding.add("nick" + i, i);
+            if(i >= 100000 - 100) recent.add("nick" + i);
+        }
+        assertArrayEquals(recent.getRegisters(), sliding.getRegisters(100000 - 100));
+        // Entries are only dropped when their register is next written, so a little more than
+        // the horizon lingers, but nowhere near every value added
+        assertTrue(sliding.estimate(0) < 100000 / 10);
+    }
+
+    /**
+     * Checks merging two sliding sketches gives the same windows as one sketch of every value
+     */
+    @Test
+    public void mergeMatchesUnion() {
+        SlidingHyperLogLog first = new SlidingHyperLogLog(PRECISION, HORIZON);
+        SlidingHyperLogLog second = new SlidingHyperLogLog(PRECISION, HORIZON);
+        SlidingHyperLogLog union = new SlidingHyperLogLog(PRECISION, HORIZON);
+        for(int i = 0; i < 8000; i++) {
+            String value = "nick" + (i % 5000);
+            if(i % 3 == 0) {
+                first.add(value, i);
+            } else {
+                second.add(value, i);
+            }
+            union.add(value, i);
+        }
+        first.merge(second);
+        for(long since : new long[] { 0, 1000, 4000, 7999 }) {
+            assertArrayEquals("Window since " + since, union.getRegisters(since), first.getRegisters(since));
+        }
+    }
+}
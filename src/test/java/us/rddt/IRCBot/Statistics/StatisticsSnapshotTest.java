@@ -0,0 +1,197 @@
+/*
+ * This file is part of IRCBot.
+ * Copyright (c) 2011-2013 Ryan Morrison
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions, and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions, and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of the author of this software nor the name of
+ *  contributors to this software may be used to endorse or promote products
+ *  derived from this software without specific prior written consent.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ *  IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ *  ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ *  LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ *  SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ *  INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ *  CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ *  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package us.rddt.IRCBot.Statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import us.rddt.IRCBot.Configuration;
+
+/**
+ * Writes the statistics to a snapshot and restores them, checking every counter comes back
+ * and that a snapshot whose checksum does not match is ignored.
+ * 
+ * @author Ryan Morrison
+ */
+public class StatisticsSnapshotTest {
+    /*
+     * Class variables.
+     */
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final int TOP_K = 20;
+    private static File snapshot;
+    private static final Map<String, Long> lines = new HashMap<String, Long>();
+    private static final Map<String, Long> shouts = new HashMap<String, Long>();
+    private static final Map<String, Long> urls = new HashMap<String, Long>();
+
+    /**
+     * Points the snapshot and the log at the temporary folder, as the configuration is not
+     * loaded in tests
+     * @throws Exception if a setting cannot be changed
+     */
+    @BeforeClass
+    public static void setUpConfiguration() throws Exception {
+        snapshot = new File(folder.getRoot(), "statistics.snapshot");
+        setConfiguration("statistics_snapshot_file", snapshot.getPath());
+        setConfiguration("statistics_snapshot_interval", 300);
+        setConfiguration("statistics_top_k", TOP_K);
+        setConfiguration("log_output", new File(folder.getRoot(), "log.html").getPath());
+    }
+
+    /**
+     * Starts each test from a fresh snapshot of known statistics
+     */
+    @Before
+    public void writeSnapshot() {
+        snapshot.delete();
+        lines.clear();
+        shouts.clear();
+        urls.clear();
+        ChannelStatistics statistics = new ChannelStatistics();
+        for(int i = 0; i < 100; i++) {
+            String nick = "nick" + (i % 7);
+            statistics.addLine(nick);
+            increment(lines, nick);
+            if(i % 3 == 0) {
+                statistics.addShout(nick);
+                increment(shouts, nick);
+            }
+            if(i % 5 == 0) {
+                statistics.addUrl(nick);
+                increment(urls, nick);
+            }
+        }
+        Map<String, ChannelStatistics> channels = new HashMap<String, ChannelStatistics>();
+        channels.put("#test", statistics);
+        Statistics.getDisabledChannels().clear();
+        Statistics.restore(channels, Collections.singletonList("#quiet"));
+        StatisticsSnapshot.write();
+        assertTrue("The snapshot was not written", snapshot.isFile());
+        clearStatistics();
+    }
+
+    /**
+     * Checks every counter and the disabled channels survive a round trip
+     */
+    @Test
+    public void restoresWhatWasWritten() {
+        StatisticsSnapshot.restore();
+        ChannelStatistics statistics = Statistics.getAllStatistics().get("#test");
+        assertNotNull("The channel was not restored", statistics);
+        assertEquals(100, statistics.getTotalLines());
+        assertEquals(34, statistics.getTotalShouts());
+        assertEquals(20, statistics.getTotalUrls());
+        assertEquals(7, statistics.getDistinctSpeakers());
+        assertCounts(lines, statistics.getTopLines(TOP_K));
+        assertCounts(shouts, statistics.getTopShouts(TOP_K));
+        assertCounts(urls, statistics.getTopUrls(TOP_K));
+        assertTrue(Statistics.checkDisabledChannel("#quiet"));
+    }
+
+    /**
+     * Flips one bit of the snapshot and checks nothing is restored from it
+     * @throws Exception if the snapshot cannot be changed
+     */
+    @Test
+    public void rejectsCorruptSnapshot() throws Exception {
+        RandomAccessFile file = new RandomAccessFile(snapshot, "rw");
+        try {
+            long position = file.length() / 2;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 1);
+        } finally {
+            file.close();
+        }
+        StatisticsSnapshot.restore();
+        assertTrue(Statistics.getAllStatistics().isEmpty());
+        assertTrue(Statistics.getDisabledChannels().isEmpty());
+    }
+
+    /**
+     * Empties the current statistics and disabled channels
+     */
+    private static void clearStatistics() {
+        Statistics.restore(new HashMap<String, ChannelStatistics>(), Collections.<String>emptyList());
+        Statistics.getDisabledChannels().clear();
+    }
+
+    /**
+     * Checks that every nick's restored count is exact
+     * @param expected the expected count of each nick
+     * @param actual the restored counts
+     */
+    private static void assertCounts(Map<String, Long> expected, List<HeavyHitters.Estimate> actual) {
+        assertEquals(expected.size(), actual.size());
+        for(HeavyHitters.Estimate estimate : actual) {
+            assertEquals("Count of " + estimate.getKey(), expected.get(estimate.getKey()).longValue(), estimate.getCount());
+            assertEquals("Error of " + estimate.getKey(), 0, estimate.getError());
+        }
+    }
+
+    /**
+     * Adds one to a nick's expected count
+     * @param counts the expected counts
+     * @param nick the nick
+     */
+    private static void increment(Map<String, Long> counts, String nick) {
+        Long count = counts.get(nick);
+        counts.put(nick, (count == null ? 0 : count) + 1);
+    }
+
+    /**
+     * Changes a setting of the configuration
+     * @param name the name of the setting's field
+     * @param value the new value
+     * @throws Exception if the setting cannot be changed
+     */
+    private static void setConfiguration(String name, Object value) throws Exception {
+        Field field = Configuration.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(null, value);
+    }
+}